@@ -0,0 +1,123 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.stream.StreamResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import com.mebigfatguy.beansource.BeanSource;
+
+/**
+ * measures writing each workload through each engine into a handler that does nothing with the events, into a DOM, and into a stream. The graphs,
+ * transformers and DOM document are built once per trial, so only the bean source's traversal and the cost of the output are measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeanSourceBenchmark {
+
+    private static final OutputStream NULL_STREAM = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Param({ "FLAT", "DEEP", "COLLECTION", "MAP", "PRIMITIVE_ARRAYS", "DATES", "ANNOTATED" })
+    private Workload workload;
+
+    @Param({ "INTERPRETED", "COMPILED", "ITERATIVE" })
+    private BeanSource.Engine engine;
+
+    private Object bean;
+    private Transformer transformer;
+    private Document document;
+
+    @Setup
+    public void setup() throws TransformerConfigurationException, ParserConfigurationException {
+        bean = workload.create();
+        transformer = TransformerFactory.newInstance().newTransformer();
+        document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    }
+
+    @Benchmark
+    public void noOpHandler(Blackhole bh) throws IOException, SAXException {
+        BeanSource bs = newSource();
+        XMLReader reader = bs.getXMLReader();
+        reader.setContentHandler(new BlackholeHandler(bh));
+        reader.parse(bs.getInputSource());
+    }
+
+    @Benchmark
+    public Document domResult() throws TransformerException {
+        while (document.getFirstChild() != null) {
+            document.removeChild(document.getFirstChild());
+        }
+        transformer.transform(newSource(), new DOMResult(document));
+        return document;
+    }
+
+    @Benchmark
+    public void streamResult() throws TransformerException {
+        transformer.transform(newSource(), new StreamResult(NULL_STREAM));
+    }
+
+    /**
+     * the same output as streamResult, written without the transformer, for comparison
+     */
+    @Benchmark
+    public void writeTo() throws IOException, SAXException {
+        newSource().writeTo(NULL_STREAM);
+    }
+
+    private BeanSource newSource() {
+        BeanSource bs = new BeanSource(bean, "bean");
+        bs.setEngine(engine);
+        return bs;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource.benchmarks;
+
+import org.openjdk.jmh.infra.Blackhole;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+
+/**
+ * a content handler that does nothing with the events but hand them to the blackhole, so that the events the bean source produces can't be
+ * optimized away
+ */
+final class BlackholeHandler implements ContentHandler {
+
+    private final Blackhole bh;
+
+    BlackholeHandler(Blackhole bh) {
+        this.bh = bh;
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+    }
+
+    @Override
+    public void startDocument() {
+    }
+
+    @Override
+    public void endDocument() {
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) {
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) {
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) {
+        bh.consume(qName);
+        bh.consume(atts.getLength());
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        bh.consume(qName);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        bh.consume(ch);
+        bh.consume(length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+        bh.consume(length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) {
+    }
+
+    @Override
+    public void skippedEntity(String name) {
+    }
+
+    @Override
+    public String toString() {
+        return "BlackholeHandler[" + bh + "]";
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource.benchmarks;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mebigfatguy.beansource.annotations.BeanSourceProperty;
+
+/**
+ * the bean graphs the benchmarks write, each built once per trial so that only the traversal and emission are measured
+ */
+public enum Workload {
+
+    /** one bean of a dozen scalar properties */
+    FLAT {
+        @Override
+        Object create() {
+            return new FlatBean(1);
+        }
+    },
+
+    /** a chain of beans nested 64 deep */
+    DEEP {
+        @Override
+        Object create() {
+            Node node = new Node(null, 0);
+            for (int i = 1; i < 64; i++) {
+                node = new Node(node, i);
+            }
+            return node;
+        }
+    },
+
+    /** a list of 1000 flat beans */
+    COLLECTION {
+        @Override
+        Object create() {
+            List<FlatBean> beans = new ArrayList<>(LARGE);
+            for (int i = 0; i < LARGE; i++) {
+                beans.add(new FlatBean(i));
+            }
+            return beans;
+        }
+    },
+
+    /** a map of 1000 names to flat beans */
+    MAP {
+        @Override
+        Object create() {
+            Map<String, FlatBean> beans = new LinkedHashMap<>(LARGE * 2);
+            for (int i = 0; i < LARGE; i++) {
+                beans.put("bean" + i, new FlatBean(i));
+            }
+            return beans;
+        }
+    },
+
+    /** a bean holding int, long and double arrays of 4096 values each */
+    PRIMITIVE_ARRAYS {
+        @Override
+        Object create() {
+            return new ArraysBean(4096);
+        }
+    },
+
+    /** a list of 100 beans of legacy and java.time dates */
+    DATES {
+        @Override
+        Object create() {
+            List<DatesBean> beans = new ArrayList<>(100);
+            for (int i = 0; i < 100; i++) {
+                beans.add(new DatesBean(i));
+            }
+            return beans;
+        }
+    },
+
+    /** a list of 1000 beans with simple, complex and excluded annotated properties */
+    ANNOTATED {
+        @Override
+        Object create() {
+            List<AnnotatedBean> beans = new ArrayList<>(LARGE);
+            for (int i = 0; i < LARGE; i++) {
+                beans.add(new AnnotatedBean(i));
+            }
+            return beans;
+        }
+    };
+
+    static final int LARGE = 1000;
+
+    abstract Object create();
+
+    public static class FlatBean {
+        private final int id;
+
+        public FlatBean(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return "bean & name " + id;
+        }
+
+        public String getDescription() {
+            return "a <flat> bean used to measure the cost of scalar properties";
+        }
+
+        public boolean isActive() {
+            return (id & 1) == 0;
+        }
+
+        public boolean getFlagged() {
+            return (id % 3) == 0;
+        }
+
+        public long getCreated() {
+            return 1_500_000_000_000L + id;
+        }
+
+        public double getPrice() {
+            return id * 1.25;
+        }
+
+        public float getRatio() {
+            return id / 7.0f;
+        }
+
+        public short getCategory() {
+            return (short) (id % 10);
+        }
+
+        public byte getLevel() {
+            return (byte) id;
+        }
+
+        public char getGrade() {
+            return (char) ('A' + (id % 5));
+        }
+
+        public Integer getQuantity() {
+            return Integer.valueOf(id * 3);
+        }
+
+        @Override
+        public String toString() {
+            return "FlatBean[id: " + id + "]";
+        }
+    }
+
+    public static class Node {
+        private final Node child;
+        private final int depth;
+
+        public Node(Node child, int depth) {
+            this.child = child;
+            this.depth = depth;
+        }
+
+        public Node getChild() {
+            return child;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public String getLabel() {
+            return "node" + depth;
+        }
+    }
+
+    public static class ArraysBean {
+        private final int[] ints;
+        private final long[] longs;
+        private final double[] doubles;
+
+        public ArraysBean(int size) {
+            ints = new int[size];
+            longs = new long[size];
+            doubles = new double[size];
+            for (int i = 0; i < size; i++) {
+                ints[i] = i * 31;
+                longs[i] = i * 1_000_003L;
+                doubles[i] = i / 3.0;
+            }
+        }
+
+        public int[] getInts() {
+            return ints;
+        }
+
+        public long[] getLongs() {
+            return longs;
+        }
+
+        public double[] getDoubles() {
+            return doubles;
+        }
+    }
+
+    public static class DatesBean {
+        private final Date date;
+        private final Instant instant;
+        private final LocalDate localDate;
+        private final LocalDateTime localDateTime;
+        private final ZonedDateTime zonedDateTime;
+
+        public DatesBean(int i) {
+            instant = Instant.ofEpochSecond(1_500_000_000L + (i * 86_400L));
+            date = Date.from(instant);
+            localDateTime = LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+            localDate = localDateTime.toLocalDate();
+            zonedDateTime = instant.atZone(ZoneOffset.UTC);
+        }
+
+        public Date getDate() {
+            return date;
+        }
+
+        public Instant getInstant() {
+            return instant;
+        }
+
+        public LocalDate getLocalDate() {
+            return localDate;
+        }
+
+        public LocalDateTime getLocalDateTime() {
+            return localDateTime;
+        }
+
+        public ZonedDateTime getZonedDateTime() {
+            return zonedDateTime;
+        }
+    }
+
+    public static class AnnotatedBean {
+        private final int id;
+        private final FlatBean detail;
+
+        public AnnotatedBean(int id) {
+            this.id = id;
+            detail = new FlatBean(id);
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        @BeanSourceProperty(BeanSourceProperty.Type.SIMPLE)
+        public FlatBean getSummary() {
+            return detail;
+        }
+
+        @BeanSourceProperty(BeanSourceProperty.Type.COMPLEX)
+        public FlatBean getDetail() {
+            return detail;
+        }
+
+        @BeanSourceProperty(BeanSourceProperty.Type.EXCLUDE)
+        public String getSecret() {
+            return "never written";
+        }
+    }
+}
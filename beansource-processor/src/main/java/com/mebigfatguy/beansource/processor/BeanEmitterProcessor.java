@@ -0,0 +1,281 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import com.mebigfatguy.beansource.annotations.BeanSourceProperty;
+
+/**
+ * generates a {@link com.mebigfatguy.beansource.BeanEmitter} for each class marked with BeanSourceBean, or with getters marked with
+ * BeanSourceProperty, and registers them as services so BeanSource uses them instead of introspecting. Properties are found, named, ordered and
+ * emitted with the same rules as the reflective reader, so the documents are identical.
+ */
+@SupportedAnnotationTypes({ "com.mebigfatguy.beansource.annotations.BeanSourceBean", "com.mebigfatguy.beansource.annotations.BeanSourceProperty" })
+public class BeanEmitterProcessor extends AbstractProcessor {
+
+    private static final String EMITTER_SUFFIX = "BeanSourceEmitter";
+    private static final String SERVICE_FILE = "META-INF/services/com.mebigfatguy.beansource.BeanEmitter";
+
+    private Set<String> emitters = new LinkedHashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeServiceFile();
+            return false;
+        }
+
+        Set<TypeElement> beans = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element e : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if ((e.getKind() == ElementKind.CLASS) && (e instanceof TypeElement)) {
+                    beans.add((TypeElement) e);
+                } else if (e.getKind() == ElementKind.METHOD) {
+                    Element owner = e.getEnclosingElement();
+                    if (owner.getKind() == ElementKind.CLASS) {
+                        beans.add((TypeElement) owner);
+                    }
+                }
+            }
+        }
+
+        for (TypeElement bean : beans) {
+            if (canEmit(bean)) {
+                generateEmitter(bean);
+            }
+        }
+
+        return false;
+    }
+
+    private boolean canEmit(TypeElement bean) {
+        if (bean.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+
+        for (Element e = bean; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            TypeElement type = (TypeElement) e;
+            if (type.getModifiers().contains(Modifier.PRIVATE) || (type.getNestingKind() == NestingKind.LOCAL)
+                    || (type.getNestingKind() == NestingKind.ANONYMOUS)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "No BeanEmitter generated, " + bean + " is not accessible from its package",
+                        bean);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void generateEmitter(TypeElement bean) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(bean);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String emitterName = flatName(bean) + EMITTER_SUFFIX;
+        String qualifiedEmitterName = packageName.isEmpty() ? emitterName : packageName + "." + emitterName;
+
+        String beanType = bean.getQualifiedName().toString();
+        String castType = beanType;
+        if (!bean.getTypeParameters().isEmpty()) {
+            StringBuilder wildcards = new StringBuilder("<");
+            for (int i = 0; i < bean.getTypeParameters().size(); i++) {
+                wildcards.append((i == 0) ? "?" : ", ?");
+            }
+            castType += wildcards.append('>');
+        }
+
+        try {
+            JavaFileObject source = processingEnv.getFiler().createSourceFile(qualifiedEmitterName, bean);
+            try (PrintWriter pw = new PrintWriter(source.openWriter())) {
+                if (!packageName.isEmpty()) {
+                    pw.println("package " + packageName + ";");
+                    pw.println();
+                }
+                pw.println("public final class " + emitterName + " implements com.mebigfatguy.beansource.BeanEmitter {");
+                pw.println();
+                pw.println("    @Override");
+                pw.println("    public Class<?> getBeanClass() {");
+                pw.println("        return " + beanType + ".class;");
+                pw.println("    }");
+                pw.println();
+                pw.println("    @Override");
+                pw.println("    public void emit(Object bean, String name, com.mebigfatguy.beansource.EmitterContext context) throws org.xml.sax.SAXException {");
+                pw.println("        " + castType + " b = (" + castType + ") bean;");
+                pw.println("        context.startBean(name);");
+                pw.println("        try {");
+                for (ExecutableElement getter : getters(bean)) {
+                    pw.println("            " + emitStatement(beanType, getter));
+                }
+                pw.println("        } catch (org.xml.sax.SAXException e) {");
+                pw.println("            throw e;");
+                pw.println("        } catch (Exception e) {");
+                pw.println("            throw new org.xml.sax.SAXException(e);");
+                pw.println("        }");
+                pw.println("        context.endBean(name);");
+                pw.println("    }");
+                pw.println("}");
+            }
+            emitters.add(qualifiedEmitterName);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed writing BeanEmitter for " + bean + ": " + e.getMessage(), bean);
+        }
+    }
+
+    private List<ExecutableElement> getters(TypeElement bean) {
+        List<ExecutableElement> getters = new ArrayList<>();
+        for (ExecutableElement m : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(bean))) {
+            String methodName = m.getSimpleName().toString();
+            if (methodName.startsWith("get") && (methodName.length() > "get".length()) && m.getModifiers().contains(Modifier.PUBLIC)
+                    && m.getParameters().isEmpty() && !methodName.equals("getClass") && (mode(m) != BeanSourceProperty.Type.EXCLUDE)) {
+                getters.add(m);
+            }
+        }
+
+        Collections.sort(getters, new Comparator<ExecutableElement>() {
+            @Override
+            public int compare(ExecutableElement m1, ExecutableElement m2) {
+                String n1 = m1.getSimpleName().toString();
+                String n2 = m2.getSimpleName().toString();
+                int cmp = propertyName(n1).compareTo(propertyName(n2));
+                if (cmp != 0) {
+                    return cmp;
+                }
+                return n1.compareTo(n2);
+            }
+        });
+
+        return getters;
+    }
+
+    private String emitStatement(String beanType, ExecutableElement getter) {
+        String methodName = getter.getSimpleName().toString();
+        String property = '"' + propertyName(methodName) + '"';
+        String call = (getter.getModifiers().contains(Modifier.STATIC) ? beanType : "b") + "." + methodName + "()";
+        TypeMirror returnType = getter.getReturnType();
+
+        if (mode(getter) == BeanSourceProperty.Type.SIMPLE) {
+            if (returnType.getKind() == TypeKind.VOID) {
+                return call + "; context.emitProperty(" + property + ", \"null\");";
+            }
+            return "context.emitProperty(" + property + ", String.valueOf((Object) " + call + "));";
+        }
+
+        if (returnType.getKind().isPrimitive()) {
+            return "context.emitProperty(" + property + ", " + call + ");";
+        }
+
+        switch (returnType.getKind()) {
+            case VOID:
+                return call + "; context.emitProperty(" + property + ", \"\");";
+
+            case DECLARED:
+                if (processingEnv.getTypeUtils().erasure(returnType).toString().equals(String.class.getName())) {
+                    return "{ String v = " + call + "; context.emitProperty(" + property + ", (v == null) ? \"\" : v); }";
+                }
+                return "context.emitObject(" + property + ", " + call + ");";
+
+            default:
+                return "context.emitObject(" + property + ", " + call + ");";
+        }
+    }
+
+    private static BeanSourceProperty.Type mode(ExecutableElement m) {
+        BeanSourceProperty property = m.getAnnotation(BeanSourceProperty.class);
+        return (property == null) ? BeanSourceProperty.Type.COMPLEX : property.value();
+    }
+
+    private static String propertyName(String methodName) {
+        String name = methodName.substring("get".length());
+        return name.substring(0, 1).toLowerCase() + name.substring(1);
+    }
+
+    private static String flatName(TypeElement bean) {
+        StringBuilder name = new StringBuilder(bean.getSimpleName());
+        for (Element e = bean.getEnclosingElement(); e instanceof TypeElement; e = e.getEnclosingElement()) {
+            name.insert(0, '_').insert(0, e.getSimpleName());
+        }
+        return name.toString();
+    }
+
+    private void writeServiceFile() {
+        if (emitters.isEmpty()) {
+            return;
+        }
+
+        Set<String> services = new LinkedHashSet<>();
+        try {
+            FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(existing.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty()) {
+                        services.add(line);
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // no previous registrations
+        }
+        services.addAll(emitters);
+
+        try {
+            FileObject serviceFile = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (Writer w = serviceFile.openWriter()) {
+                for (String service : services) {
+                    w.write(service);
+                    w.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed writing " + SERVICE_FILE + ": " + e.getMessage());
+        }
+    }
+}
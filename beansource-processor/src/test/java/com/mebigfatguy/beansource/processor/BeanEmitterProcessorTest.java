@@ -0,0 +1,105 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mebigfatguy.beansource.BeanEmitters;
+import com.mebigfatguy.beansource.BeanSource;
+
+public class BeanEmitterProcessorTest {
+
+    private static final String ORDER = "package test;\n" + "import java.util.*;\n" + "import com.mebigfatguy.beansource.annotations.*;\n" + "@BeanSourceBean\n"
+            + "public class Order {\n" + "    public String getId() { return \"A-1\"; }\n" + "    public int getQuantity() { return 3; }\n"
+            + "    public double getPrice() { return 9.5; }\n" + "    public List<String> getTags() { return Arrays.asList(\"x\", \"y\"); }\n"
+            + "    public String getNote() { return null; }\n"
+            + "    @BeanSourceProperty(BeanSourceProperty.Type.EXCLUDE) public String getSecret() { return \"secret\"; }\n"
+            + "    @BeanSourceProperty(BeanSourceProperty.Type.SIMPLE) public Object getSummary() { return new Line(); }\n"
+            + "    public Line getLine() { return new Line(); }\n" + "    public static class Line {\n" + "        public String getSku() { return \"sku\"; }\n"
+            + "        public String toString() { return \"line\"; }\n" + "    }\n" + "}\n";
+
+    @Test
+    public void testGeneratedEmitterMatchesIntrospection() throws Exception {
+        File dir = Files.createTempDirectory("beansource").toFile();
+        File src = new File(dir, "src/test");
+        File out = new File(dir, "classes");
+        Assert.assertTrue(src.mkdirs() && out.mkdirs());
+        File orderFile = new File(src, "Order.java");
+        Files.write(orderFile.toPath(), ORDER.getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fm = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            Iterable<? extends JavaFileObject> units = fm.getJavaFileObjects(orderFile);
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fm, null,
+                    Arrays.asList("-d", out.getPath(), "-classpath", System.getProperty("java.class.path")), null, units);
+            task.setProcessors(Collections.singletonList(new BeanEmitterProcessor()));
+            Assert.assertTrue(task.call().booleanValue());
+        }
+
+        File serviceFile = new File(out, "META-INF/services/com.mebigfatguy.beansource.BeanEmitter");
+        Assert.assertEquals("test.OrderBeanSourceEmitter", new String(Files.readAllBytes(serviceFile.toPath()), StandardCharsets.UTF_8).trim());
+
+        String generated;
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { out.toURI().toURL() }, getClass().getClassLoader())) {
+            Class<?> orderClass = loader.loadClass("test.Order");
+            Assert.assertNotNull(BeanEmitters.forClass(orderClass));
+            generated = toXml(orderClass.getDeclaredConstructor().newInstance());
+        }
+
+        Files.write(serviceFile.toPath(), "test.MissingEmitter\ntest.OrderBeanSourceEmitter\n".getBytes(StandardCharsets.UTF_8));
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { out.toURI().toURL() }, getClass().getClassLoader())) {
+            Assert.assertNotNull(BeanEmitters.forClass(loader.loadClass("test.Order")));
+        }
+
+        Assert.assertTrue(serviceFile.delete());
+
+        String introspected;
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { out.toURI().toURL() }, getClass().getClassLoader())) {
+            Class<?> orderClass = loader.loadClass("test.Order");
+            Assert.assertNull(BeanEmitters.forClass(orderClass));
+            introspected = toXml(orderClass.getDeclaredConstructor().newInstance());
+        }
+
+        Assert.assertEquals(introspected, generated);
+        Assert.assertEquals(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?><order type=\"bean\"><id>A-1</id><line type=\"bean\"><sku>sku</sku></line><note/><price>9.5</price><quantity>3</quantity><summary>line</summary><tags type=\"collection\"><item>x</item><item>y</item></tags></order>",
+                generated);
+    }
+
+    private String toXml(Object bean) throws Exception {
+        StringWriter sw = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(new BeanSource(bean, "order"), new StreamResult(sw));
+        return sw.toString();
+    }
+}
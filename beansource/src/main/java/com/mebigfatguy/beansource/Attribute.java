@@ -57,7 +57,7 @@ public class Attribute {
 
         Attribute that = (Attribute) o;
 
-        return uri.equals(that.uri) && qName.equals(that.qName) && value.equals(that.value);
+        return uri.equals(that.uri) && localName.equals(that.localName) && qName.equals(that.qName) && value.equals(that.value);
     }
 
     @Override
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xml.sax.Attributes;
+
+/**
+ * an array backed attributes list. Lookups by qName switch to a hash index once there are more than a handful of attributes. Adapters made with
+ * {@link #of} can't be changed, and so can be shared between documents and threads.
+ */
+public class AttributesAdapter implements Attributes {
+
+    private static final int HASH_THRESHOLD = 8;
+
+    public static final AttributesAdapter EMPTY = of();
+
+    private Attribute[] attributes;
+    private int size;
+    private Map<String, Integer> qNameIndex;
+    private boolean immutable;
+
+    public AttributesAdapter() {
+        attributes = new Attribute[3];
+    }
+
+    /**
+     * creates an unmodifiable adapter holding the given attributes
+     */
+    public static AttributesAdapter of(Attribute... atts) {
+        AttributesAdapter aa = new AttributesAdapter();
+        for (Attribute att : atts) {
+            aa.addAttribute(att);
+        }
+        aa.immutable = true;
+        return aa;
+    }
+
+    public void addAttribute(Attribute attribute) {
+        if (immutable) {
+            throw new UnsupportedOperationException("Attributes " + this + " can not be changed");
+        }
+
+        if (size == attributes.length) {
+            attributes = Arrays.copyOf(attributes, size * 2);
+        }
+        attributes[size] = attribute;
+
+        if (qNameIndex != null) {
+            indexQName(size);
+        } else if (size == HASH_THRESHOLD) {
+            qNameIndex = new HashMap<>();
+            for (int i = 0; i <= size; i++) {
+                indexQName(i);
+            }
+        }
+        size++;
+    }
+
+    private void indexQName(int index) {
+        String qName = attributes[index].getQName();
+        if (!qNameIndex.containsKey(qName)) {
+            qNameIndex.put(qName, Integer.valueOf(index));
+        }
+    }
+
+    @Override
+    public int getIndex(String uri, String localName) {
+        for (int i = 0; i < size; i++) {
+            Attribute att = attributes[i];
+            if (att.getUri().equals(uri) && att.getLocalName().equals(localName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getIndex(String qName) {
+        if (qNameIndex != null) {
+            Integer index = qNameIndex.get(qName);
+            return (index == null) ? -1 : index.intValue();
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (attributes[i].getQName().equals(qName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getLength() {
+        return size;
+    }
+
+    @Override
+    public String getLocalName(int index) {
+        return ((index >= 0) && (index < size)) ? attributes[index].getLocalName() : null;
+    }
+
+    @Override
+    public String getQName(int index) {
+        return ((index >= 0) && (index < size)) ? attributes[index].getQName() : null;
+    }
+
+    @Override
+    public String getType(int index) {
+        return "";
+    }
+
+    @Override
+    public String getType(String uri, String localName) {
+        return "";
+    }
+
+    @Override
+    public String getType(String qName) {
+        return "";
+    }
+
+    @Override
+    public String getURI(int index) {
+        return ((index >= 0) && (index < size)) ? attributes[index].getUri() : null;
+    }
+
+    @Override
+    public String getValue(int index) {
+        return ((index >= 0) && (index < size)) ? attributes[index].getValue() : null;
+    }
+
+    @Override
+    public String getValue(String uri, String localName) {
+        return getValue(getIndex(uri, localName));
+    }
+
+    @Override
+    public String getValue(String qName) {
+        return getValue(getIndex(qName));
+    }
+
+    @Override
+    public String toString() {
+        return "AttributesAdapter[" + Arrays.asList(attributes).subList(0, size) + "]";
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import org.xml.sax.SAXException;
+
+/**
+ * writes one bean class as xml events without introspection. Emitters produce exactly the elements the reflective reader would for the same bean,
+ * delegating anything that isn't a plain property value back to the context.
+ */
+public interface BeanEmitter {
+
+    Class<?> getBeanClass();
+
+    void emit(Object bean, String name, EmitterContext context) throws SAXException;
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+
+/**
+ * finds the bean emitters registered as services, such as the ones written by the beansource annotation processor. The registered emitters are
+ * loaded once per class loader, into a table by bean class. Each bean class holds its loader's table in a ClassValue, so the table lives as long as
+ * classes of that loader are in use, and goes away with them.
+ */
+public final class BeanEmitters {
+
+    private static final ClassValue<Map<Class<?>, BeanEmitter>> EMITTERS = new ClassValue<Map<Class<?>, BeanEmitter>>() {
+        @Override
+        protected Map<Class<?>, BeanEmitter> computeValue(Class<?> type) {
+            return emittersFor(type.getClassLoader());
+        }
+    };
+
+    /** the tables already loaded, held weakly, as the emitters in them refer back to their loaders */
+    private static final Map<ClassLoader, WeakReference<Map<Class<?>, BeanEmitter>>> LOADED = new WeakHashMap<>();
+
+    private BeanEmitters() {
+    }
+
+    /**
+     * returns the registered emitter for exactly this bean class, or null if there isn't one
+     */
+    public static BeanEmitter forClass(Class<?> beanClass) {
+        return EMITTERS.get(beanClass).get(beanClass);
+    }
+
+    private static Map<Class<?>, BeanEmitter> emittersFor(ClassLoader loader) {
+        if (loader == null) {
+            return Collections.<Class<?>, BeanEmitter> emptyMap();
+        }
+
+        synchronized (LOADED) {
+            WeakReference<Map<Class<?>, BeanEmitter>> ref = LOADED.get(loader);
+            Map<Class<?>, BeanEmitter> emitters = (ref == null) ? null : ref.get();
+            if (emitters != null) {
+                return emitters;
+            }
+        }
+
+        Map<Class<?>, BeanEmitter> emitters = new HashMap<>();
+        Iterator<BeanEmitter> it = ServiceLoader.load(BeanEmitter.class, loader).iterator();
+        boolean more = true;
+        while (more) {
+            try {
+                more = it.hasNext();
+                if (more) {
+                    BeanEmitter emitter = it.next();
+                    if (!emitters.containsKey(emitter.getBeanClass())) {
+                        emitters.put(emitter.getBeanClass(), emitter);
+                    }
+                }
+            } catch (ServiceConfigurationError e) {
+                // a broken registration, skip it, so only its bean class is introspected
+            }
+        }
+        emitters = Collections.unmodifiableMap(emitters);
+
+        synchronized (LOADED) {
+            WeakReference<Map<Class<?>, BeanEmitter>> ref = LOADED.get(loader);
+            Map<Class<?>, BeanEmitter> existing = (ref == null) ? null : ref.get();
+            if (existing != null) {
+                return existing;
+            }
+            LOADED.put(loader, new WeakReference<>(emitters));
+            return emitters;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xml.sax.SAXException;
+
+/**
+ * a cache of recorded documents, for beans that are written over and over without changing, such as catalogs or configuration. The first time a
+ * bean is asked for, its events are recorded in the compact form of {@link BinaryEventRecorder}, and every later time the recording is replayed
+ * without walking the bean or calling its getters. Entries are keyed either by a key and version the caller supplies, where a new version replaces
+ * the old recording, or by the identity of the bean, held weakly, so that a bean that is no longer used drops out of the cache. The cache holds
+ * recordings up to a total size in bytes, dropping the least recently used once it is full. It is safe to use from any number of threads.
+ */
+public class BeanEventCache {
+
+    private final long maxBytes;
+    private final Map<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReferenceQueue<Object> collectedBeans = new ReferenceQueue<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long bytes;
+
+    /**
+     * creates a cache that holds recordings up to the given number of bytes. A recording larger than the whole cache is replayed once and not kept.
+     */
+    public BeanEventCache(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("The cache size must be positive, not " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * returns a source that replays the recording of the bean source cached under the key and version, recording it first if the key isn't cached,
+     * or was cached with another version. The key must identify everything that shapes the document, the bean, its name and the source's options.
+     */
+    public BinaryEventSource getSource(Object key, long version, BeanSource source) throws IOException, SAXException {
+        return lookup(key, version, source);
+    }
+
+    /**
+     * returns a source that replays the recording of the bean source, keyed by the identity of its bean. The bean's entry is dropped once the bean
+     * is garbage collected, so the bean must be written with the same name and options each time, and must not change while it's cached.
+     */
+    public BinaryEventSource getSource(BeanSource source) throws IOException, SAXException {
+        Object bean = source.getBean();
+        if (bean == null) {
+            throw new IllegalArgumentException("A null bean has no identity to cache it by");
+        }
+        return lookup(new IdentityKey(bean, null), 0, source);
+    }
+
+    /**
+     * drops the recording cached under the key
+     */
+    public void invalidate(Object key) {
+        synchronized (entries) {
+            remove(key);
+        }
+    }
+
+    /**
+     * drops the recording cached for the bean by its identity
+     */
+    public void invalidateBean(Object bean) {
+        synchronized (entries) {
+            remove(new IdentityKey(bean, null));
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * the total size of the cached recordings in bytes
+     */
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    public int getEntries() {
+        synchronized (entries) {
+            expungeCollected();
+            return entries.size();
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private BinaryEventSource lookup(Object key, long version, BeanSource source) throws IOException, SAXException {
+        synchronized (entries) {
+            expungeCollected();
+            Entry entry = entries.get(key);
+            if ((entry != null) && (entry.version == version)) {
+                hits.incrementAndGet();
+                return new BinaryEventSource(entry.events);
+            }
+        }
+
+        misses.incrementAndGet();
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        source.writeEventsTo(Channels.newChannel(recording));
+        ByteBuffer events = ByteBuffer.wrap(recording.toByteArray()).asReadOnlyBuffer();
+
+        if (events.remaining() <= maxBytes) {
+            Object storedKey = (key instanceof IdentityKey) ? new IdentityKey(source.getBean(), collectedBeans) : key;
+            synchronized (entries) {
+                remove(key);
+                entries.put(storedKey, new Entry(version, events));
+                bytes += events.remaining();
+                evict();
+            }
+        }
+        return new BinaryEventSource(events);
+    }
+
+    private void remove(Object key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.events.remaining();
+        }
+    }
+
+    /**
+     * drops the least recently used recordings until the cache is back within its size
+     */
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while ((bytes > maxBytes) && it.hasNext()) {
+            bytes -= it.next().events.remaining();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void expungeCollected() {
+        Reference<?> ref;
+        while ((ref = collectedBeans.poll()) != null) {
+            remove(ref);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BeanEventCache[hits: " + hits + ", misses: " + misses + ", evictions: " + evictions + ", bytes: " + getBytes() + "]";
+    }
+
+    private static final class Entry {
+        final long version;
+        final ByteBuffer events;
+
+        Entry(long version, ByteBuffer events) {
+            this.version = version;
+            this.events = events;
+        }
+    }
+
+    /**
+     * a weak key that matches by the identity of its bean. Once the bean is collected the key only matches itself, so it can still be removed.
+     */
+    private static final class IdentityKey extends WeakReference<Object> {
+        private final int hash;
+
+        IdentityKey(Object bean, ReferenceQueue<Object> queue) {
+            super(bean, queue);
+            hash = System.identityHashCode(bean);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof IdentityKey)) {
+                return false;
+            }
+            Object bean = get();
+            return (bean != null) && (bean == ((IdentityKey) o).get());
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.BaseStream;
+
+import com.mebigfatguy.beansource.annotations.BeanSourceProperty;
+
+/**
+ * the introspection results for one class, built once for each way of introspecting and shared by all readers. Plans are held in ClassValues so
+ * they go away with the class they describe, and don't pin application class loaders.
+ */
+final class BeanPlan {
+
+    enum Kind {
+        SIMPLE, ENUM, DATE, TEMPORAL, ARRAY, COLLECTION, SEQUENCE, MAP, BEAN, BOOLEAN, BYTE, CHAR, SHORT, INT, LONG, FLOAT, DOUBLE
+    };
+
+    private static final Map<BeanSource.Introspection, ClassValue<BeanPlan>> PLANS = new EnumMap<>(BeanSource.Introspection.class);
+
+    static {
+        for (final BeanSource.Introspection introspection : BeanSource.Introspection.values()) {
+            PLANS.put(introspection, new ClassValue<BeanPlan>() {
+                @Override
+                protected BeanPlan computeValue(Class<?> type) {
+                    return new BeanPlan(type, introspection);
+                }
+            });
+        }
+    }
+
+    private static final PropertyPlan[] NO_PROPERTIES = new PropertyPlan[0];
+
+    private final Kind kind;
+    private final PropertyPlan[] properties;
+
+    private BeanPlan(Class<?> c, BeanSource.Introspection introspection) {
+        kind = classify(c);
+        properties = ((kind == Kind.BEAN) || (kind == Kind.TEMPORAL)) ? buildProperties(c, introspection) : NO_PROPERTIES;
+    }
+
+    static BeanPlan forClass(Class<?> c) {
+        return forClass(c, BeanSource.Introspection.GETTERS);
+    }
+
+    static BeanPlan forClass(Class<?> c, BeanSource.Introspection introspection) {
+        return PLANS.get(introspection).get(c);
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    PropertyPlan[] getProperties() {
+        return properties;
+    }
+
+    static Kind classify(Class<?> c) {
+        if (c.isPrimitive()) {
+            Kind primitiveKind = primitiveKind(c);
+            if (primitiveKind != null) {
+                return primitiveKind;
+            }
+        }
+
+        if (c.isArray()) {
+            return Kind.ARRAY;
+        } else if (Collection.class.isAssignableFrom(c)) {
+            return Kind.COLLECTION;
+        } else if (Map.class.isAssignableFrom(c)) {
+            return Kind.MAP;
+        } else if (Iterator.class.isAssignableFrom(c) || BaseStream.class.isAssignableFrom(c) || Spliterator.class.isAssignableFrom(c)
+                || Iterable.class.isAssignableFrom(c)) {
+            return Kind.SEQUENCE;
+        } else if (validBeanClass(c)) {
+            return Kind.SIMPLE;
+        } else if (Enum.class.isAssignableFrom(c)) {
+            return Kind.ENUM;
+        } else if (Date.class.isAssignableFrom(c)) {
+            return Kind.DATE;
+        } else if (TemporalFormat.isTemporalClass(c)) {
+            return Kind.TEMPORAL;
+        }
+
+        return Kind.BEAN;
+    }
+
+    private static Kind primitiveKind(Class<?> c) {
+        if (c == boolean.class) {
+            return Kind.BOOLEAN;
+        } else if (c == byte.class) {
+            return Kind.BYTE;
+        } else if (c == char.class) {
+            return Kind.CHAR;
+        } else if (c == short.class) {
+            return Kind.SHORT;
+        } else if (c == int.class) {
+            return Kind.INT;
+        } else if (c == long.class) {
+            return Kind.LONG;
+        } else if (c == float.class) {
+            return Kind.FLOAT;
+        } else if (c == double.class) {
+            return Kind.DOUBLE;
+        }
+
+        return null;
+    }
+
+    static boolean validBeanClass(Class<?> c) {
+        return ((c == boolean.class) || (c == Boolean.class) || (c == byte.class) || (c == Byte.class) || (c == char.class) || (c == Character.class)
+                || (c == double.class) || (c == Double.class) || (c == float.class) || (c == Float.class) || (c == int.class) || (c == Integer.class)
+                || (c == long.class) || (c == Long.class) || (c == short.class) || (c == Short.class) || (c == String.class) || (c == Void.class));
+    }
+
+    /**
+     * getMethods() makes no promise about ordering, and it differs between vms, so properties are sorted by name to give a stable document. Records
+     * read through their components are written in component order, which the class file does define.
+     */
+    private static PropertyPlan[] buildProperties(Class<?> c, BeanSource.Introspection introspection) {
+        if ((introspection != BeanSource.Introspection.GETTERS) && c.isRecord()) {
+            return buildRecordProperties(c);
+        }
+
+        List<PropertyPlan> plans = new ArrayList<>();
+        Set<String> excluded = new HashSet<>();
+        for (Method m : c.getMethods()) {
+            String methodName = m.getName();
+            if (((m.getModifiers() & Modifier.PUBLIC) == 0) || (m.getParameterTypes().length != 0)) {
+                continue;
+            }
+
+            String name;
+            if (methodName.startsWith("get") && (methodName.length() > "get".length()) && !methodName.equals("getClass")) {
+                name = propertyName(methodName);
+            } else if ((introspection != BeanSource.Introspection.GETTERS) && methodName.startsWith("is") && (methodName.length() > "is".length())
+                    && ((m.getReturnType() == boolean.class) || (m.getReturnType() == Boolean.class))) {
+                name = propertyName(methodName, "is".length());
+            } else {
+                continue;
+            }
+
+            BeanSourceProperty property = m.getAnnotation(BeanSourceProperty.class);
+            BeanSourceProperty.Type mode = getAnnotation(property);
+            if (mode != BeanSourceProperty.Type.EXCLUDE) {
+                plans.add(new PropertyPlan(m, name, mode, isPrefetch(property)));
+            } else {
+                excluded.add(name);
+            }
+        }
+
+        if (introspection == BeanSource.Introspection.FIELDS) {
+            addFieldProperties(c, plans, excluded);
+        }
+
+        Collections.sort(plans, new Comparator<PropertyPlan>() {
+            @Override
+            public int compare(PropertyPlan p1, PropertyPlan p2) {
+                int cmp = p1.getName().compareTo(p2.getName());
+                if (cmp != 0) {
+                    return cmp;
+                }
+                return p1.getMemberName().compareTo(p2.getMemberName());
+            }
+        });
+
+        if (introspection != BeanSource.Introspection.GETTERS) {
+            removeDuplicateNames(plans);
+        }
+
+        return plans.toArray(new PropertyPlan[plans.size()]);
+    }
+
+    private static PropertyPlan[] buildRecordProperties(Class<?> c) {
+        List<PropertyPlan> plans = new ArrayList<>();
+        for (RecordComponent component : c.getRecordComponents()) {
+            BeanSourceProperty property = component.getAnnotation(BeanSourceProperty.class);
+            if (property == null) {
+                property = component.getAccessor().getAnnotation(BeanSourceProperty.class);
+            }
+
+            BeanSourceProperty.Type mode = getAnnotation(property);
+            if (mode != BeanSourceProperty.Type.EXCLUDE) {
+                plans.add(new PropertyPlan(component.getAccessor(), component.getName(), mode, isPrefetch(property)));
+            }
+        }
+        return plans.toArray(new PropertyPlan[plans.size()]);
+    }
+
+    /**
+     * adds the public instance fields, and the instance fields of any access annotated with BeanSourceProperty, that aren't already read by a
+     * getter or excluded by one
+     */
+    private static void addFieldProperties(Class<?> c, List<PropertyPlan> plans, Set<String> excluded) {
+        Set<String> names = new HashSet<>(excluded);
+        for (PropertyPlan plan : plans) {
+            names.add(plan.getName());
+        }
+
+        for (Class<?> sc = c; (sc != null) && (sc != Object.class); sc = sc.getSuperclass()) {
+            for (Field f : sc.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers()) || f.isSynthetic()) {
+                    continue;
+                }
+
+                BeanSourceProperty property = f.getAnnotation(BeanSourceProperty.class);
+                if (((property == null) && (!Modifier.isPublic(f.getModifiers()) || !Modifier.isPublic(sc.getModifiers()))) || !names.add(f.getName())) {
+                    continue;
+                }
+
+                BeanSourceProperty.Type mode = getAnnotation(property);
+                if (mode != BeanSourceProperty.Type.EXCLUDE) {
+                    plans.add(new PropertyPlan(f, mode, isPrefetch(property)));
+                }
+            }
+        }
+    }
+
+    /**
+     * keeps the first of each property name, so a get method wins over an is method of the same name, as it sorts first
+     */
+    private static void removeDuplicateNames(List<PropertyPlan> plans) {
+        Iterator<PropertyPlan> it = plans.iterator();
+        String lastName = null;
+        while (it.hasNext()) {
+            String name = it.next().getName();
+            if (name.equals(lastName)) {
+                it.remove();
+            }
+            lastName = name;
+        }
+    }
+
+    static String propertyName(String methodName) {
+        return propertyName(methodName, "get".length());
+    }
+
+    private static String propertyName(String methodName, int prefixLength) {
+        String name = methodName.substring(prefixLength);
+        return name.substring(0, 1).toLowerCase() + name.substring(1);
+    }
+
+    private static BeanSourceProperty.Type getAnnotation(BeanSourceProperty property) {
+        if (property == null) {
+            return BeanSourceProperty.Type.COMPLEX;
+        }
+
+        return property.value();
+    }
+
+    private static boolean isPrefetch(BeanSourceProperty property) {
+        return (property != null) && property.prefetch();
+    }
+
+    @Override
+    public String toString() {
+        return "BeanPlan[kind: " + kind + ", properties: " + properties.length + "]";
+    }
+
+    static final class PropertyPlan {
+        private final String memberName;
+        private final Class<?> type;
+        private final PropertyAccessor accessor;
+        private final String name;
+        private final BeanSourceProperty.Type mode;
+        private final Kind kind;
+        private final boolean prefetch;
+
+        PropertyPlan(Method getter, String name, BeanSourceProperty.Type mode, boolean prefetch) {
+            memberName = getter.getName();
+            type = getter.getReturnType();
+            accessor = PropertyAccessor.forGetter(getter);
+            this.name = name;
+            this.mode = mode;
+            kind = classify(type);
+            this.prefetch = prefetch;
+        }
+
+        PropertyPlan(Field field, BeanSourceProperty.Type mode, boolean prefetch) {
+            memberName = field.getName();
+            type = field.getType();
+            accessor = PropertyAccessor.forField(field);
+            name = field.getName();
+            this.mode = mode;
+            kind = classify(type);
+            this.prefetch = prefetch;
+        }
+
+        /**
+         * the name of the getter or field the property is read from
+         */
+        String getMemberName() {
+            return memberName;
+        }
+
+        /**
+         * the declared type of the property, the getter's return type or the field's type
+         */
+        Class<?> getType() {
+            return type;
+        }
+
+        PropertyAccessor getAccessor() {
+            return accessor;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        BeanSourceProperty.Type getMode() {
+            return mode;
+        }
+
+        Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * whether the property is annotated to be read ahead
+         */
+        boolean isPrefetch() {
+            return prefetch;
+        }
+
+        @Override
+        public String toString() {
+            return "PropertyPlan[name: " + name + ", mode: " + mode + ", kind: " + kind + ", prefetch: " + prefetch + "]";
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+
+/**
+ * a source for a sequence of beans that is read as it is written, such as the rows of a large query, so the sequence never has to be held in
+ * memory. Each bean is written as an item element of the root element, as the items of a collection are, and the sequence is closed once it has
+ * been written, or has failed, if it is closeable. With the shared reference mode, every bean written is remembered to find later references to
+ * it, so memory then grows with the sequence.
+ */
+public class BeanSequenceSource extends BeanSource {
+
+    public BeanSequenceSource(Iterator<?> beans, String name) {
+        super(beans, name);
+    }
+
+    public BeanSequenceSource(Stream<?> beans, String name) {
+        super(beans, name);
+    }
+
+    public BeanSequenceSource(Spliterator<?> beans, String name) {
+        super(beans, name);
+    }
+}
@@ -0,0 +1,1912 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mebigfatguy.beansource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.time.DateTimeException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.BaseStream;
+
+import javax.xml.transform.sax.SAXSource;
+
+import jdk.jfr.EventType;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import com.mebigfatguy.beansource.annotations.BeanSourceProperty;
+
+public class BeanSource extends SAXSource {
+
+    /**
+     * the system property used to pick the engine of newly created bean sources, either interpreted or compiled
+     */
+    public static final String ENGINE_PROPERTY = "beansource.engine";
+
+    /**
+     * the default number of items an array or collection needs before its items are written in parallel
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1024;
+
+    /**
+     * how beans are turned into events. The interpreted engine walks the cached bean plan for each bean, the compiled engine emits each bean class
+     * through an emitter built once for that class, falling back to the interpreted walk for classes it can't compile. Both use a registered
+     * emitter, see {@link BeanEmitters}, for classes that have one. The iterative engine walks the bean plans with its own stack rather than
+     * recursing, so the depth of the object graph is not limited by the thread's stack. It produces the same events, but doesn't use emitters.
+     */
+    public enum Engine {
+        INTERPRETED, COMPILED, ITERATIVE
+    };
+
+    /**
+     * how arrays of primitives are written. Elements writes each value as its own item element, list writes all the values as one space separated
+     * text node of an element marked with encoding="list".
+     */
+    public enum ArrayEncoding {
+        ELEMENTS, LIST
+    };
+
+    /**
+     * how objects reached more than once are written. None writes every occurrence in full, which never ends for cyclic graphs. Shared gives the
+     * first occurrence of each array, collection, map or bean an id attribute, and writes later occurrences as an empty element with an idref
+     * attribute. Fail on cycle writes shared objects in full, but fails with the property path of any object that contains itself.
+     */
+    public enum ReferenceMode {
+        NONE, SHARED, FAIL_ON_CYCLE
+    };
+
+    /**
+     * how the properties of a bean are found. Getters reads the public get methods, as always. Properties also reads boolean is methods, and reads
+     * records through their component accessors, in component order. Fields also reads public instance fields, and instance fields annotated with
+     * BeanSourceProperty, for classes that hold their state in fields rather than behind getters, preferring a getter to a field of the same name.
+     * Annotations on record components and fields are honored as they are on getters.
+     */
+    public enum Introspection {
+        GETTERS, PROPERTIES, FIELDS
+    };
+
+    private Object bean;
+    private String beanName;
+    private Engine engine = defaultEngine();
+    private ArrayEncoding arrayEncoding = ArrayEncoding.ELEMENTS;
+    private TemporalFormat temporalFormat = TemporalFormat.LOCALE;
+    private ReferenceMode referenceMode = ReferenceMode.NONE;
+    private Introspection introspection = Introspection.GETTERS;
+    private Executor parallelExecutor;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private Projection projection;
+    private MetricsListener metricsListener;
+    private Snapshot baseline;
+    private Prefetch prefetch;
+    private boolean canonical;
+
+    public BeanSource(Object javaBean, String name) {
+        bean = javaBean;
+        beanName = name;
+    }
+
+    Object getBean() {
+        return bean;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(Engine engine) {
+        this.engine = (engine == null) ? Engine.INTERPRETED : engine;
+    }
+
+    public ArrayEncoding getArrayEncoding() {
+        return arrayEncoding;
+    }
+
+    public void setArrayEncoding(ArrayEncoding encoding) {
+        arrayEncoding = (encoding == null) ? ArrayEncoding.ELEMENTS : encoding;
+    }
+
+    public TemporalFormat getTemporalFormat() {
+        return temporalFormat;
+    }
+
+    public void setTemporalFormat(TemporalFormat format) {
+        temporalFormat = (format == null) ? TemporalFormat.LOCALE : format;
+    }
+
+    public ReferenceMode getReferenceMode() {
+        return referenceMode;
+    }
+
+    public void setReferenceMode(ReferenceMode mode) {
+        referenceMode = (mode == null) ? ReferenceMode.NONE : mode;
+    }
+
+    public Introspection getIntrospection() {
+        return introspection;
+    }
+
+    /**
+     * sets how the properties of beans are found. Registered emitters are only used with getter introspection, as they are generated from the
+     * getters. null resets to the default, getters.
+     */
+    public void setIntrospection(Introspection introspection) {
+        this.introspection = (introspection == null) ? Introspection.GETTERS : introspection;
+    }
+
+    public Executor getParallelExecutor() {
+        return parallelExecutor;
+    }
+
+    /**
+     * sets the executor, such as a ForkJoinPool, used by writeTo to write the items of large arrays and collections in parallel. Items are written
+     * in chunks, each to its own buffer, and the buffers are written out in order, so the document is the same as when written sequentially. The
+     * beans must be safe to read from several threads. Parallel writing is not used when references are tracked, or by the other ways of reading
+     * the source. null, the default, writes everything on the calling thread.
+     */
+    public void setParallelExecutor(Executor executor) {
+        parallelExecutor = executor;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * sets the number of items an array or collection needs before its items are written in parallel
+     */
+    public void setParallelThreshold(int threshold) {
+        parallelThreshold = Math.max(1, threshold);
+    }
+
+    public Projection getProjection() {
+        return projection;
+    }
+
+    /**
+     * limits the document to the parts of the graph selected by the projection, without calling the getters of the parts left out. Registered and
+     * compiled emitters are not used while a projection is set, as they can't skip getters. null, the default, writes the whole graph.
+     */
+    public void setProjection(Projection projection) {
+        this.projection = projection;
+    }
+
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * sets the listener told of the beans visited, the time taken by each getter, and the size of each document written. Registered and compiled
+     * emitters are not used while a listener is set, or while the flight recorder is recording slow getter events, so that every getter is timed.
+     * null, the default, measures nothing, leaving the reader as it is without instrumentation.
+     */
+    public void setMetricsListener(MetricsListener listener) {
+        metricsListener = listener;
+    }
+
+    public Snapshot getBaseline() {
+        return baseline;
+    }
+
+    /**
+     * sets the snapshot the document is compared with, so that parsing the source writes only what was added, changed or removed since, as
+     * described by {@link Snapshot}. The whole graph is still read, as a snapshot, before the delta is written. Pull readers ignore the baseline.
+     * null, the default, writes the whole document.
+     */
+    public void setBaseline(Snapshot baseline) {
+        this.baseline = baseline;
+    }
+
+    public Prefetch getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * sets how slow getters are read ahead of the document, concurrently, as described by {@link Prefetch}. Registered and compiled emitters are
+     * not used while prefetching, as they read every getter in place. Pull readers read ahead as the walk reaches each bean. null, the default,
+     * reads every getter in place, in document order.
+     */
+    public void setPrefetch(Prefetch prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public boolean isCanonical() {
+        return canonical;
+    }
+
+    /**
+     * sets whether the document is written in a canonical form, which is the same for equal graphs from run to run. Properties are always written
+     * in a fixed order, and a canonical document also sorts the items of sets, and the entries of maps, whose iteration order isn't defined, that is
+     * any but sorted, linked and enum ones. They are sorted by their natural order when they all have the same comparable class, and otherwise, or
+     * to break a tie, by the fingerprint of the item's own document. An item that is ordered by its fingerprint is walked twice, once to digest it
+     * and once to write it, so its getters, and those of everything under it, are called twice, and should be cheap and free of side effects. The
+     * events of the first walk aren't kept to replay, as the ids and idrefs of the shared reference mode depend on where the item is written. Dates
+     * written in the locale format still depend on the jvm's locale and zone.
+     */
+    public void setCanonical(boolean canonical) {
+        this.canonical = canonical;
+    }
+
+    /**
+     * returns a strong http entity tag for the document, from a SHA-256 digest of its events, without writing any xml. Use a canonical source for
+     * tags that are stable from run to run.
+     */
+    public String fingerprint() throws SAXException {
+        DigestHandler digest = new DigestHandler();
+        BeanXMLReader reader = new BeanXMLReader(this);
+        reader.setContentHandler(digest);
+        reader.parse(getInputSource());
+        return digest.getETag();
+    }
+
+    /**
+     * reads the whole graph into a snapshot, to be used as the baseline of later documents, or to write a delta from an earlier snapshot itself
+     */
+    public Snapshot snapshot() throws SAXException {
+        BeanXMLReader reader = new BeanXMLReader(this);
+        reader.baseline = null;
+        Snapshot.Builder builder = new Snapshot.Builder();
+        reader.setContentHandler(builder);
+        reader.parse(getInputSource());
+        return builder.getSnapshot();
+    }
+
+    /**
+     * writes the bean to the stream as a UTF-8 document, with the same bytes an identity transform of this source to a stream result would write,
+     * but without building a transformer or its serializer. The stream is flushed, but not closed.
+     */
+    public void writeTo(OutputStream os) throws IOException, SAXException {
+        write(new XMLByteWriter(os));
+    }
+
+    /**
+     * writes the bean to the writer, as {@link #writeTo(OutputStream)} does. The document still declares UTF-8, as a transform to a writer does.
+     */
+    public void writeTo(Writer w) throws IOException, SAXException {
+        write(new XMLByteWriter(w));
+    }
+
+    /**
+     * writes the bean to the channel as a UTF-8 document, as {@link #writeTo(OutputStream)} does. The channel is not closed.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException, SAXException {
+        write(new XMLByteWriter(channel));
+    }
+
+    /**
+     * records the bean's events to the channel in the compact binary form of {@link BinaryEventRecorder}, to be replayed later through a
+     * {@link BinaryEventSource}. The channel is not closed.
+     */
+    public void writeEventsTo(WritableByteChannel channel) throws IOException, SAXException {
+        write(new BinaryEventRecorder(channel));
+    }
+
+    /**
+     * parses into the handler, throwing the handler's IOException as it is, however deep in the graph it happened, and so however many
+     * SAXExceptions wrap it
+     */
+    private void write(ContentHandler handler) throws IOException, SAXException {
+        XMLReader reader = getXMLReader();
+        reader.setContentHandler(handler);
+        try {
+            reader.parse(getInputSource());
+        } catch (SAXException e) {
+            Exception cause = e.getException();
+            while (cause instanceof SAXException) {
+                cause = ((SAXException) cause).getException();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public InputSource getInputSource() {
+        return new InputSource();
+    }
+
+    @Override
+    public String getSystemId() {
+        return null;
+    }
+
+    @Override
+    public XMLReader getXMLReader() {
+        return new BeanXMLReader(this);
+    }
+
+    @Override
+    public void setInputSource(InputSource inputSource) {
+    }
+
+    @Override
+    public void setSystemId(String systemId) {
+    }
+
+    @Override
+    public void setXMLReader(XMLReader reader) {
+    }
+
+    private static Engine defaultEngine() {
+        String engineName = System.getProperty(ENGINE_PROPERTY);
+        if (engineName != null) {
+            try {
+                return Engine.valueOf(engineName.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                // unknown engine, use the default
+            }
+        }
+
+        return Engine.INTERPRETED;
+    }
+
+    static class BeanXMLReader implements XMLReader, EmitterContext {
+
+        private static final String BEAN = "bean";
+        private static final String ARRAY = "array";
+        private static final String COLLECTION = "collection";
+        private static final String MAP = "map";
+        private static final String TYPE = "type";
+        private static final String ENTRY = "entry";
+        private static final String KEY = "key";
+        private static final String VALUE = "value";
+        private static final String ITEM = "item";
+        private static final String ENCODING = "encoding";
+        private static final String LIST = "list";
+        private static final String ID = "id";
+        private static final String IDREF = "idref";
+        private static final int LIST_FLUSH_SIZE = TextBuffer.CHUNK_SIZE;
+        private static final int PARALLEL_MIN_CHUNK_SIZE = 64;
+        private static final boolean FLIGHT_RECORDER = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+        private static final AttributesAdapter BEAN_ATTRIBUTES = AttributesAdapter.of(new Attribute("", "", TYPE, BEAN));
+        private static final AttributesAdapter ARRAY_ATTRIBUTES = AttributesAdapter.of(new Attribute("", "", TYPE, ARRAY));
+        private static final AttributesAdapter LIST_ATTRIBUTES = AttributesAdapter.of(new Attribute("", "", TYPE, ARRAY),
+                new Attribute("", "", ENCODING, LIST));
+        private static final AttributesAdapter COLLECTION_ATTRIBUTES = AttributesAdapter.of(new Attribute("", "", TYPE, COLLECTION));
+        private static final AttributesAdapter MAP_ATTRIBUTES = AttributesAdapter.of(new Attribute("", "", TYPE, MAP));
+
+        private Object bean;
+        private String beanName;
+        private Engine engine;
+        private ArrayEncoding arrayEncoding;
+        private TemporalFormat temporalFormat;
+        private ReferenceMode referenceMode;
+        private Introspection introspection;
+        private Executor parallelExecutor;
+        private int parallelThreshold;
+        private XMLByteWriter parallelWriter;
+        private Projection projectionPaths;
+        private Projection.State projection;
+        private Projection.State[] projectionStack;
+        private int projectionDepth;
+        private MetricsListener metrics;
+        private Snapshot baseline;
+        private Prefetch prefetchOptions;
+        private Prefetcher prefetcher;
+        private boolean canonical;
+        private boolean timeGetters;
+        private boolean recordSlowGetters;
+        private CountingHandler counter;
+        private ParseEvent parseEvent;
+        private long startNanos;
+        private Map<Object, String> references;
+        private List<String> path;
+        private AttributesAdapter pendingBeanAttributes;
+        private TextBuffer textBuffer = new TextBuffer();
+        private Frame[] frames = new Frame[16];
+        private int depth;
+        private ContentHandler contentHandler = null;
+        private DTDHandler dtdHandler = null;
+        private EntityResolver entityResolver = null;
+        private ErrorHandler errorHandler = null;
+
+        public BeanXMLReader(BeanSource source) {
+            bean = source.bean;
+            beanName = source.beanName;
+            engine = source.engine;
+            arrayEncoding = source.arrayEncoding;
+            temporalFormat = source.temporalFormat;
+            referenceMode = source.referenceMode;
+            introspection = source.introspection;
+            parallelExecutor = source.parallelExecutor;
+            parallelThreshold = source.parallelThreshold;
+            projectionPaths = source.projection;
+            metrics = source.metricsListener;
+            baseline = source.baseline;
+            prefetchOptions = source.prefetch;
+            canonical = source.canonical;
+        }
+
+        /**
+         * creates a reader that writes parts of the document for another reader, with its options, but always sequentially
+         */
+        BeanXMLReader(BeanXMLReader parent) {
+            bean = parent.bean;
+            beanName = parent.beanName;
+            engine = parent.engine;
+            arrayEncoding = parent.arrayEncoding;
+            temporalFormat = parent.temporalFormat;
+            referenceMode = parent.referenceMode;
+            introspection = parent.introspection;
+            parallelThreshold = parent.parallelThreshold;
+            projectionPaths = parent.projectionPaths;
+            projection = parent.projection;
+            if (projection != null) {
+                projectionStack = new Projection.State[16];
+            }
+            metrics = parent.metrics;
+            canonical = parent.canonical;
+            prefetchOptions = parent.prefetchOptions;
+            if (prefetchOptions != null) {
+                prefetcher = new Prefetcher(prefetchOptions, introspection, metrics);
+            }
+            timeGetters = parent.timeGetters;
+            recordSlowGetters = parent.recordSlowGetters;
+        }
+
+        @Override
+        public ContentHandler getContentHandler() {
+            return contentHandler;
+        }
+
+        @Override
+        public DTDHandler getDTDHandler() {
+            return dtdHandler;
+        }
+
+        @Override
+        public EntityResolver getEntityResolver() {
+            return entityResolver;
+        }
+
+        @Override
+        public ErrorHandler getErrorHandler() {
+            return errorHandler;
+        }
+
+        @Override
+        public boolean getFeature(String name) {
+            return false;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return null;
+        }
+
+        @Override
+        public void parse(InputSource input) throws SAXException {
+            parse();
+        }
+
+        @Override
+        public void parse(String systemId) throws SAXException {
+            parse();
+        }
+
+        @Override
+        public void setContentHandler(ContentHandler handler) {
+            contentHandler = handler;
+        }
+
+        @Override
+        public void setDTDHandler(DTDHandler handler) {
+            dtdHandler = handler;
+        }
+
+        @Override
+        public void setEntityResolver(EntityResolver resolver) {
+            entityResolver = resolver;
+        }
+
+        @Override
+        public void setErrorHandler(ErrorHandler handler) {
+            errorHandler = handler;
+        }
+
+        @Override
+        public void setFeature(java.lang.String name, boolean value) {
+        }
+
+        @Override
+        public void setProperty(String name, Object value) {
+        }
+
+        @Override
+        public String toString() {
+            return "Beansource[beanName: " + beanName + ", bean: " + bean + ", engine: " + engine + "]";
+        }
+
+        private void parse() throws SAXException {
+            if (contentHandler == null) {
+                return;
+            }
+
+            ContentHandler handler = contentHandler;
+            Snapshot.Builder snapshotBuilder = null;
+            if (baseline != null) {
+                snapshotBuilder = new Snapshot.Builder();
+                contentHandler = snapshotBuilder;
+            }
+            if ((parallelExecutor != null) && (referenceMode == ReferenceMode.NONE) && (contentHandler instanceof XMLByteWriter)) {
+                parallelWriter = (XMLByteWriter) contentHandler;
+            }
+
+            try {
+                if (engine == Engine.ITERATIVE) {
+                    try {
+                        startWalk();
+                        while (step()) {
+                            // walk until the stack is empty
+                        }
+                    } finally {
+                        abortWalk();
+                    }
+                } else {
+                    startDocument();
+                    parseObject(bean, beanName);
+                }
+                endDocument();
+                if (snapshotBuilder != null) {
+                    snapshotBuilder.getSnapshot().writeDelta(baseline, handler);
+                }
+            } finally {
+                contentHandler = handler;
+                if (prefetcher != null) {
+                    prefetcher.cancelAll();
+                }
+            }
+        }
+
+        private void startDocument() throws SAXException {
+            startInstrumentation();
+            if (referenceMode != ReferenceMode.NONE) {
+                references = new IdentityHashMap<>();
+                path = new ArrayList<>();
+            }
+            if (projectionPaths != null) {
+                projection = projectionPaths.root(beanName);
+                projectionStack = new Projection.State[16];
+            }
+            prefetcher = (prefetchOptions != null) ? new Prefetcher(prefetchOptions, introspection, metrics) : null;
+
+            contentHandler.startDocument();
+        }
+
+        /**
+         * starts the document and the root element of an iterative walk, which is then driven by calling {@link #step} until it returns false, so
+         * that readers that pull events can walk the graph only as far as they read
+         */
+        void startWalk() throws SAXException {
+            startDocument();
+            visit(bean, beanName);
+        }
+
+        void endWalk() throws SAXException {
+            endDocument();
+        }
+
+        private void endDocument() throws SAXException {
+            contentHandler.endDocument();
+            if (counter != null) {
+                endInstrumentation();
+            }
+        }
+
+        /**
+         * counts the document's events, and times its getters, if there is a listener or the flight recorder is recording this reader's events.
+         * Otherwise the reader is left as it is, so that there is nothing to pay for instrumentation that is off.
+         */
+        private void startInstrumentation() {
+            counter = null;
+            parseEvent = null;
+            boolean recordParse = false;
+            if (FLIGHT_RECORDER) {
+                recordParse = FlightRecorderEvents.PARSE.isEnabled();
+                recordSlowGetters = FlightRecorderEvents.SLOW_GETTER.isEnabled();
+            }
+            timeGetters = (metrics != null) || recordSlowGetters;
+            if ((metrics == null) && !recordParse) {
+                return;
+            }
+
+            if (recordParse) {
+                parseEvent = new ParseEvent();
+                parseEvent.begin();
+            }
+            counter = new CountingHandler(contentHandler);
+            contentHandler = counter;
+            startNanos = System.nanoTime();
+        }
+
+        private void endInstrumentation() {
+            if (metrics != null) {
+                metrics.documentWritten(beanName, counter.elements, counter.characters, System.nanoTime() - startNanos);
+            }
+            if (parseEvent != null) {
+                parseEvent.end();
+                if (parseEvent.shouldCommit()) {
+                    parseEvent.rootName = beanName;
+                    parseEvent.beanClass = (bean == null) ? null : bean.getClass();
+                    parseEvent.engine = engine.name();
+                    parseEvent.elements = counter.elements;
+                    parseEvent.characters = counter.characters;
+                    parseEvent.commit();
+                }
+                parseEvent = null;
+            }
+            counter = null;
+        }
+
+        /**
+         * drops any frames left open by a walk that failed or was abandoned, closing the sequences they were reading
+         */
+        void abortWalk() throws SAXException {
+            SAXException failure = null;
+            while (depth > 0) {
+                Frame f = frames[--depth];
+                if (f.kind == BeanPlan.Kind.SEQUENCE) {
+                    try {
+                        closeSequence(f.value);
+                    } catch (SAXException e) {
+                        if (failure == null) {
+                            failure = e;
+                        }
+                    }
+                }
+                f.clear();
+            }
+            if (prefetcher != null) {
+                prefetcher.cancelAll();
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private void parseObject(Object o, String objectName) throws SAXException {
+
+            if (o == null) {
+                emitPropertyAndValue(objectName, "");
+            } else {
+                BeanPlan plan = BeanPlan.forClass(o.getClass(), introspection);
+                if (emitScalar(o, plan, objectName)) {
+                    return;
+                }
+
+                switch (plan.getKind()) {
+                    case ARRAY:
+                        AttributesAdapter aa = enterReference(o, objectName, ARRAY_ATTRIBUTES);
+                        if (aa != null) {
+                            contentHandler.startElement("", "", objectName, aa);
+                            Object[] l = (Object[]) o;
+                            if (isParallel(l.length)) {
+                                emitParallelItems(l);
+                            } else {
+                                Iterator<?> ahead = (prefetcher != null) ? prefetcher.lookahead(l) : null;
+                                for (Object oo : l) {
+                                    emitItem(oo);
+                                    if (ahead != null) {
+                                        prefetcher.advance(ahead);
+                                    }
+                                }
+                            }
+                            contentHandler.endElement("", "", objectName);
+                            exitReference(o);
+                        }
+                    break;
+
+                    case COLLECTION:
+                        aa = enterReference(o, objectName, COLLECTION_ATTRIBUTES);
+                        if (aa != null) {
+                            contentHandler.startElement("", "", objectName, aa);
+                            Collection<?> c = inOrder((Collection<?>) o);
+                            if (isParallel(c.size())) {
+                                emitParallelItems(c.toArray());
+                            } else {
+                                Iterator<?> ahead = (prefetcher != null) ? prefetcher.lookahead(c) : null;
+                                for (Object oo : c) {
+                                    emitItem(oo);
+                                    if (ahead != null) {
+                                        prefetcher.advance(ahead);
+                                    }
+                                }
+                            }
+                            contentHandler.endElement("", "", objectName);
+                            exitReference(o);
+                        }
+                    break;
+
+                    case SEQUENCE:
+                        aa = enterReference(o, objectName, COLLECTION_ATTRIBUTES);
+                        if (aa != null) {
+                            try {
+                                contentHandler.startElement("", "", objectName, aa);
+                                Iterator<?> it = sequenceIterator(o);
+                                while (it.hasNext()) {
+                                    emitItem(it.next());
+                                }
+                                contentHandler.endElement("", "", objectName);
+                            } finally {
+                                closeSequence(o);
+                            }
+                            exitReference(o);
+                        } else {
+                            closeSequence(o);
+                        }
+                    break;
+
+                    case MAP:
+                        aa = enterReference(o, objectName, MAP_ATTRIBUTES);
+                        if (aa != null) {
+                            contentHandler.startElement("", "", objectName, aa);
+                            for (Map.Entry<?, ?> entry : inOrder((Map<?, ?>) o)) {
+                                if (enter(ENTRY, Map.Entry.class)) {
+                                    contentHandler.startElement("", "", ENTRY, AttributesAdapter.EMPTY);
+                                    emitChild(entry.getKey(), KEY);
+                                    emitChild(entry.getValue(), VALUE);
+                                    contentHandler.endElement("", "", ENTRY);
+                                    leave();
+                                }
+                            }
+                            contentHandler.endElement("", "", objectName);
+                            exitReference(o);
+                        }
+                    break;
+
+                    default:
+                        emitBean(o, plan, objectName);
+                    break;
+                }
+            }
+        }
+
+        /**
+         * returns the items of a collection in the order they are written, sorted when the document is canonical and the collection is a set that
+         * doesn't define its order
+         */
+        private Collection<?> inOrder(Collection<?> c) throws SAXException {
+            if (!canonical || !(c instanceof Set) || (c instanceof SortedSet) || (c instanceof LinkedHashSet) || (c instanceof EnumSet)) {
+                return c;
+            }
+            return sorted(c, false);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Collection<Map.Entry<?, ?>> inOrder(Map<?, ?> m) throws SAXException {
+            Collection<Map.Entry<?, ?>> entries = (Collection<Map.Entry<?, ?>>) (Collection<?>) m.entrySet();
+            if (!canonical || (m instanceof SortedMap) || (m instanceof LinkedHashMap) || (m instanceof EnumMap)) {
+                return entries;
+            }
+            return (Collection<Map.Entry<?, ?>>) (Collection<?>) sorted(entries, true);
+        }
+
+        /**
+         * sorts items, or map entries by key and then value, by their natural order when the items all have the same comparable class, and
+         * otherwise, or to break a tie, by the fingerprints of their documents, which are only worked out for the items that need them. Working out
+         * a fingerprint walks the item, and the item is walked again when it is written, so its getters run twice.
+         */
+        private List<Object> sorted(Collection<?> items, boolean entries) throws SAXException {
+            List<Object> sorted = new ArrayList<>(items);
+            Class<?> comparableClass = null;
+            for (Object item : sorted) {
+                Object key = entries ? ((Map.Entry<?, ?>) item).getKey() : item;
+                if ((key == null) || !(key instanceof Comparable) || ((comparableClass != null) && (key.getClass() != comparableClass))) {
+                    comparableClass = null;
+                    break;
+                }
+                comparableClass = key.getClass();
+            }
+
+            Map<Object, String> fingerprints = new IdentityHashMap<>();
+            Class<?> naturalClass = comparableClass;
+            try {
+                sorted.sort((a, b) -> {
+                    if (!entries) {
+                        return compareItems(a, b, naturalClass, fingerprints);
+                    }
+                    Map.Entry<?, ?> ea = (Map.Entry<?, ?>) a;
+                    Map.Entry<?, ?> eb = (Map.Entry<?, ?>) b;
+                    int cmp = compareItems(ea.getKey(), eb.getKey(), naturalClass, fingerprints);
+                    return (cmp != 0) ? cmp : compareItems(ea.getValue(), eb.getValue(), null, fingerprints);
+                });
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof SAXException) {
+                    throw (SAXException) e.getCause();
+                }
+                throw e;
+            }
+            return sorted;
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private int compareItems(Object a, Object b, Class<?> naturalClass, Map<Object, String> fingerprints) {
+            if (naturalClass != null) {
+                int cmp = ((Comparable) a).compareTo(b);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return fingerprint(a, fingerprints).compareTo(fingerprint(b, fingerprints));
+        }
+
+        /**
+         * works out the fingerprint of an item's document, as an item element, with a reader of its own that has this reader's options
+         */
+        private String fingerprint(Object o, Map<Object, String> fingerprints) {
+            if (o == null) {
+                return "";
+            }
+
+            String fingerprint = fingerprints.get(o);
+            if (fingerprint == null) {
+                DigestHandler digest = new DigestHandler();
+                BeanXMLReader reader = new BeanXMLReader(this);
+                reader.setContentHandler(digest);
+                if (referenceMode != ReferenceMode.NONE) {
+                    reader.references = new IdentityHashMap<>();
+                    reader.path = new ArrayList<>();
+                }
+                try {
+                    digest.startDocument();
+                    if (engine == Engine.ITERATIVE) {
+                        reader.visitChild(o, ITEM);
+                        while (reader.step()) {
+                            // walk until the stack is empty
+                        }
+                    } else {
+                        reader.emitItem(o);
+                    }
+                    digest.endDocument();
+                } catch (SAXException e) {
+                    throw new CompletionException(e);
+                }
+                fingerprint = digest.getETag();
+                fingerprints.put(o, fingerprint);
+            }
+            return fingerprint;
+        }
+
+        private void emitItem(Object o) throws SAXException {
+            emitChild(o, ITEM);
+        }
+
+        private void emitChild(Object o, String name) throws SAXException {
+            if (enter(name, typeOf(o))) {
+                parseObject(o, name);
+                leave();
+            }
+        }
+
+        /**
+         * moves the projection down to a child element, returning false, and staying put, if the projection leaves the child out
+         */
+        private boolean enter(String name, Class<?> type) {
+            if (projection == null) {
+                return true;
+            }
+
+            Projection.State child = projection.child(name);
+            if (!child.accepts(type, introspection)) {
+                return false;
+            }
+
+            if (projectionDepth == projectionStack.length) {
+                projectionStack = Arrays.copyOf(projectionStack, projectionDepth * 2);
+            }
+            projectionStack[projectionDepth++] = projection;
+            projection = child;
+            return true;
+        }
+
+        private void leave() {
+            if (projection != null) {
+                projection = projectionStack[--projectionDepth];
+                projectionStack[projectionDepth] = null;
+            }
+        }
+
+        private static Class<?> typeOf(Object o) {
+            return (o == null) ? null : o.getClass();
+        }
+
+        /**
+         * the type the projection judges a property by, its declared type, or none for simple properties, which are always written as text
+         */
+        private static Class<?> typeOf(BeanPlan.PropertyPlan property) {
+            return (property.getMode() == BeanSourceProperty.Type.SIMPLE) ? null : property.getType();
+        }
+
+        /**
+         * emits values that are written without nesting, primitive arrays, simple values, enums and dates, returning false for anything that has to
+         * be walked
+         */
+        private boolean emitScalar(Object o, BeanPlan plan, String objectName) throws SAXException {
+            switch (plan.getKind()) {
+                case ARRAY:
+                    if (o instanceof Object[]) {
+                        return false;
+                    } else if ((arrayEncoding == ArrayEncoding.LIST) && !(o instanceof char[])) {
+                        emitPrimitiveList(o, objectName);
+                    } else {
+                        emitPrimitiveItems(o, objectName);
+                    }
+                    return true;
+
+                case SIMPLE:
+                    emitPropertyAndValue(objectName, o);
+                    return true;
+
+                case ENUM:
+                    emitPropertyAndValue(objectName, ((Enum<?>) o).name());
+                    return true;
+
+                case DATE:
+                    formatDate((Date) o, objectName);
+                    emitBufferedProperty(objectName);
+                    return true;
+
+                case TEMPORAL:
+                    if (formatTemporal((TemporalAccessor) o, objectName)) {
+                        emitBufferedProperty(objectName);
+                        return true;
+                    }
+                    return false;
+
+                default:
+                    return false;
+            }
+        }
+
+        /**
+         * walks the object graph with an explicit stack of frames, one for each open array, collection, map or bean element, producing the same events
+         * as parseObject without recursing. Each step visits one child, or closes one element, of the innermost open frame, returning false once no
+         * frames are left.
+         */
+        boolean step() throws SAXException {
+            if (depth == 0) {
+                return false;
+            }
+
+            Frame f = frames[depth - 1];
+            switch (f.kind) {
+                case ARRAY:
+                    if (f.index < f.array.length) {
+                        visitChild(f.array[f.index++], ITEM);
+                        if (f.ahead != null) {
+                            prefetcher.advance(f.ahead);
+                        }
+                    } else {
+                        contentHandler.endElement("", "", f.name);
+                        pop();
+                    }
+                break;
+
+                case COLLECTION:
+                case SEQUENCE:
+                    if (f.iterator.hasNext()) {
+                        visitChild(f.iterator.next(), ITEM);
+                        if (f.ahead != null) {
+                            prefetcher.advance(f.ahead);
+                        }
+                    } else {
+                        contentHandler.endElement("", "", f.name);
+                        pop();
+                    }
+                break;
+
+                case MAP:
+                    if (f.index == 0) {
+                        if (f.iterator.hasNext()) {
+                            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) f.iterator.next();
+                            if (enter(ENTRY, Map.Entry.class)) {
+                                f.entry = entry;
+                                f.index = 1;
+                                contentHandler.startElement("", "", ENTRY, AttributesAdapter.EMPTY);
+                                visitChild(entry.getKey(), KEY);
+                            }
+                        } else {
+                            contentHandler.endElement("", "", f.name);
+                            pop();
+                        }
+                    } else if (f.index == 1) {
+                        f.index = 2;
+                        visitChild(f.entry.getValue(), VALUE);
+                    } else {
+                        f.index = 0;
+                        f.entry = null;
+                        contentHandler.endElement("", "", ENTRY);
+                        leave();
+                    }
+                break;
+
+                default:
+                    if (f.index < f.properties.length) {
+                        visitProperty(f.value, f.properties[f.index++]);
+                    } else {
+                        endBean(f.name);
+                        pop();
+                    }
+                break;
+            }
+            return true;
+        }
+
+        /**
+         * emits a value in place if it is a scalar, otherwise starts its element and pushes a frame to walk its children
+         */
+        private void visit(Object o, String objectName) throws SAXException {
+            if (o == null) {
+                emitPropertyAndValue(objectName, "");
+                return;
+            }
+
+            BeanPlan plan = BeanPlan.forClass(o.getClass(), introspection);
+            if (emitScalar(o, plan, objectName)) {
+                return;
+            }
+
+            switch (plan.getKind()) {
+                case ARRAY:
+                    AttributesAdapter aa = enterReference(o, objectName, ARRAY_ATTRIBUTES);
+                    if (aa != null) {
+                        contentHandler.startElement("", "", objectName, aa);
+                        Object[] l = (Object[]) o;
+                        if (isParallel(l.length)) {
+                            emitParallelItems(l);
+                            contentHandler.endElement("", "", objectName);
+                            exitReference(o);
+                        } else {
+                            Frame f = push(BeanPlan.Kind.ARRAY, objectName, o);
+                            f.array = l;
+                            f.ahead = (prefetcher != null) ? prefetcher.lookahead(l) : null;
+                        }
+                    }
+                break;
+
+                case COLLECTION:
+                    aa = enterReference(o, objectName, COLLECTION_ATTRIBUTES);
+                    if (aa != null) {
+                        contentHandler.startElement("", "", objectName, aa);
+                        Collection<?> c = inOrder((Collection<?>) o);
+                        if (isParallel(c.size())) {
+                            emitParallelItems(c.toArray());
+                            contentHandler.endElement("", "", objectName);
+                            exitReference(o);
+                        } else {
+                            Frame f = push(BeanPlan.Kind.COLLECTION, objectName, o);
+                            f.iterator = c.iterator();
+                            f.ahead = (prefetcher != null) ? prefetcher.lookahead(c) : null;
+                        }
+                    }
+                break;
+
+                case SEQUENCE:
+                    aa = enterReference(o, objectName, COLLECTION_ATTRIBUTES);
+                    if (aa != null) {
+                        contentHandler.startElement("", "", objectName, aa);
+                        push(BeanPlan.Kind.SEQUENCE, objectName, o).iterator = sequenceIterator(o);
+                    } else {
+                        closeSequence(o);
+                    }
+                break;
+
+                case MAP:
+                    aa = enterReference(o, objectName, MAP_ATTRIBUTES);
+                    if (aa != null) {
+                        contentHandler.startElement("", "", objectName, aa);
+                        push(BeanPlan.Kind.MAP, objectName, o).iterator = inOrder((Map<?, ?>) o).iterator();
+                    }
+                break;
+
+                default:
+                    aa = enterReference(o, objectName, BEAN_ATTRIBUTES);
+                    if (aa != null) {
+                        if (metrics != null) {
+                            metrics.beanVisited(o.getClass());
+                        }
+                        contentHandler.startElement("", "", objectName, aa);
+                        push(BeanPlan.Kind.BEAN, objectName, o).properties = plan.getProperties();
+                        if (prefetcher != null) {
+                            prefetcher.start(o, plan);
+                        }
+                    }
+                break;
+            }
+        }
+
+        /**
+         * visits a child element that the projection allows, staying in the child's projection until the child's frame, if it has one, is popped
+         */
+        private void visitChild(Object o, String objectName) throws SAXException {
+            if (enter(objectName, typeOf(o))) {
+                int parentDepth = depth;
+                visit(o, objectName);
+                endVisit(parentDepth);
+            }
+        }
+
+        private void endVisit(int parentDepth) {
+            if (depth > parentDepth) {
+                frames[depth - 1].projected = true;
+            } else {
+                leave();
+            }
+        }
+
+        private void visitProperty(Object o, BeanPlan.PropertyPlan property) throws SAXException {
+            if (enter(property.getName(), typeOf(property))) {
+                int parentDepth = depth;
+                visitValue(o, property);
+                endVisit(parentDepth);
+            }
+        }
+
+        private void visitValue(Object o, BeanPlan.PropertyPlan property) throws SAXException {
+            if (property.getMode() == BeanSourceProperty.Type.SIMPLE) {
+                emitMethodCall(o, property);
+                return;
+            }
+
+            switch (property.getKind()) {
+                case ARRAY:
+                case COLLECTION:
+                case SEQUENCE:
+                case MAP:
+                case TEMPORAL:
+                case BEAN:
+                    visit(readValue(o, property), property.getName());
+                break;
+
+                default:
+                    emitMethodCall(o, property);
+                break;
+            }
+        }
+
+        private Frame push(BeanPlan.Kind kind, String name, Object value) {
+            if (depth == frames.length) {
+                frames = Arrays.copyOf(frames, depth * 2);
+            }
+            Frame f = frames[depth];
+            if (f == null) {
+                f = new Frame();
+                frames[depth] = f;
+            }
+            depth++;
+
+            f.kind = kind;
+            f.name = name;
+            f.value = value;
+            f.index = 0;
+            return f;
+        }
+
+        private void pop() throws SAXException {
+            Frame f = frames[--depth];
+            try {
+                if (f.kind == BeanPlan.Kind.SEQUENCE) {
+                    closeSequence(f.value);
+                } else if ((f.kind == BeanPlan.Kind.BEAN) && (prefetcher != null)) {
+                    prefetcher.finish(f.value);
+                }
+                exitReference(f.value);
+                if (f.projected) {
+                    leave();
+                }
+            } finally {
+                f.clear();
+            }
+        }
+
+        /**
+         * iterates a sequence that is read as it is written, rather than held in memory, an iterator, stream, spliterator or an iterable that isn't a
+         * collection
+         */
+        private static Iterator<?> sequenceIterator(Object o) {
+            if (o instanceof Iterator) {
+                return (Iterator<?>) o;
+            } else if (o instanceof BaseStream) {
+                return ((BaseStream<?, ?>) o).iterator();
+            } else if (o instanceof Spliterator) {
+                return Spliterators.iterator((Spliterator<?>) o);
+            }
+            return ((Iterable<?>) o).iterator();
+        }
+
+        /**
+         * closes a sequence that holds resources, such as a stream over a result set, once it has been written or has failed
+         */
+        private static void closeSequence(Object o) throws SAXException {
+            if (o instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) o).close();
+                } catch (Exception e) {
+                    throw new SAXException(e);
+                }
+            }
+        }
+
+        private void emitBean(Object o, BeanPlan plan, String objectName) throws SAXException {
+            AttributesAdapter aa = enterReference(o, objectName, BEAN_ATTRIBUTES);
+            if (aa == null) {
+                return;
+            }
+            pendingBeanAttributes = aa;
+            if (metrics != null) {
+                metrics.beanVisited(o.getClass());
+            }
+
+            BeanEmitter emitter = null;
+            if ((projection == null) && !timeGetters && (prefetcher == null)) {
+                if (introspection == Introspection.GETTERS) {
+                    emitter = BeanEmitters.forClass(o.getClass());
+                }
+                if ((emitter == null) && (engine == Engine.COMPILED)) {
+                    emitter = CompiledEmitter.forClass(o.getClass(), introspection);
+                }
+            }
+            if (emitter != null) {
+                emitter.emit(o, objectName, this);
+            } else {
+                if (prefetcher != null) {
+                    prefetcher.start(o, plan);
+                }
+                startBean(objectName);
+                for (BeanPlan.PropertyPlan property : plan.getProperties()) {
+                    if (enter(property.getName(), typeOf(property))) {
+                        emitMethodCall(o, property);
+                        leave();
+                    }
+                }
+                endBean(objectName);
+                if (prefetcher != null) {
+                    prefetcher.finish(o);
+                }
+            }
+            exitReference(o);
+        }
+
+        /**
+         * returns the attributes for the start of an array, collection, map or bean element, or null if the object has already been written, and so
+         * was written here as a reference
+         */
+        private AttributesAdapter enterReference(Object o, String objectName, AttributesAdapter typeAttributes) throws SAXException {
+            switch (referenceMode) {
+                case SHARED:
+                    String id = references.get(o);
+                    if (id != null) {
+                        AttributesAdapter aa = new AttributesAdapter();
+                        aa.addAttribute(new Attribute("", "", TYPE, typeAttributes.getValue(TYPE)));
+                        aa.addAttribute(new Attribute("", "", IDREF, id));
+                        contentHandler.startElement("", "", objectName, aa);
+                        contentHandler.endElement("", "", objectName);
+                        return null;
+                    }
+
+                    id = String.valueOf(references.size() + 1);
+                    references.put(o, id);
+                    AttributesAdapter aa = new AttributesAdapter();
+                    for (int i = 0; i < typeAttributes.getLength(); i++) {
+                        aa.addAttribute(new Attribute(typeAttributes.getURI(i), typeAttributes.getLocalName(i), typeAttributes.getQName(i),
+                                typeAttributes.getValue(i)));
+                    }
+                    aa.addAttribute(new Attribute("", "", ID, id));
+                    return aa;
+
+                case FAIL_ON_CYCLE:
+                    path.add(objectName);
+                    if (references.put(o, objectName) != null) {
+                        StringBuilder sb = new StringBuilder();
+                        for (String element : path) {
+                            sb.append('/').append(element);
+                        }
+                        throw new SAXException("Cycle detected at " + sb + " (" + o.getClass().getName() + ")");
+                    }
+                    return typeAttributes;
+
+                default:
+                    return typeAttributes;
+            }
+        }
+
+        private void exitReference(Object o) {
+            if (referenceMode == ReferenceMode.FAIL_ON_CYCLE) {
+                references.remove(o);
+                path.remove(path.size() - 1);
+            }
+        }
+
+        private boolean isParallel(int size) {
+            return (parallelWriter != null) && (size >= parallelThreshold);
+        }
+
+        /**
+         * writes items in chunks on the parallel executor, each chunk by its own reader into its own buffer, and appends the buffers to the document
+         * in order. Only a window of chunks is in flight at a time, so buffers don't pile up ahead of the output.
+         */
+        private void emitParallelItems(Object[] items) throws SAXException {
+            int parallelism = (parallelExecutor instanceof ForkJoinPool) ? ((ForkJoinPool) parallelExecutor).getParallelism()
+                    : Runtime.getRuntime().availableProcessors();
+            int chunkSize = Math.max(PARALLEL_MIN_CHUNK_SIZE, (items.length + (parallelism * 4) - 1) / (parallelism * 4));
+            int window = Math.max(2, parallelism * 2);
+
+            Deque<CompletableFuture<ByteArrayOutputStream>> chunks = new ArrayDeque<>();
+            Deque<ChunkWriter> writers = new ArrayDeque<>();
+            int next = 0;
+            try {
+                while ((next < items.length) || !chunks.isEmpty()) {
+                    while ((next < items.length) && (chunks.size() < window)) {
+                        int end = Math.min(items.length, next + chunkSize);
+                        ChunkWriter writer = new ChunkWriter(this, items, next, end);
+                        chunks.add(CompletableFuture.supplyAsync(writer, parallelExecutor));
+                        writers.add(writer);
+                        next = end;
+                    }
+
+                    parallelWriter.append(chunks.removeFirst().join());
+                    ChunkWriter writer = writers.removeFirst();
+                    if (counter != null) {
+                        counter.add(writer.counter);
+                    }
+                }
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SAXException) {
+                    throw (SAXException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new SAXException(e);
+            } finally {
+                for (CompletableFuture<ByteArrayOutputStream> chunk : chunks) {
+                    chunk.cancel(false);
+                }
+            }
+        }
+
+        private void emitPrimitiveItems(Object o, String objectName) throws SAXException {
+            AttributesAdapter aa = enterReference(o, objectName, ARRAY_ATTRIBUTES);
+            if (aa == null) {
+                return;
+            }
+            contentHandler.startElement("", "", objectName, aa);
+
+            if (o instanceof int[]) {
+                for (int v : (int[]) o) {
+                    emitProperty(ITEM, v);
+                }
+            } else if (o instanceof long[]) {
+                for (long v : (long[]) o) {
+                    emitProperty(ITEM, v);
+                }
+            } else if (o instanceof double[]) {
+                for (double v : (double[]) o) {
+                    emitProperty(ITEM, v);
+                }
+            } else if (o instanceof float[]) {
+                for (float v : (float[]) o) {
+                    emitProperty(ITEM, v);
+                }
+            } else if (o instanceof boolean[]) {
+                for (boolean v : (boolean[]) o) {
+                    emitProperty(ITEM, v);
+                }
+            } else if (o instanceof byte[]) {
+                for (byte v : (byte[]) o) {
+                    emitProperty(ITEM, v);
+                }
+            } else if (o instanceof short[]) {
+                for (short v : (short[]) o) {
+                    emitProperty(ITEM, v);
+                }
+            } else if (o instanceof char[]) {
+                for (char v : (char[]) o) {
+                    emitProperty(ITEM, v);
+                }
+            }
+
+            contentHandler.endElement("", "", objectName);
+            exitReference(o);
+        }
+
+        private void emitPrimitiveList(Object o, String objectName) throws SAXException {
+            AttributesAdapter aa = enterReference(o, objectName, LIST_ATTRIBUTES);
+            if (aa == null) {
+                return;
+            }
+            contentHandler.startElement("", "", objectName, aa);
+
+            if (o instanceof int[]) {
+                int[] a = (int[]) o;
+                for (int i = 0; i < a.length; i++) {
+                    appendListSeparator(i).append(a[i]);
+                }
+            } else if (o instanceof long[]) {
+                long[] a = (long[]) o;
+                for (int i = 0; i < a.length; i++) {
+                    appendListSeparator(i).append(a[i]);
+                }
+            } else if (o instanceof double[]) {
+                double[] a = (double[]) o;
+                for (int i = 0; i < a.length; i++) {
+                    appendListSeparator(i).append(a[i]);
+                }
+            } else if (o instanceof float[]) {
+                float[] a = (float[]) o;
+                for (int i = 0; i < a.length; i++) {
+                    appendListSeparator(i).append(a[i]);
+                }
+            } else if (o instanceof boolean[]) {
+                boolean[] a = (boolean[]) o;
+                for (int i = 0; i < a.length; i++) {
+                    appendListSeparator(i).append(a[i]);
+                }
+            } else if (o instanceof byte[]) {
+                byte[] a = (byte[]) o;
+                for (int i = 0; i < a.length; i++) {
+                    appendListSeparator(i).append(a[i]);
+                }
+            } else if (o instanceof short[]) {
+                short[] a = (short[]) o;
+                for (int i = 0; i < a.length; i++) {
+                    appendListSeparator(i).append(a[i]);
+                }
+            }
+
+            if (textBuffer.length() > 0) {
+                textBuffer.flush(contentHandler);
+            }
+            contentHandler.endElement("", "", objectName);
+            exitReference(o);
+        }
+
+        /**
+         * starts the next value of a list encoded array, handing off what is buffered once it gets large, so huge arrays don't build huge strings
+         */
+        private TextBuffer appendListSeparator(int index) throws SAXException {
+            if (index > 0) {
+                if (textBuffer.length() >= LIST_FLUSH_SIZE) {
+                    textBuffer.flush(contentHandler);
+                }
+                textBuffer.append(' ');
+            }
+            return textBuffer;
+        }
+
+        private void emitMethodCall(Object o, BeanPlan.PropertyPlan property) throws SAXException {
+            if (prefetcher != null) {
+                Object value = prefetcher.take(o, property);
+                if (value != Prefetcher.NOT_PREFETCHED) {
+                    emitValue(property, value);
+                    return;
+                }
+            }
+            if (timeGetters) {
+                emitValue(property, invokeTimed(o, property));
+                return;
+            }
+
+            String name = property.getName();
+            PropertyAccessor accessor = property.getAccessor();
+
+            try {
+
+                if (property.getMode() == BeanSourceProperty.Type.SIMPLE) {
+                    emitPropertyAndValue(name, String.valueOf(accessor.get(o)));
+                } else {
+                    switch (property.getKind()) {
+                        case BOOLEAN:
+                            emitProperty(name, accessor.getBoolean(o));
+                        break;
+                        case BYTE:
+                            emitProperty(name, accessor.getByte(o));
+                        break;
+                        case CHAR:
+                            emitProperty(name, accessor.getChar(o));
+                        break;
+                        case SHORT:
+                            emitProperty(name, accessor.getShort(o));
+                        break;
+                        case INT:
+                            emitProperty(name, accessor.getInt(o));
+                        break;
+                        case LONG:
+                            emitProperty(name, accessor.getLong(o));
+                        break;
+                        case FLOAT:
+                            emitProperty(name, accessor.getFloat(o));
+                        break;
+                        case DOUBLE:
+                            emitProperty(name, accessor.getDouble(o));
+                        break;
+                        default:
+                            emitObject(accessor.get(o), property.getKind(), name);
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                throw new SAXException(e);
+            }
+        }
+
+        /**
+         * emits a property as emitMethodCall does, from a value already read boxed, as when the getter was timed or prefetched
+         */
+        private void emitValue(BeanPlan.PropertyPlan property, Object value) throws SAXException {
+            String name = property.getName();
+
+            if (property.getMode() == BeanSourceProperty.Type.SIMPLE) {
+                emitPropertyAndValue(name, String.valueOf(value));
+                return;
+            }
+
+            switch (property.getKind()) {
+                case BOOLEAN:
+                    emitProperty(name, ((Boolean) value).booleanValue());
+                break;
+                case BYTE:
+                    emitProperty(name, ((Byte) value).byteValue());
+                break;
+                case CHAR:
+                    emitProperty(name, ((Character) value).charValue());
+                break;
+                case SHORT:
+                    emitProperty(name, ((Short) value).shortValue());
+                break;
+                case INT:
+                    emitProperty(name, ((Integer) value).intValue());
+                break;
+                case LONG:
+                    emitProperty(name, ((Long) value).longValue());
+                break;
+                case FLOAT:
+                    emitProperty(name, ((Float) value).floatValue());
+                break;
+                case DOUBLE:
+                    emitProperty(name, ((Double) value).doubleValue());
+                break;
+                default:
+                    emitObject(value, property.getKind(), name);
+                break;
+            }
+        }
+
+        /**
+         * reads a property that is walked rather than emitted in place, from its prefetched value if it has one
+         */
+        private Object readValue(Object o, BeanPlan.PropertyPlan property) throws SAXException {
+            if (prefetcher != null) {
+                Object value = prefetcher.take(o, property);
+                if (value != Prefetcher.NOT_PREFETCHED) {
+                    return value;
+                }
+            }
+            if (timeGetters) {
+                return invokeTimed(o, property);
+            }
+            try {
+                return property.getAccessor().get(o);
+            } catch (Exception e) {
+                throw new SAXException(e);
+            }
+        }
+
+        private Object invokeTimed(Object o, BeanPlan.PropertyPlan property) throws SAXException {
+            SlowGetterEvent event = null;
+            if (recordSlowGetters) {
+                event = new SlowGetterEvent();
+                event.begin();
+            }
+
+            long start = System.nanoTime();
+            Object value;
+            try {
+                value = property.getAccessor().get(o);
+            } catch (Exception e) {
+                throw new SAXException(e);
+            }
+            long nanos = System.nanoTime() - start;
+
+            if (metrics != null) {
+                metrics.getterInvoked(o.getClass(), property.getName(), nanos);
+            }
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.beanClass = o.getClass();
+                    event.property = property.getName();
+                    event.commit();
+                }
+            }
+            return value;
+        }
+
+        private void emitObject(Object o, BeanPlan.Kind kind, String name) throws SAXException {
+
+            if (o == null) {
+                emitPropertyAndValue(name, "");
+            } else {
+                switch (kind) {
+                    case ENUM:
+                        emitPropertyAndValue(name, ((Enum<?>) o).name());
+                    break;
+                    case SIMPLE:
+                        emitPropertyAndValue(name, o);
+                    break;
+                    case DATE:
+                        formatDate((Date) o, name);
+                        emitBufferedProperty(name);
+                    break;
+                    default:
+                        parseObject(o, name);
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public void startBean(String name) throws SAXException {
+            AttributesAdapter aa = (pendingBeanAttributes != null) ? pendingBeanAttributes : BEAN_ATTRIBUTES;
+            pendingBeanAttributes = null;
+            contentHandler.startElement("", "", name, aa);
+        }
+
+        @Override
+        public void endBean(String name) throws SAXException {
+            contentHandler.endElement("", "", name);
+        }
+
+        @Override
+        public void emitProperty(String name, String value) throws SAXException {
+            contentHandler.startElement("", name, name, AttributesAdapter.EMPTY);
+            if (value != null) {
+                textBuffer.write(value, contentHandler);
+            }
+            contentHandler.endElement("", name, name);
+        }
+
+        @Override
+        public void emitProperty(String name, boolean value) throws SAXException {
+            textBuffer.append(value);
+            emitBufferedProperty(name);
+        }
+
+        @Override
+        public void emitProperty(String name, byte value) throws SAXException {
+            textBuffer.append(value);
+            emitBufferedProperty(name);
+        }
+
+        @Override
+        public void emitProperty(String name, char value) throws SAXException {
+            textBuffer.append(value);
+            emitBufferedProperty(name);
+        }
+
+        @Override
+        public void emitProperty(String name, short value) throws SAXException {
+            textBuffer.append(value);
+            emitBufferedProperty(name);
+        }
+
+        @Override
+        public void emitProperty(String name, int value) throws SAXException {
+            textBuffer.append(value);
+            emitBufferedProperty(name);
+        }
+
+        @Override
+        public void emitProperty(String name, long value) throws SAXException {
+            textBuffer.append(value);
+            emitBufferedProperty(name);
+        }
+
+        @Override
+        public void emitProperty(String name, float value) throws SAXException {
+            textBuffer.append(value);
+            emitBufferedProperty(name);
+        }
+
+        @Override
+        public void emitProperty(String name, double value) throws SAXException {
+            textBuffer.append(value);
+            emitBufferedProperty(name);
+        }
+
+        @Override
+        public void emitObject(String name, Object value) throws SAXException {
+            parseObject(value, name);
+        }
+
+        private void emitPropertyAndValue(String property, Object value) throws SAXException {
+            if (value instanceof String) {
+                emitProperty(property, (String) value);
+            } else if (value instanceof Integer) {
+                emitProperty(property, ((Integer) value).intValue());
+            } else if (value instanceof Long) {
+                emitProperty(property, ((Long) value).longValue());
+            } else if (value instanceof Double) {
+                emitProperty(property, ((Double) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                emitProperty(property, ((Boolean) value).booleanValue());
+            } else if (value instanceof Float) {
+                emitProperty(property, ((Float) value).floatValue());
+            } else if (value instanceof Character) {
+                emitProperty(property, ((Character) value).charValue());
+            } else if ((value instanceof Short) || (value instanceof Byte)) {
+                emitProperty(property, ((Number) value).intValue());
+            } else {
+                emitProperty(property, (value == null) ? null : value.toString());
+            }
+        }
+
+        /**
+         * formats a date into the text buffer, reporting values the format can't write, such as with a pattern for fields the value doesn't have,
+         * against the property
+         */
+        private void formatDate(Date date, String property) throws SAXException {
+            try {
+                temporalFormat.format(date, textBuffer.builder());
+            } catch (DateTimeException e) {
+                throw new SAXException("Failed to format property " + property + " with " + temporalFormat, e);
+            }
+        }
+
+        private boolean formatTemporal(TemporalAccessor temporal, String property) throws SAXException {
+            try {
+                return temporalFormat.format(temporal, textBuffer.builder());
+            } catch (DateTimeException e) {
+                throw new SAXException("Failed to format property " + property + " with " + temporalFormat, e);
+            }
+        }
+
+        private void emitBufferedProperty(String property) throws SAXException {
+            contentHandler.startElement("", property, property, AttributesAdapter.EMPTY);
+            textBuffer.flush(contentHandler);
+            contentHandler.endElement("", property, property);
+        }
+
+        /**
+         * writes a range of items with a reader of its own, to a buffer of its own, for the parallel writing of large arrays and collections
+         */
+        private static final class ChunkWriter implements Supplier<ByteArrayOutputStream> {
+            private final BeanXMLReader parent;
+            private final Object[] items;
+            private final int start;
+            private final int end;
+            private CountingHandler counter;
+
+            ChunkWriter(BeanXMLReader parent, Object[] items, int start, int end) {
+                this.parent = parent;
+                this.items = items;
+                this.start = start;
+                this.end = end;
+            }
+
+            @Override
+            public ByteArrayOutputStream get() {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(XMLByteWriter.BUFFER_SIZE);
+                XMLByteWriter writer = new XMLByteWriter(buffer);
+                BeanXMLReader reader = new BeanXMLReader(parent);
+                if (parent.counter != null) {
+                    counter = new CountingHandler(writer);
+                    reader.setContentHandler(counter);
+                } else {
+                    reader.setContentHandler(writer);
+                }
+                try {
+                    for (int i = start; i < end; i++) {
+                        if (reader.engine == Engine.ITERATIVE) {
+                            reader.visitChild(items[i], ITEM);
+                            while (reader.step()) {
+                                // walk until the stack is empty
+                            }
+                        } else {
+                            reader.emitItem(items[i]);
+                        }
+                    }
+                    writer.endDocument();
+                } catch (SAXException e) {
+                    throw new CompletionException(e);
+                }
+                return buffer;
+            }
+
+            @Override
+            public String toString() {
+                return "ChunkWriter[start: " + start + ", end: " + end + "]";
+            }
+        }
+
+        /**
+         * the flight recorder's types for the reader's events, looked up once, so that checking whether they are enabled allocates nothing. This is
+         * only loaded when the jdk.jfr module is present.
+         */
+        private static final class FlightRecorderEvents {
+            static final EventType PARSE = EventType.getEventType(ParseEvent.class);
+            static final EventType SLOW_GETTER = EventType.getEventType(SlowGetterEvent.class);
+        }
+
+        /**
+         * the state of one open element of the iterative walk. Frames are pooled by the reader, and cleared when popped so they don't hold on to the
+         * graph.
+         */
+        private static final class Frame {
+            BeanPlan.Kind kind;
+            String name;
+            int index;
+            Object value;
+            BeanPlan.PropertyPlan[] properties;
+            Object[] array;
+            Iterator<?> iterator;
+            Iterator<?> ahead;
+            Map.Entry<?, ?> entry;
+            boolean projected;
+
+            void clear() {
+                name = null;
+                value = null;
+                properties = null;
+                array = null;
+                iterator = null;
+                ahead = null;
+                entry = null;
+                projected = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * a metrics listener that totals what it is told, across any number of documents and threads, for reporting or for polling by a monitoring system.
+ * Getters are keyed by the bean class name and property name, as in com.acme.Order#lines.
+ */
+public final class BeanSourceMetrics implements MetricsListener {
+
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder elements = new LongAdder();
+    private final LongAdder characters = new LongAdder();
+    private final LongAdder documentNanos = new LongAdder();
+    private final ConcurrentMap<Class<?>, LongAdder> beans = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, GetterTotals>> getters = new ConcurrentHashMap<>();
+
+    @Override
+    public void beanVisited(Class<?> beanClass) {
+        beans.computeIfAbsent(beanClass, c -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void getterInvoked(Class<?> beanClass, String property, long nanos) {
+        ConcurrentMap<String, GetterTotals> properties = getters.computeIfAbsent(beanClass, c -> new ConcurrentHashMap<>());
+        GetterTotals totals = properties.get(property);
+        if (totals == null) {
+            totals = properties.computeIfAbsent(property, p -> new GetterTotals());
+        }
+        totals.calls.increment();
+        totals.nanos.add(nanos);
+    }
+
+    @Override
+    public void documentWritten(String name, long elementCount, long characterCount, long nanos) {
+        documents.increment();
+        elements.add(elementCount);
+        characters.add(characterCount);
+        documentNanos.add(nanos);
+    }
+
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    public long getElements() {
+        return elements.sum();
+    }
+
+    public long getCharacters() {
+        return characters.sum();
+    }
+
+    public long getDocumentNanos() {
+        return documentNanos.sum();
+    }
+
+    /**
+     * returns the number of beans visited by bean class name
+     */
+    public Map<String, Long> getBeansVisited() {
+        Map<String, Long> visited = new TreeMap<>();
+        for (Map.Entry<Class<?>, LongAdder> entry : beans.entrySet()) {
+            visited.put(entry.getKey().getName(), Long.valueOf(entry.getValue().sum()));
+        }
+        return visited;
+    }
+
+    /**
+     * returns the number of calls of each getter, by Class#property
+     */
+    public Map<String, Long> getGetterCalls() {
+        return getterTotals(false);
+    }
+
+    /**
+     * returns the total time spent in each getter, by Class#property
+     */
+    public Map<String, Long> getGetterNanos() {
+        return getterTotals(true);
+    }
+
+    public void reset() {
+        documents.reset();
+        elements.reset();
+        characters.reset();
+        documentNanos.reset();
+        beans.clear();
+        getters.clear();
+    }
+
+    private Map<String, Long> getterTotals(boolean nanos) {
+        Map<String, Long> totals = new TreeMap<>();
+        for (Map.Entry<Class<?>, ConcurrentMap<String, GetterTotals>> beanEntry : getters.entrySet()) {
+            String className = beanEntry.getKey().getName();
+            for (Map.Entry<String, GetterTotals> entry : beanEntry.getValue().entrySet()) {
+                GetterTotals t = entry.getValue();
+                totals.put(className + '#' + entry.getKey(), Long.valueOf(nanos ? t.nanos.sum() : t.calls.sum()));
+            }
+        }
+        return totals;
+    }
+
+    @Override
+    public String toString() {
+        return "BeanSourceMetrics[documents: " + documents.sum() + ", elements: " + elements.sum() + ", characters: " + characters.sum() + ", beans: "
+                + getBeansVisited() + "]";
+    }
+
+    private static final class GetterTotals {
+        final LongAdder calls = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import javax.xml.transform.stax.StAXSource;
+
+/**
+ * a pull based source for a bean. The graph is walked as the stream reader is advanced, a property at a time, so a consumer that stops reading
+ * early never calls the getters of the rest of the graph. Beans are named and annotated as for {@link BeanSource}, and walked as the iterative
+ * engine walks them, whatever engine the bean source is set to.
+ */
+public class BeanStAXSource extends StAXSource {
+
+    public BeanStAXSource(Object javaBean, String name) {
+        this(new BeanSource(javaBean, name));
+    }
+
+    /**
+     * creates a pull source with the array encoding, temporal format and reference mode of the given bean source
+     */
+    public BeanStAXSource(BeanSource source) {
+        super(new BeanStreamReader(source));
+    }
+}
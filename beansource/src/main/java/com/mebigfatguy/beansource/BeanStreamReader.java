@@ -0,0 +1,531 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * a pull reader over a bean graph. Each call to next takes the events of one step of the bean reader's iterative walk, so getters are only called
+ * when the reader advances to the property they produce. The events of a step are held in a small pool of reused event records.
+ */
+final class BeanStreamReader implements XMLStreamReader, ContentHandler {
+
+    private static final Location NO_LOCATION = new Location() {
+        @Override
+        public int getLineNumber() {
+            return -1;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return -1;
+        }
+
+        @Override
+        public int getCharacterOffset() {
+            return -1;
+        }
+
+        @Override
+        public String getPublicId() {
+            return null;
+        }
+
+        @Override
+        public String getSystemId() {
+            return null;
+        }
+    };
+
+    private static final NamespaceContext NO_NAMESPACES = new NamespaceContext() {
+        @Override
+        public String getNamespaceURI(String prefix) {
+            if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                return XMLConstants.XML_NS_URI;
+            } else if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+                return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+            }
+            return XMLConstants.NULL_NS_URI;
+        }
+
+        @Override
+        public String getPrefix(String namespaceURI) {
+            return null;
+        }
+
+        @Override
+        public Iterator<String> getPrefixes(String namespaceURI) {
+            return Collections.<String> emptyIterator();
+        }
+    };
+
+    private BeanSource.BeanXMLReader reader;
+    private Event[] events = new Event[8];
+    private int count;
+    private int read;
+    private Event current = new Event();
+    private boolean started;
+
+    BeanStreamReader(BeanSource source) {
+        reader = new BeanSource.BeanXMLReader(source);
+        reader.setContentHandler(this);
+        current.type = START_DOCUMENT;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        if (current.type == END_DOCUMENT) {
+            throw new NoSuchElementException("The document has ended");
+        }
+        if (reader == null) {
+            throw new XMLStreamException("The reader has been closed");
+        }
+
+        try {
+            if (!started) {
+                started = true;
+                reader.startWalk();
+            }
+
+            while (read == count) {
+                count = 0;
+                read = 0;
+                if (!reader.step()) {
+                    reader.endWalk();
+                }
+            }
+        } catch (SAXException e) {
+            try {
+                close();
+            } catch (XMLStreamException closeFailure) {
+                // report the failure of the walk, not of the clean up
+            }
+            throw new XMLStreamException(e.getMessage(), e);
+        }
+
+        current = events[read++];
+        return current.type;
+    }
+
+    @Override
+    public void require(int type, String namespaceURI, String localName) throws XMLStreamException {
+        if (type != current.type) {
+            throw new XMLStreamException("Expected event " + type + " but found " + current.type);
+        }
+        if ((namespaceURI != null) && !namespaceURI.isEmpty()) {
+            throw new XMLStreamException("Expected namespace " + namespaceURI + " but found none");
+        }
+        if ((localName != null) && !localName.equals(current.name)) {
+            throw new XMLStreamException("Expected element " + localName + " but found " + current.name);
+        }
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+        if (current.type != START_ELEMENT) {
+            throw new XMLStreamException("Not at the start of an element");
+        }
+
+        StringBuilder sb = new StringBuilder();
+        int type = next();
+        while (type != END_ELEMENT) {
+            if (type == CHARACTERS) {
+                sb.append(current.chars, 0, current.length);
+            } else {
+                throw new XMLStreamException("Element " + current.name + " is not a text only element");
+            }
+            type = next();
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int type = next();
+        while ((type == CHARACTERS) && isWhiteSpace()) {
+            type = next();
+        }
+        if ((type != START_ELEMENT) && (type != END_ELEMENT)) {
+            throw new XMLStreamException("Expected a start or end tag but found " + type);
+        }
+        return type;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return current.type != END_DOCUMENT;
+    }
+
+    /**
+     * stops the walk, closing any streams or other closeable sequences it was part way through
+     */
+    @Override
+    public void close() throws XMLStreamException {
+        if (reader == null) {
+            return;
+        }
+
+        try {
+            reader.abortWalk();
+        } catch (SAXException e) {
+            throw new XMLStreamException(e.getMessage(), e);
+        } finally {
+            reader = null;
+            count = 0;
+            read = 0;
+        }
+    }
+
+    @Override
+    public String getNamespaceURI(String prefix) {
+        return NO_NAMESPACES.getNamespaceURI(prefix);
+    }
+
+    @Override
+    public boolean isStartElement() {
+        return current.type == START_ELEMENT;
+    }
+
+    @Override
+    public boolean isEndElement() {
+        return current.type == END_ELEMENT;
+    }
+
+    @Override
+    public boolean isCharacters() {
+        return current.type == CHARACTERS;
+    }
+
+    @Override
+    public boolean isWhiteSpace() {
+        if (current.type != CHARACTERS) {
+            return false;
+        }
+        for (int i = 0; i < current.length; i++) {
+            if (!Character.isWhitespace(current.chars[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String getAttributeValue(String namespaceURI, String localName) {
+        return attributes().getValue(localName);
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return attributes().getLength();
+    }
+
+    @Override
+    public QName getAttributeName(int index) {
+        return new QName(attributes().getQName(index));
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+        return null;
+    }
+
+    @Override
+    public String getAttributeLocalName(int index) {
+        return attributes().getQName(index);
+    }
+
+    @Override
+    public String getAttributePrefix(int index) {
+        return XMLConstants.DEFAULT_NS_PREFIX;
+    }
+
+    @Override
+    public String getAttributeType(int index) {
+        return "CDATA";
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        return attributes().getValue(index);
+    }
+
+    @Override
+    public boolean isAttributeSpecified(int index) {
+        return true;
+    }
+
+    @Override
+    public int getNamespaceCount() {
+        return 0;
+    }
+
+    @Override
+    public String getNamespacePrefix(int index) {
+        throw new IndexOutOfBoundsException("No namespaces are declared");
+    }
+
+    @Override
+    public String getNamespaceURI(int index) {
+        throw new IndexOutOfBoundsException("No namespaces are declared");
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        return NO_NAMESPACES;
+    }
+
+    @Override
+    public int getEventType() {
+        return current.type;
+    }
+
+    @Override
+    public String getText() {
+        if (current.type != CHARACTERS) {
+            throw new IllegalStateException("Event " + current.type + " has no text");
+        }
+        return new String(current.chars, 0, current.length);
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        if (current.type != CHARACTERS) {
+            throw new IllegalStateException("Event " + current.type + " has no text");
+        }
+        return current.chars;
+    }
+
+    @Override
+    public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length) {
+        if (current.type != CHARACTERS) {
+            throw new IllegalStateException("Event " + current.type + " has no text");
+        }
+        int len = Math.max(0, Math.min(length, current.length - sourceStart));
+        System.arraycopy(current.chars, sourceStart, target, targetStart, len);
+        return len;
+    }
+
+    @Override
+    public int getTextStart() {
+        return 0;
+    }
+
+    @Override
+    public int getTextLength() {
+        return current.length;
+    }
+
+    @Override
+    public String getEncoding() {
+        return null;
+    }
+
+    @Override
+    public boolean hasText() {
+        return current.type == CHARACTERS;
+    }
+
+    @Override
+    public Location getLocation() {
+        return NO_LOCATION;
+    }
+
+    @Override
+    public QName getName() {
+        if (!hasName()) {
+            throw new IllegalStateException("Event " + current.type + " has no name");
+        }
+        return new QName(current.name);
+    }
+
+    @Override
+    public String getLocalName() {
+        if (!hasName()) {
+            throw new IllegalStateException("Event " + current.type + " has no name");
+        }
+        return current.name;
+    }
+
+    @Override
+    public boolean hasName() {
+        return (current.type == START_ELEMENT) || (current.type == END_ELEMENT);
+    }
+
+    @Override
+    public String getNamespaceURI() {
+        return null;
+    }
+
+    @Override
+    public String getPrefix() {
+        return XMLConstants.DEFAULT_NS_PREFIX;
+    }
+
+    @Override
+    public String getVersion() {
+        return null;
+    }
+
+    @Override
+    public boolean isStandalone() {
+        return false;
+    }
+
+    @Override
+    public boolean standaloneSet() {
+        return false;
+    }
+
+    @Override
+    public String getCharacterEncodingScheme() {
+        return null;
+    }
+
+    @Override
+    public String getPITarget() {
+        return null;
+    }
+
+    @Override
+    public String getPIData() {
+        return null;
+    }
+
+    private Attributes attributes() {
+        if (current.type != START_ELEMENT) {
+            throw new IllegalStateException("Event " + current.type + " has no attributes");
+        }
+        return current.attributes;
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+    }
+
+    @Override
+    public void startDocument() {
+        // the reader starts out at the start of the document
+    }
+
+    @Override
+    public void endDocument() {
+        add(END_DOCUMENT, null, null);
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) {
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) {
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) {
+        add(START_ELEMENT, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        add(END_ELEMENT, qName, null);
+    }
+
+    /**
+     * copies the text, as the bean reader reuses its array between events. Empty text is dropped, as a pull reader reports no event for it.
+     */
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (length == 0) {
+            return;
+        }
+
+        Event e = add(CHARACTERS, null, null);
+        if ((e.chars == null) || (e.chars.length < length)) {
+            e.chars = new char[Math.max(length, 32)];
+        }
+        System.arraycopy(ch, start, e.chars, 0, length);
+        e.length = length;
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) {
+    }
+
+    @Override
+    public void skippedEntity(String name) {
+    }
+
+    private Event add(int type, String name, Attributes atts) {
+        if (count == events.length) {
+            events = Arrays.copyOf(events, count * 2);
+        }
+        Event e = events[count];
+        if (e == null) {
+            e = new Event();
+            events[count] = e;
+        }
+        count++;
+
+        e.type = type;
+        e.name = name;
+        e.attributes = atts;
+        e.length = 0;
+        return e;
+    }
+
+    @Override
+    public String toString() {
+        return "BeanStreamReader[event: " + current + "]";
+    }
+
+    private static final class Event {
+        int type;
+        String name;
+        Attributes attributes;
+        char[] chars;
+        int length;
+
+        @Override
+        public String toString() {
+            return "Event[type: " + type + ", name: " + name + "]";
+        }
+    }
+}
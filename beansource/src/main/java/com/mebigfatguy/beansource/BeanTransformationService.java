@@ -0,0 +1,275 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXSource;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * runs transformations of beans in the background, each on its own virtual thread where the jvm has them, so that getters that block, such as
+ * lazy loads, don't hold a platform thread. On older jvms jobs run on a pool of daemon threads instead. At most maxConcurrent jobs run at once,
+ * and at most maxQueued more wait for their turn; once that many are waiting, submitting blocks until one finishes. A job that is cancelled or times
+ * out stops its walk of the bean graph at the next element, and its thread is interrupted, to break out of a getter that is blocked.
+ */
+public class BeanTransformationService implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_CONCURRENT = 256;
+    public static final int DEFAULT_MAX_QUEUED = 1024;
+
+    private final BeanTransformer transformer;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final int maxConcurrent;
+    private final int maxJobs;
+    private final Semaphore running;
+    private final Semaphore admitted;
+
+    public BeanTransformationService() {
+        this(new BeanTransformer(TransformerFactory.newInstance(), BeanTransformer.DEFAULT_MAX_TEMPLATES, DEFAULT_MAX_CONCURRENT), DEFAULT_MAX_CONCURRENT,
+                DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * creates a service that transforms with the given transformer, which should pool as many transformers as jobs may run at once
+     */
+    public BeanTransformationService(BeanTransformer beanTransformer, int maxConcurrent, int maxQueued) {
+        if ((maxConcurrent < 1) || (maxQueued < 0)) {
+            throw new IllegalArgumentException("Concurrency must be positive and the queue not negative, not " + maxConcurrent + " and " + maxQueued);
+        }
+
+        transformer = beanTransformer;
+        this.maxConcurrent = maxConcurrent;
+        maxJobs = maxConcurrent + maxQueued;
+        running = new Semaphore(maxConcurrent);
+        admitted = new Semaphore(maxJobs);
+
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        virtualThreads = virtualExecutor != null;
+        executor = virtualThreads ? virtualExecutor : Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "beansource-transform");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * finds Executors.newVirtualThreadPerTaskExecutor reflectively, so the library still runs on jvms without virtual threads, or with them only as
+     * a preview feature that isn't enabled
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * writes the bean to the result with the identity transform
+     */
+    public CompletableFuture<Result> submit(BeanSource source, Result result) throws InterruptedException {
+        return submit(null, source, result, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * queues a transformation of the bean with the stylesheet, or with the identity transform if it's null, waiting for room in the queue if it's
+     * full. The future completes with the result once the transformation is done. A timeout of zero or less means the job can run for as long as
+     * it takes; otherwise, time spent queued counts towards it.
+     */
+    public CompletableFuture<Result> submit(Source styleSheet, BeanSource source, Result result, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        admitted.acquire();
+        Job job = new Job(styleSheet, source, result);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            admitted.release();
+            throw e;
+        }
+
+        if (timeout > 0) {
+            job.future.orTimeout(timeout, unit);
+        }
+        job.future.whenComplete((r, t) -> {
+            if (t != null) {
+                job.interrupt();
+            }
+        });
+        return job.future;
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * the number of jobs running now
+     */
+    public int getRunningJobs() {
+        return maxConcurrent - running.availablePermits();
+    }
+
+    /**
+     * the number of jobs submitted that haven't finished, whether running or waiting to
+     */
+    public int getActiveJobs() {
+        return maxJobs - admitted.availablePermits();
+    }
+
+    /**
+     * stops taking new jobs. Jobs already submitted are left to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "BeanTransformationService[virtualThreads: " + virtualThreads + ", running: " + getRunningJobs() + ", active: " + getActiveJobs() + "]";
+    }
+
+    /**
+     * one transformation, and the thread running it, if it has started
+     */
+    private final class Job implements Runnable {
+        final CompletableFuture<Result> future = new CompletableFuture<>();
+        private final Source styleSheet;
+        private final BeanSource source;
+        private final Result result;
+        private Thread runner;
+
+        Job(Source styleSheet, BeanSource source, Result result) {
+            this.styleSheet = styleSheet;
+            this.source = source;
+            this.result = result;
+        }
+
+        /**
+         * runs the transformation, giving back its place in the queue before completing the future, so that whatever the future runs on completion
+         * can submit another job without waiting. The thread is recorded before waiting for a turn to run, so that a job cancelled or timed out
+         * while it waits is interrupted out of the wait, and anything thrown, errors from getters included, fails the future.
+         */
+        @Override
+        public void run() {
+            boolean transformed = false;
+            Throwable failure = null;
+            try {
+                if (start()) {
+                    try {
+                        running.acquire();
+                        try {
+                            if (!future.isDone()) {
+                                SAXSource cancellable = new SAXSource(new CancellableFilter(source, future), new InputSource());
+                                transformer.transformSource(styleSheet, cancellable, result);
+                                transformed = true;
+                            }
+                        } finally {
+                            running.release();
+                        }
+                    } finally {
+                        finish();
+                    }
+                }
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                admitted.release();
+            }
+
+            if (transformed) {
+                future.complete(result);
+            } else if (failure != null) {
+                future.completeExceptionally(failure);
+            }
+        }
+
+        private synchronized boolean start() {
+            if (future.isDone()) {
+                return false;
+            }
+            runner = Thread.currentThread();
+            return true;
+        }
+
+        /**
+         * forgets the thread, clearing any interrupt meant for this job, so it doesn't reach the next job a pooled thread runs
+         */
+        private synchronized void finish() {
+            runner = null;
+            Thread.interrupted();
+        }
+
+        synchronized void interrupt() {
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Job[styleSheet: " + ((styleSheet == null) ? null : styleSheet.getSystemId()) + ", done: " + future.isDone() + "]";
+        }
+    }
+
+    /**
+     * passes a bean reader's events on to the transformer, failing the walk at the next element once the job's future is done, as it is when
+     * the job is cancelled or times out
+     */
+    private static final class CancellableFilter extends XMLFilterImpl {
+        private final CompletableFuture<Result> future;
+
+        CancellableFilter(BeanSource source, CompletableFuture<Result> future) {
+            super(source.getXMLReader());
+            this.future = future;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+            checkCancelled();
+            super.startElement(uri, localName, qName, atts);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            checkCancelled();
+            super.endElement(uri, localName, qName);
+        }
+
+        private void checkCancelled() throws SAXException {
+            if (future.isDone()) {
+                throw new SAXException(new CancellationException("The transformation was cancelled or timed out"));
+            }
+        }
+    }
+}
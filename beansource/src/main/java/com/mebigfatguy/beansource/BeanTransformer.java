@@ -0,0 +1,255 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+/**
+ * transforms beans with stylesheets that are compiled once and shared between threads. Compiled stylesheets are cached by system id, with the
+ * least recently used dropped once the cache is full, and each keeps a pool of transformers that are reset and reused. When all of a pool's
+ * transformers are busy, callers wait for one to be returned.
+ */
+public class BeanTransformer {
+
+    public static final int DEFAULT_MAX_TEMPLATES = 64;
+
+    private final TransformerFactory factory;
+    private final int maxTransformers;
+    private final Map<String, TransformerPool> pools;
+    private final TransformerPool identityPool;
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong cacheEvictions = new AtomicLong();
+    private final AtomicLong poolWaits = new AtomicLong();
+    private final AtomicLong poolWaitNanos = new AtomicLong();
+
+    public BeanTransformer() {
+        this(TransformerFactory.newInstance(), DEFAULT_MAX_TEMPLATES, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * creates a transformer facade over the given factory, caching up to maxTemplates compiled stylesheets, and pooling up to maxTransformers
+     * transformers for each of them, and for the identity transform
+     */
+    public BeanTransformer(TransformerFactory transformerFactory, final int maxTemplates, int maxTransformers) {
+        if ((maxTemplates < 1) || (maxTransformers < 1)) {
+            throw new IllegalArgumentException("Template and transformer limits must be positive, not " + maxTemplates + " and " + maxTransformers);
+        }
+
+        factory = transformerFactory;
+        this.maxTransformers = maxTransformers;
+        pools = new LinkedHashMap<String, TransformerPool>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TransformerPool> eldest) {
+                if (size() > maxTemplates) {
+                    cacheEvictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        identityPool = new TransformerPool(null);
+    }
+
+    /**
+     * writes the bean to the result with the identity transform
+     */
+    public void transform(Object bean, String name, Result result) throws TransformerException {
+        transform(new BeanSource(bean, name), result);
+    }
+
+    public void transform(BeanSource source, Result result) throws TransformerException {
+        identityPool.transform(source, result);
+    }
+
+    /**
+     * transforms the bean with the stylesheet at the given system id, which is only read and compiled the first time it's used
+     */
+    public void transform(String styleSheet, Object bean, String name, Result result) throws TransformerException {
+        transform(new StreamSource(styleSheet), new BeanSource(bean, name), result);
+    }
+
+    /**
+     * transforms the bean with the stylesheet, which is cached by its system id. The source is only read when the stylesheet isn't cached, so it
+     * must have a system id.
+     */
+    public void transform(Source styleSheet, BeanSource source, Result result) throws TransformerException {
+        transformSource(styleSheet, source, result);
+    }
+
+    /**
+     * transforms any source, with the cached stylesheet, or with the identity transform when the stylesheet is null
+     */
+    void transformSource(Source styleSheet, Source source, Result result) throws TransformerException {
+        if (styleSheet == null) {
+            identityPool.transform(source, result);
+            return;
+        }
+
+        String systemId = styleSheet.getSystemId();
+        if (systemId == null) {
+            throw new IllegalArgumentException("Stylesheet " + styleSheet + " has no system id to cache it by");
+        }
+
+        TransformerPool pool;
+        synchronized (pools) {
+            pool = pools.get(systemId);
+            if (pool == null) {
+                cacheMisses.incrementAndGet();
+                pool = new TransformerPool(systemId);
+                pools.put(systemId, pool);
+            } else {
+                cacheHits.incrementAndGet();
+            }
+        }
+
+        try {
+            pool.compile(styleSheet);
+        } catch (TransformerException e) {
+            synchronized (pools) {
+                if (pools.get(systemId) == pool) {
+                    pools.remove(systemId);
+                }
+            }
+            throw e;
+        }
+        pool.transform(source, result);
+    }
+
+    /**
+     * drops the compiled stylesheet for a system id, so that it is read again the next time it's used
+     */
+    public void invalidate(String styleSheet) {
+        synchronized (pools) {
+            pools.remove(styleSheet);
+        }
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    public long getCacheEvictions() {
+        return cacheEvictions.get();
+    }
+
+    /**
+     * the number of transforms that had to wait for a pooled transformer to be returned
+     */
+    public long getPoolWaits() {
+        return poolWaits.get();
+    }
+
+    public long getPoolWaitNanos() {
+        return poolWaitNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return "BeanTransformer[hits: " + cacheHits + ", misses: " + cacheMisses + ", evictions: " + cacheEvictions + ", poolWaits: " + poolWaits + "]";
+    }
+
+    /**
+     * the compiled form of one stylesheet, or of the identity transform, along with the transformers made from it that aren't in use
+     */
+    private final class TransformerPool {
+        private final String systemId;
+        private final Semaphore permits = new Semaphore(maxTransformers);
+        private final BlockingQueue<Transformer> idle = new LinkedBlockingQueue<>();
+        private volatile Templates templates;
+
+        TransformerPool(String systemId) {
+            this.systemId = systemId;
+        }
+
+        void compile(Source styleSheet) throws TransformerConfigurationException {
+            if (templates == null) {
+                synchronized (this) {
+                    if (templates == null) {
+                        synchronized (factory) {
+                            templates = factory.newTemplates(styleSheet);
+                        }
+                    }
+                }
+            }
+        }
+
+        void transform(Source source, Result result) throws TransformerException {
+            if (!permits.tryAcquire()) {
+                poolWaits.incrementAndGet();
+                long start = System.nanoTime();
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TransformerException("Interrupted waiting for a transformer for " + this, e);
+                } finally {
+                    poolWaitNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+
+            try {
+                Transformer t = idle.poll();
+                if (t == null) {
+                    t = newTransformer();
+                }
+                try {
+                    t.transform(source, result);
+                } finally {
+                    t.reset();
+                    idle.offer(t);
+                }
+            } finally {
+                permits.release();
+            }
+        }
+
+        private Transformer newTransformer() throws TransformerConfigurationException {
+            if (templates != null) {
+                return templates.newTransformer();
+            }
+
+            synchronized (factory) {
+                return factory.newTransformer();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "TransformerPool[systemId: " + systemId + ", idle: " + idle.size() + "]";
+        }
+    }
+}
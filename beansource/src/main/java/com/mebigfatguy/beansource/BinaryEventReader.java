@@ -0,0 +1,307 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * replays a recorded event stream into a content handler. Each parse reads its own view of the buffer, so one recording can be replayed any number
+ * of times, and from several threads at once.
+ */
+final class BinaryEventReader implements XMLReader {
+
+    private final ByteBuffer events;
+    private ContentHandler contentHandler = null;
+    private DTDHandler dtdHandler = null;
+    private EntityResolver entityResolver = null;
+    private ErrorHandler errorHandler = null;
+
+    BinaryEventReader(ByteBuffer events) {
+        this.events = events;
+    }
+
+    @Override
+    public ContentHandler getContentHandler() {
+        return contentHandler;
+    }
+
+    @Override
+    public DTDHandler getDTDHandler() {
+        return dtdHandler;
+    }
+
+    @Override
+    public EntityResolver getEntityResolver() {
+        return entityResolver;
+    }
+
+    @Override
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    @Override
+    public boolean getFeature(String name) {
+        return false;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    @Override
+    public void parse(InputSource input) throws SAXException {
+        parse();
+    }
+
+    @Override
+    public void parse(String systemId) throws SAXException {
+        parse();
+    }
+
+    @Override
+    public void setContentHandler(ContentHandler handler) {
+        contentHandler = handler;
+    }
+
+    @Override
+    public void setDTDHandler(DTDHandler handler) {
+        dtdHandler = handler;
+    }
+
+    @Override
+    public void setEntityResolver(EntityResolver resolver) {
+        entityResolver = resolver;
+    }
+
+    @Override
+    public void setErrorHandler(ErrorHandler handler) {
+        errorHandler = handler;
+    }
+
+    @Override
+    public void setFeature(String name, boolean value) {
+    }
+
+    @Override
+    public void setProperty(String name, Object value) {
+    }
+
+    private void parse() throws SAXException {
+        if (contentHandler == null) {
+            return;
+        }
+
+        ByteBuffer in = events.duplicate();
+        try {
+            new Replay(in, contentHandler).run();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new SAXException("The event stream is truncated or corrupt at byte " + in.position(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryEventReader[bytes: " + events.remaining() + "]";
+    }
+
+    /**
+     * the state of one replay, the tables as they are rebuilt, and the names of the open elements
+     */
+    private static final class Replay {
+        private final ByteBuffer in;
+        private final ContentHandler handler;
+        private final List<String> strings = new ArrayList<>();
+        private final List<AttributesAdapter> attributeLists = new ArrayList<>();
+        private final TextBuffer textBuffer = new TextBuffer();
+        private String[] open = new String[48];
+        private int depth;
+        private char[] chars = new char[64];
+
+        Replay(ByteBuffer in, ContentHandler handler) {
+            this.in = in;
+            this.handler = handler;
+        }
+
+        void run() throws SAXException {
+            byte[] magic = new byte[BinaryEvents.MAGIC.length];
+            in.get(magic);
+            if (!Arrays.equals(magic, BinaryEvents.MAGIC)) {
+                throw new SAXException("Not a recorded event stream");
+            }
+            int version = in.get();
+            if (version != BinaryEvents.VERSION) {
+                throw new SAXException("Unsupported event stream version " + version);
+            }
+
+            while (true) {
+                int op = in.get();
+                switch (op) {
+                    case BinaryEvents.START_DOCUMENT:
+                        handler.startDocument();
+                    break;
+
+                    case BinaryEvents.END_DOCUMENT:
+                        handler.endDocument();
+                        return;
+
+                    case BinaryEvents.START_ELEMENT:
+                        String uri = getString();
+                        String localName = getString();
+                        String qName = getString();
+                        AttributesAdapter atts = getAttributes();
+                        if ((depth + 3) > open.length) {
+                            open = Arrays.copyOf(open, open.length * 2);
+                        }
+                        open[depth++] = uri;
+                        open[depth++] = localName;
+                        open[depth++] = qName;
+                        handler.startElement(uri, localName, qName, atts);
+                    break;
+
+                    case BinaryEvents.END_ELEMENT:
+                        depth -= 3;
+                        handler.endElement(open[depth], open[depth + 1], open[depth + 2]);
+                    break;
+
+                    case BinaryEvents.TEXT:
+                        int length = getChars();
+                        handler.characters(chars, 0, length);
+                    break;
+
+                    case BinaryEvents.LONG:
+                        long zigzag = getVarint();
+                        textBuffer.append((zigzag >>> 1) ^ -(zigzag & 1));
+                        textBuffer.flush(handler);
+                    break;
+
+                    case BinaryEvents.DECIMAL:
+                        length = getDecimal();
+                        handler.characters(chars, 0, length);
+                    break;
+
+                    case BinaryEvents.PROCESSING_INSTRUCTION:
+                        String target = getString();
+                        handler.processingInstruction(target, getString());
+                    break;
+
+                    default:
+                        throw new SAXException("Unknown event " + op + " at byte " + (in.position() - 1));
+                }
+            }
+        }
+
+        private String getString() {
+            int ref = (int) getVarint();
+            if (ref != BinaryEvents.NEW_ENTRY) {
+                return strings.get(ref - 1);
+            }
+
+            int length = getChars();
+            String s = new String(chars, 0, length);
+            strings.add(s);
+            return s;
+        }
+
+        private AttributesAdapter getAttributes() {
+            int ref = (int) getVarint();
+            if (ref != BinaryEvents.NEW_ENTRY) {
+                return attributeLists.get(ref - 1);
+            }
+
+            int count = (int) getVarint();
+            AttributesAdapter atts = new AttributesAdapter();
+            for (int i = 0; i < count; i++) {
+                String uri = getString();
+                String localName = getString();
+                String qName = getString();
+                atts.addAttribute(new Attribute(uri, localName, qName, getString()));
+            }
+            attributeLists.add(atts);
+            return atts;
+        }
+
+        /**
+         * reads text into the reused char array, returning its length
+         */
+        private int getChars() {
+            int length = (int) getVarint();
+            ensureChars(length);
+            for (int i = 0; i < length; i++) {
+                int b = in.get() & 0xFF;
+                if (b < 0x80) {
+                    chars[i] = (char) b;
+                } else if (b < 0xE0) {
+                    chars[i] = (char) (((b & 0x1F) << 6) | (in.get() & 0x3F));
+                } else {
+                    chars[i] = (char) (((b & 0x0F) << 12) | ((in.get() & 0x3F) << 6) | (in.get() & 0x3F));
+                }
+            }
+            return length;
+        }
+
+        private int getDecimal() {
+            int length = (int) getVarint();
+            ensureChars(length);
+            for (int i = 0; i < length; i += 2) {
+                int b = in.get() & 0xFF;
+                chars[i] = decimalChar(b >> 4);
+                if ((i + 1) < length) {
+                    chars[i + 1] = decimalChar(b & 0x0F);
+                }
+            }
+            return length;
+        }
+
+        private static char decimalChar(int nibble) {
+            return (nibble < 10) ? (char) ('0' + nibble) : BinaryEvents.DECIMAL_SYMBOLS.charAt(nibble - 10);
+        }
+
+        private void ensureChars(int length) {
+            if (length < 0) {
+                throw new IndexOutOfBoundsException("negative length");
+            }
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+        }
+
+        private long getVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IndexOutOfBoundsException("varint too long");
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * a content handler that records the events it is sent in a compact binary form, which {@link BinaryEventSource} replays without any xml
+ * parsing. Element names and attributes are written once and referenced after, and numbers are held as numbers, so a recorded bean graph is
+ * typically a fraction of the size of its xml. Events are written through a reused byte buffer to a channel or stream, or straight into a buffer
+ * the caller provides, such as a mapped file. Prefix mappings and skipped entities are not recorded.
+ */
+public final class BinaryEventRecorder implements ContentHandler {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /** the most bytes an opcode and its fixed operands take, the opcode and a 64 bit varint */
+    private static final int MAX_FIXED_BYTES = 11;
+
+    private final ByteBuffer buffer;
+    private final WritableByteChannel channel;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final Map<AttributeList, Integer> attributeLists = new HashMap<>();
+    private final AttributeList probe = new AttributeList();
+
+    public BinaryEventRecorder(WritableByteChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    public BinaryEventRecorder(OutputStream os) {
+        this(Channels.newChannel(os));
+    }
+
+    /**
+     * records into the given buffer, from its position, leaving the position after the last event. Recording fails if the buffer fills.
+     */
+    public BinaryEventRecorder(ByteBuffer target) {
+        channel = null;
+        buffer = target;
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+    }
+
+    /**
+     * starts a new recording, forgetting the names and attributes of any earlier one, as each recording has to be replayable by itself
+     */
+    @Override
+    public void startDocument() throws SAXException {
+        strings.clear();
+        attributeLists.clear();
+        ensure(BinaryEvents.MAGIC.length + 2);
+        buffer.put(BinaryEvents.MAGIC);
+        buffer.put((byte) BinaryEvents.VERSION);
+        buffer.put((byte) BinaryEvents.START_DOCUMENT);
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        ensure(1);
+        buffer.put((byte) BinaryEvents.END_DOCUMENT);
+        if (channel != null) {
+            flush();
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) {
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) {
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        ensure(1);
+        buffer.put((byte) BinaryEvents.START_ELEMENT);
+        putString(uri);
+        putString(localName);
+        putString(qName);
+        putAttributes(atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        ensure(1);
+        buffer.put((byte) BinaryEvents.END_ELEMENT);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        ensure(MAX_FIXED_BYTES);
+        if (isLong(ch, start, length)) {
+            long value = parseLong(ch, start, length);
+            buffer.put((byte) BinaryEvents.LONG);
+            putVarint((value << 1) ^ (value >> 63));
+            return;
+        }
+
+        if (isDecimal(ch, start, length)) {
+            buffer.put((byte) BinaryEvents.DECIMAL);
+            putVarint(length);
+            for (int i = start; i < (start + length); i += 2) {
+                int high = nibble(ch[i]) << 4;
+                int low = ((i + 1) < (start + length)) ? nibble(ch[i + 1]) : 0;
+                if (!buffer.hasRemaining()) {
+                    ensure(1);
+                }
+                buffer.put((byte) (high | low));
+            }
+            return;
+        }
+
+        buffer.put((byte) BinaryEvents.TEXT);
+        putChars(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        ensure(1);
+        buffer.put((byte) BinaryEvents.PROCESSING_INSTRUCTION);
+        putString(target);
+        putString((data == null) ? "" : data);
+    }
+
+    @Override
+    public void skippedEntity(String name) {
+    }
+
+    /**
+     * text that Long.toString would have written, with at most 18 digits, so it can't overflow
+     */
+    private static boolean isLong(char[] ch, int start, int length) {
+        int digitStart = ((length > 1) && (ch[start] == '-')) ? start + 1 : start;
+        int digits = (start + length) - digitStart;
+        if ((digits == 0) || (digits > 18)) {
+            return false;
+        }
+        if ((ch[digitStart] == '0') && ((digits > 1) || (digitStart > start))) {
+            return false;
+        }
+        for (int i = digitStart; i < (start + length); i++) {
+            if ((ch[i] < '0') || (ch[i] > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseLong(char[] ch, int start, int length) {
+        boolean negative = ch[start] == '-';
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < (start + length); i++) {
+            value = (value * 10) + (ch[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * text made only of digits and the other chars of numbers, such as doubles, which packs two chars to a byte
+     */
+    private static boolean isDecimal(char[] ch, int start, int length) {
+        if (length < 2) {
+            return false;
+        }
+        for (int i = start; i < (start + length); i++) {
+            char c = ch[i];
+            if (((c < '0') || (c > '9')) && (BinaryEvents.DECIMAL_SYMBOLS.indexOf(c) < 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int nibble(char c) {
+        return ((c >= '0') && (c <= '9')) ? c - '0' : 10 + BinaryEvents.DECIMAL_SYMBOLS.indexOf(c);
+    }
+
+    private void putString(String s) throws SAXException {
+        if (s == null) {
+            s = "";
+        }
+        Integer index = strings.get(s);
+        ensure(5);
+        if (index != null) {
+            putVarint(index.intValue() + 1);
+            return;
+        }
+
+        putVarint(BinaryEvents.NEW_ENTRY);
+        putChars(s);
+        strings.put(s, Integer.valueOf(strings.size()));
+    }
+
+    private void putAttributes(Attributes atts) throws SAXException {
+        probe.set(atts);
+        Integer index = attributeLists.get(probe);
+        ensure(10);
+        if (index != null) {
+            putVarint(index.intValue() + 1);
+            return;
+        }
+
+        putVarint(BinaryEvents.NEW_ENTRY);
+        int count = atts.getLength();
+        putVarint(count);
+        for (int i = 0; i < count; i++) {
+            putString(atts.getURI(i));
+            putString(atts.getLocalName(i));
+            putString(atts.getQName(i));
+            putString(atts.getValue(i));
+        }
+        attributeLists.put(probe.copy(), Integer.valueOf(attributeLists.size()));
+    }
+
+    private void putChars(String s) throws SAXException {
+        int len = s.length();
+        ensure(5);
+        putVarint(len);
+        for (int i = 0; i < len; i++) {
+            putChar(s.charAt(i));
+        }
+    }
+
+    private void putChars(char[] ch, int start, int length) throws SAXException {
+        ensure(5);
+        putVarint(length);
+        for (int i = start; i < (start + length); i++) {
+            putChar(ch[i]);
+        }
+    }
+
+    private void putChar(char c) throws SAXException {
+        if (buffer.remaining() < 3) {
+            ensure(3);
+        }
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else {
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+
+    /**
+     * writes an unsigned varint. The caller has made room for it, 5 bytes for ints, 10 for longs.
+     */
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void ensure(int bytes) throws SAXException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        if (channel == null) {
+            throw new SAXException("The event buffer is full, at " + buffer.position() + " bytes");
+        }
+        flush();
+    }
+
+    private void flush() throws SAXException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryEventRecorder[strings: " + strings.size() + ", attributeLists: " + attributeLists.size() + "]";
+    }
+
+    /**
+     * the strings of an attribute list, as a key for the table of lists already written. The recorder fills one list in place for each lookup, and
+     * only copies it when it is new.
+     */
+    private static final class AttributeList {
+        private String[] values = new String[16];
+        private int length;
+        private int hash;
+
+        void set(Attributes atts) {
+            int count = atts.getLength();
+            length = count * 4;
+            if (values.length < length) {
+                values = new String[length];
+            }
+            int h = count;
+            for (int i = 0; i < count; i++) {
+                int v = i * 4;
+                values[v] = atts.getURI(i);
+                values[v + 1] = atts.getLocalName(i);
+                values[v + 2] = atts.getQName(i);
+                values[v + 3] = atts.getValue(i);
+                for (int j = v; j < (v + 4); j++) {
+                    if (values[j] == null) {
+                        values[j] = "";
+                    }
+                    h = (31 * h) + values[j].hashCode();
+                }
+            }
+            hash = h;
+        }
+
+        AttributeList copy() {
+            AttributeList list = new AttributeList();
+            list.values = Arrays.copyOf(values, length);
+            list.length = length;
+            list.hash = hash;
+            return list;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof AttributeList)) {
+                return false;
+            }
+            AttributeList that = (AttributeList) o;
+            if ((length != that.length) || (hash != that.hash)) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (!values[i].equals(that.values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "AttributeList" + Arrays.toString(Arrays.copyOf(values, length));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.xml.transform.sax.SAXSource;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * a source that replays events recorded by a {@link BinaryEventRecorder}, for a transformer or any other consumer of sax sources, without parsing
+ * xml. The recording is read from the buffer's position to its limit, and the buffer itself is never moved, so a source can be used any number of
+ * times.
+ */
+public class BinaryEventSource extends SAXSource {
+
+    private final ByteBuffer events;
+
+    public BinaryEventSource(ByteBuffer events) {
+        this.events = events.duplicate();
+    }
+
+    /**
+     * maps a recording file into memory, read only, so it is replayed straight from the page cache. Files over 2GB can't be mapped as one buffer.
+     */
+    public static BinaryEventSource map(Path file) throws IOException {
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new BinaryEventSource(fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()));
+        }
+    }
+
+    @Override
+    public InputSource getInputSource() {
+        return new InputSource();
+    }
+
+    @Override
+    public String getSystemId() {
+        return null;
+    }
+
+    @Override
+    public XMLReader getXMLReader() {
+        return new BinaryEventReader(events);
+    }
+
+    @Override
+    public void setInputSource(InputSource inputSource) {
+    }
+
+    @Override
+    public void setSystemId(String systemId) {
+    }
+
+    @Override
+    public void setXMLReader(XMLReader reader) {
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryEventSource[bytes: " + events.remaining() + "]";
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+/**
+ * the layout of a recorded event stream. A stream starts with the magic bytes and version, and is then a list of events, each an opcode byte
+ * followed by its operands. Counts, lengths and references are unsigned varints, seven bits to a byte, low bits first. Strings and attribute lists
+ * are referenced by their index in a table built as the stream is written: a reference of 0 is followed by a new entry, which is given the next
+ * index, otherwise it is the entry's index plus one. Text is a char count followed by the chars, each as one to three bytes of UTF-8, surrogates
+ * included, so that text split between two events is replayed exactly as it was recorded. Text that is the canonical form of a long is held as
+ * a zigzag varint, and other numeric text, such as doubles, as a char count and two chars to a byte, so the text comes back exactly as it was
+ * written whichever vm replays it.
+ *
+ * <pre>
+ * START_ELEMENT uri localName qName attributes    attributes: count, then uri localName qName value of each
+ * END_ELEMENT                                     ends the innermost open element
+ * TEXT count chars
+ * LONG zigzag
+ * DECIMAL count nibbles                          0-9, then . - E +, high nibble first
+ * PROCESSING_INSTRUCTION target data
+ * </pre>
+ */
+final class BinaryEvents {
+
+    static final byte[] MAGIC = { 'B', 'S', 'E', 'V' };
+    static final int VERSION = 1;
+
+    static final int START_DOCUMENT = 1;
+    static final int END_DOCUMENT = 2;
+    static final int START_ELEMENT = 3;
+    static final int END_ELEMENT = 4;
+    static final int TEXT = 5;
+    static final int LONG = 6;
+    static final int DECIMAL = 7;
+    static final int PROCESSING_INSTRUCTION = 8;
+
+    /** the chars of decimal text after the digits, in nibble order */
+    static final String DECIMAL_SYMBOLS = ".-E+";
+
+    /** the reference that introduces a new table entry */
+    static final int NEW_ENTRY = 0;
+
+    private BinaryEvents() {
+    }
+}
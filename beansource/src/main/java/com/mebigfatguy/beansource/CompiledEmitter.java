@@ -0,0 +1,447 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xml.sax.SAXException;
+
+import com.mebigfatguy.beansource.annotations.BeanSourceProperty;
+
+/**
+ * a bean emitter generated once per class from the bean plan. The emitting code is a hidden class with one straight run of calls per property,
+ * each reading the property through an exactly typed method handle held in a static final field, so the jit sees every getter and emitter call
+ * as a constant and can inline them, with no reflection, boxing or per property dispatch. Classes with getters that can only be read reflectively
+ * are not compiled, and are left to the interpretive reader.
+ */
+final class CompiledEmitter implements BeanEmitter {
+
+    private static final Map<BeanSource.Introspection, ClassValue<CompiledEmitter>> EMITTERS = new EnumMap<>(BeanSource.Introspection.class);
+
+    static {
+        for (final BeanSource.Introspection introspection : BeanSource.Introspection.values()) {
+            EMITTERS.put(introspection, new ClassValue<CompiledEmitter>() {
+                @Override
+                protected CompiledEmitter computeValue(Class<?> type) {
+                    return new CompiledEmitter(type, introspection);
+                }
+            });
+        }
+    }
+
+    private final Class<?> beanClass;
+    private final Body body;
+
+    private CompiledEmitter(Class<?> c, BeanSource.Introspection introspection) {
+        beanClass = c;
+        body = generate(BeanPlan.forClass(c, introspection));
+    }
+
+    /**
+     * returns the compiled emitter for a bean class, or null if the class must be handled by the interpretive reader
+     */
+    static CompiledEmitter forClass(Class<?> c) {
+        return forClass(c, BeanSource.Introspection.GETTERS);
+    }
+
+    static CompiledEmitter forClass(Class<?> c, BeanSource.Introspection introspection) {
+        CompiledEmitter emitter = EMITTERS.get(introspection).get(c);
+        return (emitter.body == null) ? null : emitter;
+    }
+
+    @Override
+    public Class<?> getBeanClass() {
+        return beanClass;
+    }
+
+    @Override
+    public void emit(Object bean, String name, EmitterContext context) throws SAXException {
+        context.startBean(name);
+        try {
+            body.emit(bean, context);
+        } catch (SAXException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new SAXException(PropertyAccessor.asException(t));
+        }
+        context.endBean(name);
+    }
+
+    /**
+     * the text of a string property, as the generated code writes it
+     */
+    static String text(String value) {
+        return (value == null) ? "" : value;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledEmitter[" + beanClass.getName() + "]";
+    }
+
+    /**
+     * generates and loads the emitting code for a bean plan, returning null if the plan can't be compiled
+     */
+    private static Body generate(BeanPlan plan) {
+        if (plan.getKind() != BeanPlan.Kind.BEAN) {
+            return null;
+        }
+
+        BeanPlan.PropertyPlan[] properties = plan.getProperties();
+        List<MethodHandle> handles = new ArrayList<>(properties.length);
+        BodyWriter writer = new BodyWriter();
+        for (BeanPlan.PropertyPlan property : properties) {
+            PropertyAccessor accessor = property.getAccessor();
+            if (!(accessor instanceof PropertyAccessor.MethodHandleAccessor)) {
+                return null;
+            }
+
+            MethodHandle handle = ((PropertyAccessor.MethodHandleAccessor) accessor).getHandle();
+            Class<?> valueType = valueType(property, handle);
+            handles.add(handle.asType(MethodType.methodType(valueType, Object.class)));
+            writer.addProperty(property.getName(), valueType, property.getMode() == BeanSourceProperty.Type.SIMPLE);
+        }
+
+        try {
+            byte[] classFile = writer.toByteArray();
+            if (classFile == null) {
+                return null;
+            }
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClassWithClassData(classFile, handles, true);
+            return (Body) lookup.lookupClass().getDeclaredConstructor().newInstance();
+        } catch (IOException | ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * the type a property is read as, its primitive type for primitive properties, String for strings written as is, and otherwise Object
+     */
+    private static Class<?> valueType(BeanPlan.PropertyPlan property, MethodHandle handle) {
+        if (property.getMode() == BeanSourceProperty.Type.SIMPLE) {
+            return Object.class;
+        }
+
+        switch (property.getKind()) {
+            case BOOLEAN:
+                return boolean.class;
+            case BYTE:
+                return byte.class;
+            case CHAR:
+                return char.class;
+            case SHORT:
+                return short.class;
+            case INT:
+                return int.class;
+            case LONG:
+                return long.class;
+            case FLOAT:
+                return float.class;
+            case DOUBLE:
+                return double.class;
+            default:
+                return (handle.type().returnType() == String.class) ? String.class : Object.class;
+        }
+    }
+
+    /**
+     * the interface the generated code implements
+     */
+    interface Body {
+        void emit(Object bean, EmitterContext context) throws Throwable;
+    }
+
+    /**
+     * writes the class file of a hidden class implementing {@link Body}. Its static initializer loads the property handles from the class data into
+     * static final fields, and its emit method is a straight run, with no branches, of one read and one context call per property, so the class
+     * needs no stack map frames.
+     */
+    private static final class BodyWriter {
+
+        private static final int CLASS_FILE_VERSION = 61;
+        private static final int MAX_CODE_LENGTH = 65535;
+        private static final int MAX_POOL_COUNT = 65535;
+
+        private static final int ACC_PUBLIC = 0x0001;
+        private static final int ACC_PRIVATE = 0x0002;
+        private static final int ACC_STATIC = 0x0008;
+        private static final int ACC_FINAL = 0x0010;
+        private static final int ACC_SUPER = 0x0020;
+
+        private static final int ALOAD_0 = 0x2A;
+        private static final int ALOAD_1 = 0x2B;
+        private static final int ALOAD_2 = 0x2C;
+        private static final int SIPUSH = 0x11;
+        private static final int LDC_W = 0x13;
+        private static final int RETURN = 0xB1;
+        private static final int GETSTATIC = 0xB2;
+        private static final int PUTSTATIC = 0xB3;
+        private static final int INVOKEVIRTUAL = 0xB6;
+        private static final int INVOKESPECIAL = 0xB7;
+        private static final int INVOKESTATIC = 0xB8;
+        private static final int INVOKEINTERFACE = 0xB9;
+        private static final int CHECKCAST = 0xC0;
+
+        private static final String CLASS_NAME = "com/mebigfatguy/beansource/CompiledEmitter$Generated";
+        private static final String OBJECT = "java/lang/Object";
+        private static final String STRING = "java/lang/String";
+        private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
+        private static final String METHOD_HANDLES = "java/lang/invoke/MethodHandles";
+        private static final String CONTEXT = "com/mebigfatguy/beansource/EmitterContext";
+        private static final String HANDLE_DESCRIPTOR = "L" + METHOD_HANDLE + ";";
+
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<String, Integer> poolIndexes = new HashMap<>();
+        private int poolCount = 1;
+
+        private final ByteArrayOutputStream initBytes = new ByteArrayOutputStream();
+        private final DataOutputStream init = new DataOutputStream(initBytes);
+        private final ByteArrayOutputStream emitBytes = new ByteArrayOutputStream();
+        private final DataOutputStream emit = new DataOutputStream(emitBytes);
+        private final List<Integer> fieldNames = new ArrayList<>();
+        private IOException failure;
+
+        /**
+         * adds the code to read one property, through the handle of the same index in the class data, and pass it to the context
+         *
+         * @param simple whether the value is written as its string value, whatever its type
+         */
+        void addProperty(String name, Class<?> valueType, boolean simple) {
+            try {
+                int index = fieldNames.size();
+                int fieldName = utf8("h" + index);
+                fieldNames.add(Integer.valueOf(fieldName));
+                int field = member(9, CLASS_NAME, "h" + index, HANDLE_DESCRIPTOR);
+
+                init.writeByte(INVOKESTATIC);
+                init.writeShort(member(10, METHOD_HANDLES, "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;"));
+                init.writeByte(LDC_W);
+                init.writeShort(string("_"));
+                init.writeByte(LDC_W);
+                init.writeShort(classRef(METHOD_HANDLE));
+                init.writeByte(SIPUSH);
+                init.writeShort(index);
+                init.writeByte(INVOKESTATIC);
+                init.writeShort(member(10, METHOD_HANDLES, "classDataAt",
+                        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;I)Ljava/lang/Object;"));
+                init.writeByte(CHECKCAST);
+                init.writeShort(classRef(METHOD_HANDLE));
+                init.writeByte(PUTSTATIC);
+                init.writeShort(field);
+
+                String valueDescriptor = descriptor(valueType);
+                emit.writeByte(ALOAD_2);
+                emit.writeByte(LDC_W);
+                emit.writeShort(string(name));
+                emit.writeByte(GETSTATIC);
+                emit.writeShort(field);
+                emit.writeByte(ALOAD_1);
+                emit.writeByte(INVOKEVIRTUAL);
+                emit.writeShort(member(10, METHOD_HANDLE, "invokeExact", "(Ljava/lang/Object;)" + valueDescriptor));
+
+                String method = "emitProperty";
+                if (simple) {
+                    emit.writeByte(INVOKESTATIC);
+                    emit.writeShort(member(10, STRING, "valueOf", "(Ljava/lang/Object;)Ljava/lang/String;"));
+                    valueDescriptor = "Ljava/lang/String;";
+                } else if (valueType == String.class) {
+                    emit.writeByte(INVOKESTATIC);
+                    emit.writeShort(member(10, "com/mebigfatguy/beansource/CompiledEmitter", "text", "(Ljava/lang/String;)Ljava/lang/String;"));
+                } else if (valueType == Object.class) {
+                    method = "emitObject";
+                }
+                emit.writeByte(INVOKEINTERFACE);
+                emit.writeShort(member(11, CONTEXT, method, "(Ljava/lang/String;" + valueDescriptor + ")V"));
+                emit.writeByte(((valueType == long.class) || (valueType == double.class)) ? 4 : 3);
+                emit.writeByte(0);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        /**
+         * returns the class file, or null if the methods or constant pool are too large for one class
+         */
+        byte[] toByteArray() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+
+            int thisClass = classRef(CLASS_NAME);
+            int superClass = classRef(OBJECT);
+            int bodyInterface = classRef("com/mebigfatguy/beansource/CompiledEmitter$Body");
+            int handleDescriptor = utf8(HANDLE_DESCRIPTOR);
+            int code = utf8("Code");
+            int constructorName = utf8("<init>");
+            int initializerName = utf8("<clinit>");
+            int emitName = utf8("emit");
+            int noArgs = utf8("()V");
+            int emitDescriptor = utf8("(Ljava/lang/Object;L" + CONTEXT + ";)V");
+            int objectConstructor = member(10, OBJECT, "<init>", "()V");
+
+            init.writeByte(RETURN);
+            emit.writeByte(RETURN);
+            if ((initBytes.size() > MAX_CODE_LENGTH) || (emitBytes.size() > MAX_CODE_LENGTH) || (poolCount > MAX_POOL_COUNT)) {
+                return null;
+            }
+
+            ByteArrayOutputStream classBytes = new ByteArrayOutputStream(poolBytes.size() + initBytes.size() + emitBytes.size() + 256);
+            DataOutputStream out = new DataOutputStream(classBytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_FILE_VERSION);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(bodyInterface);
+
+            out.writeShort(fieldNames.size());
+            for (Integer fieldName : fieldNames) {
+                out.writeShort(ACC_PRIVATE | ACC_STATIC | ACC_FINAL);
+                out.writeShort(fieldName.intValue());
+                out.writeShort(handleDescriptor);
+                out.writeShort(0);
+            }
+
+            out.writeShort(3);
+            byte[] constructor = { ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectConstructor >> 8), (byte) objectConstructor, (byte) RETURN };
+            writeMethod(out, ACC_PUBLIC, constructorName, noArgs, code, 1, 1, constructor);
+            writeMethod(out, ACC_STATIC, initializerName, noArgs, code, 4, 0, initBytes.toByteArray());
+            writeMethod(out, ACC_PUBLIC, emitName, emitDescriptor, code, 4, 3, emitBytes.toByteArray());
+
+            out.writeShort(0);
+            return classBytes.toByteArray();
+        }
+
+        private static void writeMethod(DataOutputStream out, int access, int name, int descriptor, int code, int maxStack, int maxLocals,
+                byte[] instructions) throws IOException {
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(code);
+            out.writeInt(12 + instructions.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(instructions.length);
+            out.write(instructions);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+        private static String descriptor(Class<?> type) {
+            if (type == boolean.class) {
+                return "Z";
+            } else if (type == byte.class) {
+                return "B";
+            } else if (type == char.class) {
+                return "C";
+            } else if (type == short.class) {
+                return "S";
+            } else if (type == int.class) {
+                return "I";
+            } else if (type == long.class) {
+                return "J";
+            } else if (type == float.class) {
+                return "F";
+            } else if (type == double.class) {
+                return "D";
+            }
+            return "L" + type.getName().replace('.', '/') + ";";
+        }
+
+        private int utf8(String value) throws IOException {
+            String key = "1:" + value;
+            Integer index = poolIndexes.get(key);
+            if (index == null) {
+                pool.writeByte(1);
+                pool.writeUTF(value);
+                index = add(key);
+            }
+            return index.intValue();
+        }
+
+        private int classRef(String internalName) throws IOException {
+            return reference(7, internalName, utf8(internalName));
+        }
+
+        private int string(String value) throws IOException {
+            return reference(8, value, utf8(value));
+        }
+
+        private int reference(int tag, String value, int utf8) throws IOException {
+            String key = tag + ":" + value;
+            Integer index = poolIndexes.get(key);
+            if (index == null) {
+                pool.writeByte(tag);
+                pool.writeShort(utf8);
+                index = add(key);
+            }
+            return index.intValue();
+        }
+
+        /**
+         * a field (9), method (10) or interface method (11) reference
+         */
+        private int member(int tag, String owner, String name, String descriptor) throws IOException {
+            String key = tag + ":" + owner + "." + name + descriptor;
+            Integer index = poolIndexes.get(key);
+            if (index == null) {
+                int ownerIndex = classRef(owner);
+                int nameIndex = utf8(name);
+                int descriptorIndex = utf8(descriptor);
+                String natKey = "12:" + name + descriptor;
+                Integer nameAndType = poolIndexes.get(natKey);
+                if (nameAndType == null) {
+                    pool.writeByte(12);
+                    pool.writeShort(nameIndex);
+                    pool.writeShort(descriptorIndex);
+                    nameAndType = add(natKey);
+                }
+                pool.writeByte(tag);
+                pool.writeShort(ownerIndex);
+                pool.writeShort(nameAndType.intValue());
+                index = add(key);
+            }
+            return index.intValue();
+        }
+
+        private Integer add(String key) {
+            Integer index = Integer.valueOf(poolCount++);
+            poolIndexes.put(key, index);
+            return index;
+        }
+
+        @Override
+        public String toString() {
+            return "BodyWriter[properties: " + fieldNames.size() + "]";
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * a content handler that digests the events of a document rather than writing them, for a fingerprint of the document, such as an http ETag,
+ * without producing any xml. Element names, attributes and text are fed to the digest after markers and their lengths, so that different
+ * documents can't be made to feed it the same bytes, and text is digested the same however it is split between characters events. The digest
+ * of a bean source is only stable from run to run when the source is canonical.
+ */
+public final class DigestHandler implements ContentHandler {
+
+    public static final String DEFAULT_ALGORITHM = "SHA-256";
+
+    private static final byte START_ELEMENT = 1;
+    private static final byte END_ELEMENT = 2;
+    private static final byte TEXT = 3;
+    private static final byte PROCESSING_INSTRUCTION = 4;
+
+    private final MessageDigest digest;
+    private final byte[] buffer = new byte[XMLByteWriter.BUFFER_SIZE];
+    private int pos;
+    private final StringBuilder text = new StringBuilder();
+    private byte[] result;
+
+    public DigestHandler() {
+        this(DEFAULT_ALGORITHM);
+    }
+
+    public DigestHandler(String algorithm) {
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unknown digest algorithm " + algorithm, e);
+        }
+    }
+
+    /**
+     * returns the digest of the last document handled
+     */
+    public byte[] getDigest() {
+        if (result == null) {
+            throw new IllegalStateException("No document has ended");
+        }
+        return result.clone();
+    }
+
+    /**
+     * returns the digest of the last document handled as a strong http entity tag, quoted base64url without padding
+     */
+    public String getETag() {
+        return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(getDigest()) + '"';
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+    }
+
+    @Override
+    public void startDocument() {
+        digest.reset();
+        pos = 0;
+        text.setLength(0);
+        result = null;
+    }
+
+    @Override
+    public void endDocument() {
+        endText();
+        flush();
+        result = digest.digest();
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) {
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) {
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) {
+        endText();
+        put(START_ELEMENT);
+        putString(qName);
+        int count = atts.getLength();
+        putLength(count);
+        for (int i = 0; i < count; i++) {
+            putString(atts.getQName(i));
+            putString(atts.getValue(i));
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        endText();
+        put(END_ELEMENT);
+    }
+
+    /**
+     * collects the text until it ends, so that it can be digested after its length, and however the text is split the same bytes are digested
+     */
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        text.append(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) {
+        endText();
+        put(PROCESSING_INSTRUCTION);
+        putString(target);
+        putString((data == null) ? "" : data);
+    }
+
+    @Override
+    public void skippedEntity(String name) {
+    }
+
+    private void endText() {
+        if (text.length() > 0) {
+            put(TEXT);
+            putString(text);
+            text.setLength(0);
+        }
+    }
+
+    private void putString(CharSequence s) {
+        putLength(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            putChar(s.charAt(i));
+        }
+    }
+
+    private void putLength(long length) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            put((byte) (length >>> shift));
+        }
+    }
+
+    private void putChar(char c) {
+        put((byte) (c >>> 8));
+        put((byte) c);
+    }
+
+    private void put(byte b) {
+        if (pos == buffer.length) {
+            flush();
+        }
+        buffer[pos++] = b;
+    }
+
+    private void flush() {
+        digest.update(buffer, 0, pos);
+        pos = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "DigestHandler[algorithm: " + digest.getAlgorithm() + "]";
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import org.xml.sax.SAXException;
+
+/**
+ * the reader side of a {@link BeanEmitter}, which turns emitter calls into sax events
+ */
+public interface EmitterContext {
+
+    void startBean(String name) throws SAXException;
+
+    void endBean(String name) throws SAXException;
+
+    void emitProperty(String name, String value) throws SAXException;
+
+    void emitProperty(String name, boolean value) throws SAXException;
+
+    void emitProperty(String name, byte value) throws SAXException;
+
+    void emitProperty(String name, char value) throws SAXException;
+
+    void emitProperty(String name, short value) throws SAXException;
+
+    void emitProperty(String name, int value) throws SAXException;
+
+    void emitProperty(String name, long value) throws SAXException;
+
+    void emitProperty(String name, float value) throws SAXException;
+
+    void emitProperty(String name, double value) throws SAXException;
+
+    /**
+     * emits a value of any type, following the same rules as the reflective reader, including null, enum, date, array, collection, map and nested
+     * bean values
+     */
+    void emitObject(String name, Object value) throws SAXException;
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+/**
+ * receives measurements of a bean source as it is written. Listeners are called on the threads that write the document, which, when items are
+ * written in parallel, are several at once, so they must be thread safe. While a listener is set, registered and compiled emitters are bypassed,
+ * so every getter is called by the reader, and timed.
+ */
+public interface MetricsListener {
+
+    /**
+     * called for each bean written, before its properties
+     */
+    void beanVisited(Class<?> beanClass);
+
+    /**
+     * called after each getter returns, with how long it took
+     */
+    void getterInvoked(Class<?> beanClass, String property, long nanos);
+
+    /**
+     * called once the document has been written, with the number of elements and characters in it and how long it took to write
+     */
+    void documentWritten(String name, long elements, long characters, long nanos);
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * a flight recorder event covering the writing of one document
+ */
+@Name("com.mebigfatguy.beansource.Parse")
+@Label("Bean Source Parse")
+@Category("Bean Source")
+@Description("The writing of a bean graph as a document")
+@StackTrace(false)
+final class ParseEvent extends jdk.jfr.Event {
+
+    @Label("Root Name")
+    String rootName;
+
+    @Label("Bean Class")
+    Class<?> beanClass;
+
+    @Label("Engine")
+    String engine;
+
+    @Label("Elements")
+    long elements;
+
+    @Label("Characters")
+    long characters;
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+
+/**
+ * how slow getters are read ahead of the document. When the reader reaches a bean, it starts all of the bean's prefetched getters at once on the
+ * executor, and optionally those of the next few beans of an array or collection as well, so that a document waits for its slowest getters rather
+ * than the sum of them. Values are still written in document order. A getter is prefetched if it is annotated with
+ * BeanSourceProperty(prefetch = true), or if the predicate accepts its bean class and property name. Each prefetched getter times out on its own,
+ * and a getter that fails or times out fails the document when its value is reached, as it would have done if read in place. Prefetch options are
+ * immutable, and can be shared between sources and threads.
+ */
+public final class Prefetch {
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+    private final Executor executor;
+    private final long timeoutNanos;
+    private final int lookahead;
+    private final BiPredicate<Class<?>, String> predicate;
+
+    /**
+     * prefetches the annotated getters of each bean on the executor, with the default timeout and no lookahead
+     */
+    public Prefetch(Executor executor) {
+        this(executor, DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS, 0, null);
+    }
+
+    /**
+     * @param executor the executor the getters are run on, which should allow for blocking, such as a cached or virtual thread pool
+     * @param timeout how long each getter may take, from when it is started
+     * @param lookahead how many of the beans after the current one in an array or collection are prefetched as well
+     * @param predicate selects getters to prefetch besides the annotated ones, by bean class and property name, or null for only the annotated ones
+     */
+    public Prefetch(Executor executor, long timeout, TimeUnit unit, int lookahead, BiPredicate<Class<?>, String> predicate) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Prefetching needs an executor");
+        }
+        if ((timeout <= 0) || (lookahead < 0)) {
+            throw new IllegalArgumentException("The timeout must be positive and the lookahead not negative, not " + timeout + " and " + lookahead);
+        }
+
+        this.executor = executor;
+        timeoutNanos = unit.toNanos(timeout);
+        this.lookahead = lookahead;
+        this.predicate = predicate;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public long getTimeout(TimeUnit unit) {
+        return unit.convert(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    public BiPredicate<Class<?>, String> getPredicate() {
+        return predicate;
+    }
+
+    boolean isPrefetched(Class<?> beanClass, BeanPlan.PropertyPlan property) {
+        return property.isPrefetch() || ((predicate != null) && predicate.test(beanClass, property.getName()));
+    }
+
+    @Override
+    public String toString() {
+        return "Prefetch[executor: " + executor + ", timeout: " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms, lookahead: " + lookahead + "]";
+    }
+}
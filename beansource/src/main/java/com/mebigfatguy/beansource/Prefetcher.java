@@ -0,0 +1,229 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.xml.sax.SAXException;
+
+/**
+ * the getters a reader has started ahead of time, by bean, for one walk of the graph. Values are taken as the reader reaches each property, and
+ * whatever a bean's walk didn't take, such as properties a projection left out, is cancelled when the bean ends.
+ */
+final class Prefetcher {
+
+    /** returned by take for properties that weren't prefetched, as null is a value */
+    static final Object NOT_PREFETCHED = new Object();
+
+    private static final int[] NONE = new int[0];
+
+    private final Prefetch options;
+    private final BeanSource.Introspection introspection;
+    private final MetricsListener metrics;
+    private final Map<Object, Pending> pending = new IdentityHashMap<>();
+    private final Map<BeanPlan, int[]> prefetchedProperties = new IdentityHashMap<>();
+
+    Prefetcher(Prefetch options, BeanSource.Introspection introspection, MetricsListener metrics) {
+        this.options = options;
+        this.introspection = introspection;
+        this.metrics = metrics;
+    }
+
+    /**
+     * starts the prefetched getters of a bean, unless they were already started by a lookahead
+     */
+    void start(Object bean, BeanPlan plan) {
+        if (pending.containsKey(bean)) {
+            return;
+        }
+
+        int[] indexes = prefetchedProperties(bean.getClass(), plan);
+        if (indexes.length == 0) {
+            return;
+        }
+
+        BeanPlan.PropertyPlan[] properties = plan.getProperties();
+        Pending p = new Pending(indexes.length);
+        for (int i = 0; i < indexes.length; i++) {
+            BeanPlan.PropertyPlan property = properties[indexes[i]];
+            p.properties[i] = property;
+            p.values[i] = CompletableFuture.supplyAsync(() -> read(bean, property), options.getExecutor()).orTimeout(options.getTimeout(TimeUnit.NANOSECONDS),
+                    TimeUnit.NANOSECONDS);
+        }
+        pending.put(bean, p);
+    }
+
+    /**
+     * waits for the prefetched value of a property, returning NOT_PREFETCHED if it wasn't started. A getter that failed fails here as it would
+     * have if read in place, and one that timed out fails with the bean class and property named.
+     */
+    Object take(Object bean, BeanPlan.PropertyPlan property) throws SAXException {
+        Pending p = pending.get(bean);
+        if (p == null) {
+            return NOT_PREFETCHED;
+        }
+
+        CompletableFuture<Object> value = p.remove(property);
+        if (value == null) {
+            return NOT_PREFETCHED;
+        }
+
+        try {
+            return value.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = (e instanceof CompletionException) ? e.getCause() : e;
+            if (cause instanceof TimeoutException) {
+                throw new SAXException("Prefetch of " + bean.getClass().getName() + '#' + property.getName() + " timed out after "
+                        + options.getTimeout(TimeUnit.MILLISECONDS) + " ms", (Exception) cause);
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SAXException((Exception) cause);
+        }
+    }
+
+    /**
+     * cancels whatever of a bean's prefetched getters weren't taken, once the bean has been written
+     */
+    void finish(Object bean) {
+        Pending p = pending.remove(bean);
+        if (p != null) {
+            p.cancel();
+        }
+    }
+
+    void cancelAll() {
+        for (Pending p : pending.values()) {
+            p.cancel();
+        }
+        pending.clear();
+    }
+
+    /**
+     * starts the first bean of an array or collection, and the lookahead's worth after it, returning an iterator that runs ahead of the items
+     * being written, or null if there's no lookahead
+     */
+    Iterator<?> lookahead(Object[] items) {
+        return (options.getLookahead() == 0) ? null : lookahead(Arrays.asList(items));
+    }
+
+    Iterator<?> lookahead(Collection<?> items) {
+        if (options.getLookahead() == 0) {
+            return null;
+        }
+
+        Iterator<?> ahead = items.iterator();
+        for (int i = 0; i <= options.getLookahead(); i++) {
+            advance(ahead);
+        }
+        return ahead;
+    }
+
+    /**
+     * starts the next bean of an array or collection, as one more item has been written
+     */
+    void advance(Iterator<?> ahead) {
+        if (!ahead.hasNext()) {
+            return;
+        }
+
+        Object item = ahead.next();
+        if (item != null) {
+            BeanPlan plan = BeanPlan.forClass(item.getClass(), introspection);
+            if (plan.getKind() == BeanPlan.Kind.BEAN) {
+                start(item, plan);
+            }
+        }
+    }
+
+    private int[] prefetchedProperties(Class<?> beanClass, BeanPlan plan) {
+        int[] indexes = prefetchedProperties.get(plan);
+        if (indexes == null) {
+            BeanPlan.PropertyPlan[] properties = plan.getProperties();
+            indexes = new int[properties.length];
+            int count = 0;
+            for (int i = 0; i < properties.length; i++) {
+                if (options.isPrefetched(beanClass, properties[i])) {
+                    indexes[count++] = i;
+                }
+            }
+            indexes = (count == 0) ? NONE : Arrays.copyOf(indexes, count);
+            prefetchedProperties.put(plan, indexes);
+        }
+        return indexes;
+    }
+
+    private Object read(Object bean, BeanPlan.PropertyPlan property) {
+        long start = (metrics != null) ? System.nanoTime() : 0;
+        try {
+            return property.getAccessor().get(bean);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            if (metrics != null) {
+                metrics.getterInvoked(bean.getClass(), property.getName(), System.nanoTime() - start);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Prefetcher[options: " + options + ", pending: " + pending.size() + "]";
+    }
+
+    /**
+     * the getters started for one bean, and their values to come
+     */
+    private static final class Pending {
+        final BeanPlan.PropertyPlan[] properties;
+        final CompletableFuture<Object>[] values;
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Pending(int count) {
+            properties = new BeanPlan.PropertyPlan[count];
+            values = new CompletableFuture[count];
+        }
+
+        CompletableFuture<Object> remove(BeanPlan.PropertyPlan property) {
+            for (int i = 0; i < properties.length; i++) {
+                if (properties[i] == property) {
+                    CompletableFuture<Object> value = values[i];
+                    values[i] = null;
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        void cancel() {
+            for (CompletableFuture<Object> value : values) {
+                if (value != null) {
+                    value.cancel(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+
+import com.mebigfatguy.beansource.annotations.BeanSourceProperty;
+
+/**
+ * limits which parts of a bean graph are written, by element path, so that getters for pruned parts are never called. Paths are element names
+ * separated by slashes, starting with the root element, such as order/lines/item/sku, where * matches any one element and ** any number of them.
+ * When there are include paths, only the elements on the way to, or inside of, an included element are written. Elements matching an exclude path
+ * are never written, along with everything inside them. A bean is only walked for an include deeper down if the getter's declared type has
+ * properties that can lead to it, so properties that only subclasses add aren't looked for. Projections are immutable, and can be shared between
+ * sources and threads.
+ */
+public final class Projection {
+
+    private static final String ANY = "*";
+    private static final String ANY_DEPTH = "**";
+
+    private final Node root;
+    private final ConcurrentMap<String, State> states = new ConcurrentHashMap<>();
+    private int nodeCount;
+    private final boolean hasIncludes;
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final State start;
+
+    /**
+     * @param subtrees whether the elements inside an included element are written too, or only those that are included themselves
+     * @param subtreePaths the include paths whose subtrees are written even when subtrees is false
+     */
+    private Projection(Collection<String> includePaths, Collection<String> excludePaths, boolean subtrees, Set<String> subtreePaths) {
+        includes = Collections.unmodifiableList(new ArrayList<>(includePaths));
+        excludes = Collections.unmodifiableList(new ArrayList<>(excludePaths));
+        root = newNode(false);
+        for (String path : includes) {
+            Node n = add(path);
+            n.include = true;
+            n.subtree |= subtrees || subtreePaths.contains(path);
+        }
+        for (String path : excludes) {
+            add(path).exclude = true;
+        }
+        hasIncludes = !includes.isEmpty();
+        root.markIncludes();
+        start = state(closure(Collections.singleton(root)), !hasIncludes);
+    }
+
+    public static Projection of(Collection<String> includePaths, Collection<String> excludePaths) {
+        return new Projection(includePaths, excludePaths, true, Collections.<String> emptySet());
+    }
+
+    public static Projection include(String... paths) {
+        return new Projection(Arrays.asList(paths), Collections.<String> emptyList(), true, Collections.<String> emptySet());
+    }
+
+    public static Projection exclude(String... paths) {
+        return new Projection(Collections.<String> emptyList(), Arrays.asList(paths), true, Collections.<String> emptySet());
+    }
+
+    /**
+     * derives a projection from the element names a stylesheet uses in its match patterns, selects, tests and attribute value templates, including
+     * every element with one of those names, wherever it is, and the elements on the way to them. The unnamed elements inside them are left out,
+     * except inside the elements whose string values can be read, by value-of, copy-of, a comparison or function, or the built-in templates, which
+     * are written whole. This assumes the stylesheet only reads the elements it names, so it returns null, for no projection, if the stylesheet uses
+     * wildcards or node() tests, reads the value of . or .., applies templates without a select, has no template for the root, or includes or imports
+     * other stylesheets.
+     */
+    public static Projection fromStylesheet(Source styleSheet) throws TransformerException {
+        Set<String> subtrees = new HashSet<>();
+        Set<String> names = StylesheetNames.collect(styleSheet, subtrees);
+        if (names == null) {
+            return null;
+        }
+
+        List<String> paths = new ArrayList<>(names.size());
+        Set<String> subtreePaths = new HashSet<>();
+        for (String name : names) {
+            String path = ANY_DEPTH + "/" + name;
+            paths.add(path);
+            if (subtrees.contains(name)) {
+                subtreePaths.add(path);
+            }
+        }
+        return new Projection(paths, Collections.<String> emptyList(), false, subtreePaths);
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * the state of the root element of a document
+     */
+    State root(String rootName) {
+        return start.child(rootName);
+    }
+
+    private Node add(String path) {
+        Node n = root;
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+
+            if (ANY_DEPTH.equals(segment)) {
+                if (n.anyDepth == null) {
+                    n.anyDepth = newNode(true);
+                }
+                n = n.anyDepth;
+            } else if (ANY.equals(segment)) {
+                if (n.any == null) {
+                    n.any = newNode(false);
+                }
+                n = n.any;
+            } else {
+                Node child = n.children.get(segment);
+                if (child == null) {
+                    child = newNode(false);
+                    n.children.put(segment, child);
+                }
+                n = child;
+            }
+        }
+        return n;
+    }
+
+    private Node newNode(boolean anyDepthNode) {
+        return new Node(nodeCount++, anyDepthNode);
+    }
+
+    /**
+     * returns the one state for a set of nodes, so that paths that end up in the same place, such as the levels of a recursive type under **, share
+     * their state
+     */
+    private State state(Node[] nodes, boolean inheritedInclude) {
+        int[] ids = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            ids[i] = nodes[i].id;
+        }
+        Arrays.sort(ids);
+        String key = Arrays.toString(ids) + inheritedInclude;
+
+        State state = states.get(key);
+        if (state == null) {
+            state = new State(nodes, inheritedInclude);
+            State existing = states.putIfAbsent(key, state);
+            if (existing != null) {
+                state = existing;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * whether a value of the given type, in the given state, can hold an included element. Beans are looked through by their properties' declared
+     * types, other containers could hold anything.
+     */
+    private static boolean reaches(State state, Class<?> type, BeanSource.Introspection introspection, Set<List<Object>> visiting) {
+        BeanPlan plan = BeanPlan.forClass(type, introspection);
+        switch (plan.getKind()) {
+            case ARRAY:
+            case COLLECTION:
+            case SEQUENCE:
+            case MAP:
+            case TEMPORAL:
+                return true;
+
+            case BEAN:
+                if (type.isInterface() || Modifier.isAbstract(type.getModifiers()) || (type == Object.class)) {
+                    return true;
+                }
+            break;
+
+            default:
+                return false;
+        }
+
+        if (!visiting.add(Arrays.<Object> asList(state, type))) {
+            return false;
+        }
+
+        for (BeanPlan.PropertyPlan property : plan.getProperties()) {
+            State child = state.child(property.getName());
+            if (child.excluded) {
+                continue;
+            }
+            if (child.included) {
+                return true;
+            }
+            if ((property.getMode() != BeanSourceProperty.Type.SIMPLE) && child.leadsToInclude
+                    && reaches(child, property.getType(), introspection, visiting)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * adds the ** nodes that can match nothing, as they leave the path where it was
+     */
+    private static Node[] closure(Collection<Node> nodes) {
+        Set<Node> closed = new LinkedHashSet<>();
+        List<Node> pending = new ArrayList<>(nodes);
+        while (!pending.isEmpty()) {
+            Node n = pending.remove(pending.size() - 1);
+            if (closed.add(n) && (n.anyDepth != null)) {
+                pending.add(n.anyDepth);
+            }
+        }
+        return closed.toArray(new Node[closed.size()]);
+    }
+
+    @Override
+    public String toString() {
+        return "Projection[includes: " + includes + ", excludes: " + excludes + "]";
+    }
+
+    /**
+     * one segment of the compiled paths
+     */
+    private static final class Node {
+        final int id;
+        final boolean anyDepthNode;
+        final Map<String, Node> children = new HashMap<>();
+        Node any;
+        Node anyDepth;
+        boolean include;
+        boolean subtree;
+        boolean exclude;
+        boolean leadsToInclude;
+
+        Node(int id, boolean anyDepthNode) {
+            this.id = id;
+            this.anyDepthNode = anyDepthNode;
+        }
+
+        boolean markIncludes() {
+            leadsToInclude = include;
+            for (Node child : children.values()) {
+                leadsToInclude |= child.markIncludes();
+            }
+            if (any != null) {
+                leadsToInclude |= any.markIncludes();
+            }
+            if (anyDepth != null) {
+                leadsToInclude |= anyDepth.markIncludes();
+            }
+            return leadsToInclude;
+        }
+    }
+
+    /**
+     * where an element is in the compiled paths, and so whether it is written. States are built as elements are reached, and cached, so each
+     * distinct path is only worked out once.
+     */
+    final class State {
+        private final Node[] nodes;
+        private final boolean included;
+        private final boolean wholeSubtree;
+        private final boolean excluded;
+        private final boolean leadsToInclude;
+        private final ConcurrentMap<String, State> children = new ConcurrentHashMap<>();
+        /**
+         * whether a type can reach an include, by introspection ordinal. The results are only ever the Boolean constants, so racing threads at
+         * worst work a result out twice. A ClassValue keeps the projection from holding on to application classes and their loaders.
+         */
+        private final ClassValue<Boolean[]> reachable = new ClassValue<Boolean[]>() {
+            @Override
+            protected Boolean[] computeValue(Class<?> type) {
+                return new Boolean[BeanSource.Introspection.values().length];
+            }
+        };
+
+        State(Node[] nodes, boolean inheritedInclude) {
+            this.nodes = nodes;
+            boolean inc = inheritedInclude;
+            boolean whole = inheritedInclude;
+            boolean exc = false;
+            boolean leads = false;
+            for (Node n : nodes) {
+                inc |= n.include;
+                whole |= n.include && n.subtree;
+                exc |= n.exclude;
+                leads |= n.leadsToInclude;
+            }
+            included = inc;
+            wholeSubtree = whole;
+            excluded = exc;
+            leadsToInclude = leads;
+        }
+
+        State child(String name) {
+            if (nodes.length == 0) {
+                return this;
+            }
+
+            State child = children.get(name);
+            if (child == null) {
+                List<Node> next = new ArrayList<>();
+                for (Node n : nodes) {
+                    Node named = n.children.get(name);
+                    if (named != null) {
+                        next.add(named);
+                    }
+                    if (n.any != null) {
+                        next.add(n.any);
+                    }
+                    if (n.anyDepthNode) {
+                        next.add(n);
+                    }
+                }
+                child = state(closure(next), wholeSubtree);
+                State existing = children.putIfAbsent(name, child);
+                if (existing != null) {
+                    child = existing;
+                }
+            }
+            return child;
+        }
+
+        /**
+         * whether an element in this state, holding a value of the given type, is written. Values are written when they are included, containers
+         * also when they can hold an included element, as found by the source's introspection. The type is null for null values and simple
+         * properties.
+         */
+        boolean accepts(Class<?> type, BeanSource.Introspection introspection) {
+            if (excluded) {
+                return false;
+            }
+            if (included) {
+                return true;
+            }
+            if (!leadsToInclude || (type == null)) {
+                return false;
+            }
+
+            Boolean[] accepted = reachable.get(type);
+            Boolean accepts = accepted[introspection.ordinal()];
+            if (accepts == null) {
+                accepts = Boolean.valueOf(reaches(this, type, introspection, new HashSet<List<Object>>()));
+                accepted[introspection.ordinal()] = accepts;
+            }
+            return accepts.booleanValue();
+        }
+
+        @Override
+        public String toString() {
+            return "State[nodes: " + nodes.length + ", included: " + included + ", excluded: " + excluded + "]";
+        }
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * reads one property from a bean. Getters and fields are bound to method handles once per class, with primitive properties read through exactly
+ * typed handles so the value is never boxed. Getters that can't be reached through the public lookup fall back to plain reflection.
+ */
+abstract class PropertyAccessor {
+
+    static PropertyAccessor forGetter(Method m) {
+        MethodHandle handle = unreflect(m);
+        if (handle == null) {
+            Method publicMethod = findPublicDeclaration(m.getDeclaringClass(), m);
+            if (publicMethod != null) {
+                handle = unreflect(publicMethod);
+            }
+        }
+
+        return (handle != null) ? new MethodHandleAccessor(handle) : new ReflectionAccessor(m);
+    }
+
+    /**
+     * reads a field through a getter handle, from the public lookup for public fields of public classes, otherwise from a private lookup, which
+     * works for classes whose module opens them to this one, as the class path does. Fields that can't be reached that way are read reflectively.
+     */
+    static PropertyAccessor forField(Field f) {
+        MethodHandle handle = unreflectGetter(f);
+        return (handle != null) ? new MethodHandleAccessor(handle) : new FieldAccessor(f);
+    }
+
+    private static MethodHandle unreflectGetter(Field f) {
+        try {
+            if (Modifier.isPublic(f.getModifiers()) && Modifier.isPublic(f.getDeclaringClass().getModifiers())) {
+                return MethodHandles.publicLookup().unreflectGetter(f);
+            }
+            return MethodHandles.privateLookupIn(f.getDeclaringClass(), MethodHandles.lookup()).unreflectGetter(f);
+        } catch (IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle unreflect(Method m) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().unreflect(m);
+            if (Modifier.isStatic(m.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            return handle;
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * finds the getter as declared by a public super class or interface, for public methods of classes that aren't themselves public
+     */
+    private static Method findPublicDeclaration(Class<?> c, Method m) {
+        if (Modifier.isStatic(m.getModifiers())) {
+            return null;
+        }
+
+        for (Class<?> inf : c.getInterfaces()) {
+            Method publicMethod = findPublicDeclaration(inf, m);
+            if (publicMethod != null) {
+                return publicMethod;
+            }
+        }
+
+        Class<?> sc = c.getSuperclass();
+        if ((sc != null) && (sc != Object.class)) {
+            Method publicMethod = findPublicDeclaration(sc, m);
+            if (publicMethod != null) {
+                return publicMethod;
+            }
+        }
+
+        if (Modifier.isPublic(c.getModifiers()) && (c != m.getDeclaringClass())) {
+            try {
+                Method publicMethod = c.getMethod(m.getName());
+                if (m.getReturnType().isAssignableFrom(publicMethod.getReturnType()) || publicMethod.getReturnType().isAssignableFrom(m.getReturnType())) {
+                    return publicMethod;
+                }
+            } catch (NoSuchMethodException e) {
+                // not declared here
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * returns what a getter threw as the exception to report for it, the same whichever way the getter was called. Exceptions are reported as
+     * they are, and errors, and throwables that are neither, which a getter can only throw by cheating the compiler, are wrapped, so they fail the
+     * document like any other getter failure rather than escaping the parse. Errors of the jvm itself, such as running out of memory, are
+     * rethrown.
+     */
+    static Exception asException(Throwable t) {
+        if (t instanceof VirtualMachineError) {
+            throw (VirtualMachineError) t;
+        }
+        if (t instanceof Exception) {
+            return (Exception) t;
+        }
+        return new UndeclaredThrowableException(t);
+    }
+
+    abstract Object get(Object bean) throws Exception;
+
+    boolean getBoolean(Object bean) throws Exception {
+        return ((Boolean) get(bean)).booleanValue();
+    }
+
+    byte getByte(Object bean) throws Exception {
+        return ((Byte) get(bean)).byteValue();
+    }
+
+    char getChar(Object bean) throws Exception {
+        return ((Character) get(bean)).charValue();
+    }
+
+    short getShort(Object bean) throws Exception {
+        return ((Short) get(bean)).shortValue();
+    }
+
+    int getInt(Object bean) throws Exception {
+        return ((Integer) get(bean)).intValue();
+    }
+
+    long getLong(Object bean) throws Exception {
+        return ((Long) get(bean)).longValue();
+    }
+
+    float getFloat(Object bean) throws Exception {
+        return ((Float) get(bean)).floatValue();
+    }
+
+    double getDouble(Object bean) throws Exception {
+        return ((Double) get(bean)).doubleValue();
+    }
+
+    static final class MethodHandleAccessor extends PropertyAccessor {
+
+        private final MethodHandle handle;
+        private final MethodHandle objectHandle;
+        private final MethodHandle primitiveHandle;
+
+        MethodHandleAccessor(MethodHandle handle) {
+            this.handle = handle;
+            objectHandle = handle.asType(MethodType.methodType(Object.class, Object.class));
+            Class<?> returnType = handle.type().returnType();
+            if (returnType.isPrimitive() && (returnType != void.class)) {
+                primitiveHandle = handle.asType(MethodType.methodType(returnType, Object.class));
+            } else {
+                primitiveHandle = null;
+            }
+        }
+
+        MethodHandle getHandle() {
+            return handle;
+        }
+
+        @Override
+        Object get(Object bean) throws Exception {
+            try {
+                return objectHandle.invokeExact(bean);
+            } catch (Throwable t) {
+                throw asException(t);
+            }
+        }
+
+        @Override
+        boolean getBoolean(Object bean) throws Exception {
+            try {
+                return (boolean) primitiveHandle.invokeExact(bean);
+            } catch (Throwable t) {
+                throw asException(t);
+            }
+        }
+
+        @Override
+        byte getByte(Object bean) throws Exception {
+            try {
+                return (byte) primitiveHandle.invokeExact(bean);
+            } catch (Throwable t) {
+                throw asException(t);
+            }
+        }
+
+        @Override
+        char getChar(Object bean) throws Exception {
+            try {
+                return (char) primitiveHandle.invokeExact(bean);
+            } catch (Throwable t) {
+                throw asException(t);
+            }
+        }
+
+        @Override
+        short getShort(Object bean) throws Exception {
+            try {
+                return (short) primitiveHandle.invokeExact(bean);
+            } catch (Throwable t) {
+                throw asException(t);
+            }
+        }
+
+        @Override
+        int getInt(Object bean) throws Exception {
+            try {
+                return (int) primitiveHandle.invokeExact(bean);
+            } catch (Throwable t) {
+                throw asException(t);
+            }
+        }
+
+        @Override
+        long getLong(Object bean) throws Exception {
+            try {
+                return (long) primitiveHandle.invokeExact(bean);
+            } catch (Throwable t) {
+                throw asException(t);
+            }
+        }
+
+        @Override
+        float getFloat(Object bean) throws Exception {
+            try {
+                return (float) primitiveHandle.invokeExact(bean);
+            } catch (Throwable t) {
+                throw asException(t);
+            }
+        }
+
+        @Override
+        double getDouble(Object bean) throws Exception {
+            try {
+                return (double) primitiveHandle.invokeExact(bean);
+            } catch (Throwable t) {
+                throw asException(t);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "MethodHandleAccessor[" + objectHandle + "]";
+        }
+    }
+
+    static final class ReflectionAccessor extends PropertyAccessor {
+
+        private static final Object[] NO_ARGS = new Object[0];
+
+        private final Method getter;
+
+        ReflectionAccessor(Method m) {
+            getter = m;
+            try {
+                getter.setAccessible(true);
+            } catch (RuntimeException e) {
+                // not permitted, invoke will report the access failure
+            }
+        }
+
+        @Override
+        Object get(Object bean) throws Exception {
+            try {
+                return getter.invoke(bean, NO_ARGS);
+            } catch (InvocationTargetException e) {
+                throw asException(e.getCause());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "ReflectionAccessor[" + getter + "]";
+        }
+    }
+
+    static final class FieldAccessor extends PropertyAccessor {
+
+        private final Field field;
+
+        FieldAccessor(Field f) {
+            field = f;
+            try {
+                field.setAccessible(true);
+            } catch (RuntimeException e) {
+                // not permitted, get will report the access failure
+            }
+        }
+
+        @Override
+        Object get(Object bean) throws Exception {
+            return field.get(bean);
+        }
+
+        @Override
+        public String toString() {
+            return "FieldAccessor[" + field + "]";
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * a flight recorder event for a getter that took longer than the threshold, 10 ms unless the recording's settings give another, such as
+ * com.mebigfatguy.beansource.SlowGetter#threshold=1 ms
+ */
+@Name("com.mebigfatguy.beansource.SlowGetter")
+@Label("Bean Source Slow Getter")
+@Category("Bean Source")
+@Description("A bean getter that took longer than the threshold to return")
+@Threshold("10 ms")
+@StackTrace(false)
+final class SlowGetterEvent extends jdk.jfr.Event {
+
+    @Label("Bean Class")
+    Class<?> beanClass;
+
+    @Label("Property")
+    String property;
+}
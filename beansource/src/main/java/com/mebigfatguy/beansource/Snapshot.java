@@ -0,0 +1,450 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * the document of a bean graph as it was at one time, held as a tree of elements with a hash of each subtree, so that a later document can be
+ * written as just the parts that differ. Names and attribute lists are shared between elements, so a snapshot is much smaller than the graph's xml.
+ * <p>
+ * A delta has the root element of the document, and under it only the elements that were added, changed or removed, each marked with a delta
+ * attribute. Added elements are written in full. Changed elements that hold text, or whose attributes changed, are written in full, and other changed
+ * elements hold the delta of their children. Removed elements are written empty. Children are matched by name, items of arrays and collections by
+ * position, with an index attribute, and map entries by their key, which is always written in full. Subtrees whose hashes match are skipped
+ * without being compared.
+ */
+public final class Snapshot {
+
+    public static final String DELTA = "delta";
+    public static final String ADDED = "added";
+    public static final String CHANGED = "changed";
+    public static final String REMOVED = "removed";
+    public static final String INDEX = "index";
+
+    private static final String TYPE = "type";
+    private static final String ARRAY = "array";
+    private static final String COLLECTION = "collection";
+    private static final String MAP = "map";
+    private static final String KEY = "key";
+
+    private final Node root;
+    private final int elements;
+
+    Snapshot(Node root, int elements) {
+        this.root = root;
+        this.elements = elements;
+    }
+
+    /**
+     * the hash of the whole document, which differs from that of another snapshot whenever the documents differ, but for the rarest of collisions
+     */
+    public long getHash() {
+        return root.hash;
+    }
+
+    public int getElements() {
+        return elements;
+    }
+
+    /**
+     * writes the changes from the baseline to this snapshot as a delta document. With no baseline, the whole document is written as added.
+     */
+    public void writeDelta(Snapshot baseline, ContentHandler handler) throws SAXException {
+        Delta delta = new Delta(handler);
+        handler.startDocument();
+        if (baseline == null) {
+            delta.writeFull(root, ADDED, null);
+        } else if (!baseline.root.name.equals(root.name) || (baseline.root.hash != root.hash)) {
+            delta.diff(baseline.root, root, null);
+        } else {
+            handler.startElement("", "", root.name, root.attributes);
+            handler.endElement("", "", root.name);
+        }
+        handler.endDocument();
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshot[root: " + root.name + ", elements: " + elements + ", hash: " + Long.toHexString(root.hash) + "]";
+    }
+
+    /**
+     * one element, with either its text or its children
+     */
+    static final class Node {
+        static final Node[] NO_CHILDREN = new Node[0];
+
+        final String name;
+        final AttributesAdapter attributes;
+        final String text;
+        final Node[] children;
+        final long hash;
+
+        Node(String name, AttributesAdapter attributes, String text, Node[] children, long hash) {
+            this.name = name;
+            this.attributes = attributes;
+            this.text = text;
+            this.children = children;
+            this.hash = hash;
+        }
+
+        boolean isLeaf() {
+            return children.length == 0;
+        }
+
+        boolean isSequence() {
+            String type = attributes.getValue(TYPE);
+            return ARRAY.equals(type) || COLLECTION.equals(type);
+        }
+
+        boolean isMap() {
+            return MAP.equals(attributes.getValue(TYPE));
+        }
+
+        Node child(String childName) {
+            for (Node child : children) {
+                if (child.name.equals(childName)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "Node[name: " + name + ", children: " + children.length + ", hash: " + Long.toHexString(hash) + "]";
+        }
+    }
+
+    /**
+     * writes the delta between two trees to a content handler
+     */
+    private static final class Delta {
+        private final ContentHandler handler;
+
+        Delta(ContentHandler handler) {
+            this.handler = handler;
+        }
+
+        void diff(Node old, Node now, String index) throws SAXException {
+            if (!old.name.equals(now.name) || old.isLeaf() || now.isLeaf() || !sameAttributes(old.attributes, now.attributes)) {
+                writeFull(now, CHANGED, index);
+                return;
+            }
+
+            handler.startElement("", "", now.name, marked(now.attributes, CHANGED, index));
+            diffChildren(old, now);
+            handler.endElement("", "", now.name);
+        }
+
+        /**
+         * writes the children that were added or changed, in their current order, and then those that were removed, in their old order
+         */
+        private void diffChildren(Node old, Node now) throws SAXException {
+            boolean sequence = now.isSequence();
+            boolean map = now.isMap();
+            Map<Object, Node> oldChildren = new HashMap<>();
+            Map<String, int[]> occurrences = new HashMap<>();
+            for (Node child : old.children) {
+                oldChildren.put(key(child, map, occurrences), child);
+            }
+
+            occurrences.clear();
+            for (Node child : now.children) {
+                Object key = key(child, map, occurrences);
+                Node oldChild = oldChildren.remove(key);
+                String index = sequence ? String.valueOf(occurrences.get(child.name)[0] - 1) : null;
+                if (oldChild == null) {
+                    writeFull(child, ADDED, index);
+                } else if (oldChild.hash != child.hash) {
+                    if (map) {
+                        diffEntry(oldChild, child);
+                    } else {
+                        diff(oldChild, child, index);
+                    }
+                }
+            }
+
+            if (oldChildren.isEmpty()) {
+                return;
+            }
+
+            occurrences.clear();
+            for (Node child : old.children) {
+                Object key = key(child, map, occurrences);
+                if (oldChildren.get(key) == child) {
+                    String index = sequence ? String.valueOf(occurrences.get(child.name)[0] - 1) : null;
+                    writeRemoved(child, map, index);
+                }
+            }
+        }
+
+        /**
+         * writes a changed map entry, with its key in full and the delta of its value
+         */
+        private void diffEntry(Node old, Node now) throws SAXException {
+            handler.startElement("", "", now.name, marked(now.attributes, CHANGED, null));
+            for (Node child : now.children) {
+                if (KEY.equals(child.name)) {
+                    writeFull(child, null, null);
+                } else {
+                    Node oldChild = old.child(child.name);
+                    if (oldChild == null) {
+                        writeFull(child, ADDED, null);
+                    } else if (oldChild.hash != child.hash) {
+                        diff(oldChild, child, null);
+                    }
+                }
+            }
+            handler.endElement("", "", now.name);
+        }
+
+        void writeFull(Node node, String change, String index) throws SAXException {
+            handler.startElement("", "", node.name, (change == null) ? node.attributes : marked(node.attributes, change, index));
+            if (node.text != null) {
+                char[] chars = node.text.toCharArray();
+                handler.characters(chars, 0, chars.length);
+            }
+            for (Node child : node.children) {
+                writeFull(child, null, null);
+            }
+            handler.endElement("", "", node.name);
+        }
+
+        private void writeRemoved(Node node, boolean mapEntry, String index) throws SAXException {
+            handler.startElement("", "", node.name, marked(AttributesAdapter.EMPTY, REMOVED, index));
+            if (mapEntry) {
+                Node key = node.child(KEY);
+                if (key != null) {
+                    writeFull(key, null, null);
+                }
+            }
+            handler.endElement("", "", node.name);
+        }
+
+        /**
+         * the key a child is matched by, the hash of the key of a map entry, otherwise its name and how many times the name has been seen
+         */
+        private static Object key(Node child, boolean map, Map<String, int[]> occurrences) {
+            int[] seen = occurrences.get(child.name);
+            if (seen == null) {
+                seen = new int[1];
+                occurrences.put(child.name, seen);
+            }
+            seen[0]++;
+
+            if (map) {
+                Node key = child.child(KEY);
+                if (key != null) {
+                    return Long.valueOf(key.hash);
+                }
+            }
+            return child.name + '#' + seen[0];
+        }
+
+        private static boolean sameAttributes(AttributesAdapter a, AttributesAdapter b) {
+            if (a == b) {
+                return true;
+            }
+            if (a.getLength() != b.getLength()) {
+                return false;
+            }
+            for (int i = 0; i < a.getLength(); i++) {
+                if (!a.getQName(i).equals(b.getQName(i)) || !a.getValue(i).equals(b.getValue(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static AttributesAdapter marked(Attributes atts, String change, String index) {
+            AttributesAdapter marked = new AttributesAdapter();
+            for (int i = 0; i < atts.getLength(); i++) {
+                marked.addAttribute(new Attribute(atts.getURI(i), atts.getLocalName(i), atts.getQName(i), atts.getValue(i)));
+            }
+            marked.addAttribute(new Attribute("", "", DELTA, change));
+            if (index != null) {
+                marked.addAttribute(new Attribute("", "", INDEX, index));
+            }
+            return marked;
+        }
+    }
+
+    /**
+     * a content handler that builds a snapshot from the events of a document, hashing each element as it ends
+     */
+    static final class Builder implements ContentHandler {
+        private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+        private static final long FNV_PRIME = 0x100000001b3L;
+
+        private final Map<String, String> names = new HashMap<>();
+        private final Map<List<String>, AttributesAdapter> attributeLists = new HashMap<>();
+        private final List<String> probe = new ArrayList<>();
+        private final List<Node> children = new ArrayList<>();
+        private String[] openNames = new String[16];
+        private AttributesAdapter[] openAttributes = new AttributesAdapter[16];
+        private int[] openChildren = new int[16];
+        private StringBuilder text = new StringBuilder();
+        private int depth;
+        private int elements;
+        private Node root;
+
+        Snapshot getSnapshot() {
+            if (root == null) {
+                throw new IllegalStateException("The document has not ended");
+            }
+            return new Snapshot(root, elements);
+        }
+
+        @Override
+        public void setDocumentLocator(Locator locator) {
+        }
+
+        @Override
+        public void startDocument() {
+            children.clear();
+            depth = 0;
+            elements = 0;
+            root = null;
+        }
+
+        @Override
+        public void endDocument() {
+            root = children.isEmpty() ? null : children.get(0);
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri) {
+        }
+
+        @Override
+        public void endPrefixMapping(String prefix) {
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            if (depth == openNames.length) {
+                openNames = Arrays.copyOf(openNames, depth * 2);
+                openAttributes = Arrays.copyOf(openAttributes, depth * 2);
+                openChildren = Arrays.copyOf(openChildren, depth * 2);
+            }
+            String name = names.get(qName);
+            if (name == null) {
+                name = qName;
+                names.put(name, name);
+            }
+            openNames[depth] = name;
+            openAttributes[depth] = intern(atts);
+            openChildren[depth] = children.size();
+            depth++;
+            text.setLength(0);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            depth--;
+            String name = openNames[depth];
+            AttributesAdapter atts = openAttributes[depth];
+            int firstChild = openChildren[depth];
+
+            long hash = hash(FNV_OFFSET, name);
+            for (int i = 0; i < atts.getLength(); i++) {
+                hash = hash(hash(hash, atts.getQName(i)), atts.getValue(i));
+            }
+
+            Node[] nodeChildren = Node.NO_CHILDREN;
+            String nodeText = null;
+            int childCount = children.size() - firstChild;
+            if (childCount > 0) {
+                List<Node> range = children.subList(firstChild, children.size());
+                nodeChildren = range.toArray(new Node[childCount]);
+                range.clear();
+                for (Node child : nodeChildren) {
+                    hash = (Long.rotateLeft(hash, 29) ^ child.hash) * FNV_PRIME;
+                }
+            } else if (text.length() > 0) {
+                nodeText = text.toString();
+                hash = hash(hash ^ 1, nodeText);
+            }
+            text.setLength(0);
+
+            children.add(new Node(name, atts, nodeText, nodeChildren, hash));
+            elements++;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            text.append(ch, start, length);
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            characters(ch, start, length);
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) {
+        }
+
+        @Override
+        public void skippedEntity(String name) {
+        }
+
+        private AttributesAdapter intern(Attributes atts) {
+            int count = atts.getLength();
+            if (count == 0) {
+                return AttributesAdapter.EMPTY;
+            }
+
+            probe.clear();
+            for (int i = 0; i < count; i++) {
+                probe.add(atts.getQName(i));
+                probe.add(atts.getValue(i));
+            }
+            AttributesAdapter interned = attributeLists.get(probe);
+            if (interned == null) {
+                interned = new AttributesAdapter();
+                for (int i = 0; i < count; i++) {
+                    interned.addAttribute(new Attribute(atts.getURI(i), atts.getLocalName(i), atts.getQName(i), atts.getValue(i)));
+                }
+                attributeLists.put(new ArrayList<>(probe), interned);
+            }
+            return interned;
+        }
+
+        private static long hash(long hash, String s) {
+            for (int i = 0; i < s.length(); i++) {
+                hash = (hash ^ s.charAt(i)) * FNV_PRIME;
+            }
+            return (hash ^ s.length()) * FNV_PRIME;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot.Builder[depth: " + depth + ", elements: " + elements + "]";
+        }
+    }
+}
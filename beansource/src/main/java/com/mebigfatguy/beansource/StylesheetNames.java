@@ -0,0 +1,336 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXResult;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * finds the element names used by the expressions of a stylesheet, to work out which parts of a bean graph the stylesheet can read. This reads the
+ * expressions with a simple tokenizer rather than a full XPath parser, which is enough to tell element name tests from functions, axes, attributes,
+ * variables and operators. The names of the elements whose string values can be read, including those output by the built-in templates, are
+ * found too, as reading an element's value reads everything inside it.
+ */
+final class StylesheetNames {
+
+    private static final String XSL_NAMESPACE = "http://www.w3.org/1999/XSL/Transform";
+    private static final String ROOT = "/";
+    private static final Set<String> EXPRESSION_ATTRIBUTES = new HashSet<>(Arrays.asList("select", "match", "test", "use", "count", "from", "value"));
+    private static final Set<String> PATTERN_ATTRIBUTES = new HashSet<>(Arrays.asList("match", "count", "from"));
+    private static final Set<String> NAVIGATION_INSTRUCTIONS = new HashSet<>(Arrays.asList("for-each", "apply-templates"));
+    private static final Set<String> CONTEXT_FUNCTIONS = new HashSet<>(Arrays.asList("string", "normalize-space", "string-length", "number"));
+    private static final Set<String> OPERATORS = new HashSet<>(Arrays.asList("and", "or", "div", "mod"));
+
+    private StylesheetNames() {
+    }
+
+    /**
+     * returns the element names used by the stylesheet, adding those whose whole subtree can be read to subtrees, or returns null if the stylesheet
+     * can read elements it doesn't name. Templates applied without a select, and stylesheets without a template for the root, which the built-in
+     * templates would write all the text of, count as reading unnamed elements.
+     */
+    static Set<String> collect(Source styleSheet, Set<String> subtrees) throws TransformerException {
+        NameCollector collector = new NameCollector();
+        TransformerFactory.newInstance().newTransformer().transform(styleSheet, new SAXResult(collector));
+        if (collector.unbounded || !collector.matches("", ROOT)) {
+            return null;
+        }
+
+        for (Map.Entry<String, Set<String>> entry : collector.applied.entrySet()) {
+            for (String target : entry.getValue()) {
+                if (target.startsWith(".")) {
+                    return null;
+                }
+                if (!collector.matches(entry.getKey(), target)) {
+                    collector.values.add(target);
+                }
+            }
+        }
+
+        subtrees.addAll(collector.values);
+        return collector.names;
+    }
+
+    /**
+     * adds the element names tested by the expression to names, returning false if it has a test, such as * or node(), that matches any element,
+     * or reads the value of a node it can't name, such as . or string(). The last steps of the expression's paths, whose string values can be read,
+     * are added to values. For expressions that only select nodes for other instructions, such as the select of a for-each or a match pattern,
+     * targets is given, and the last steps outside of predicates and function calls are added to it instead, with . and .. as they are.
+     */
+    static boolean scan(String expression, Set<String> names, Set<String> values, Set<String> targets) {
+        int len = expression.length();
+        String[] pending = new String[4];
+        int depth = 0;
+        boolean afterOperand = false;
+        char sigil = 0;
+        int i = 0;
+        while (i < len) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            if (c == '/') {
+                pending[depth] = null;
+            } else if ((c != '[') && !finish(pending, depth, values, targets)) {
+                return false;
+            }
+
+            if ((c == '\'') || (c == '"')) {
+                int end = expression.indexOf(c, i + 1);
+                i = (end < 0) ? len : end + 1;
+                afterOperand = true;
+                sigil = 0;
+            } else if (Character.isDigit(c) || ((c == '.') && (i + 1 < len) && Character.isDigit(expression.charAt(i + 1)))) {
+                while ((i < len) && (Character.isDigit(expression.charAt(i)) || (expression.charAt(i) == '.'))) {
+                    i++;
+                }
+                afterOperand = true;
+                sigil = 0;
+            } else if (c == '.') {
+                boolean parent = (i + 1 < len) && (expression.charAt(i + 1) == '.');
+                pending[depth] = parent ? ".." : ".";
+                i += parent ? 2 : 1;
+                afterOperand = true;
+                sigil = 0;
+            } else if (Character.isLetter(c) || (c == '_')) {
+                int start = i;
+                while ((i < len) && isNameChar(expression.charAt(i))) {
+                    i++;
+                }
+                if ((i + 1 < len) && (expression.charAt(i) == ':') && (expression.charAt(i + 1) != ':')) {
+                    if (expression.charAt(i + 1) == '*') {
+                        return false;
+                    }
+                    start = ++i;
+                    while ((i < len) && isNameChar(expression.charAt(i))) {
+                        i++;
+                    }
+                }
+                String name = expression.substring(start, i);
+
+                int next = skipWhitespace(expression, i);
+                if ((next < len) && (expression.charAt(next) == '(')) {
+                    if ("node".equals(name)) {
+                        return false;
+                    }
+                    int close = skipWhitespace(expression, next + 1);
+                    if (CONTEXT_FUNCTIONS.contains(name) && (close < len) && (expression.charAt(close) == ')')) {
+                        return false;
+                    }
+                    afterOperand = false;
+                } else if ((next + 1 < len) && (expression.charAt(next) == ':') && (expression.charAt(next + 1) == ':')) {
+                    afterOperand = false;
+                } else if ((sigil == '@') || (sigil == '$')) {
+                    afterOperand = true;
+                } else if (afterOperand && OPERATORS.contains(name)) {
+                    afterOperand = false;
+                } else {
+                    names.add(name);
+                    pending[depth] = name;
+                    afterOperand = true;
+                }
+                sigil = 0;
+            } else if (c == '*') {
+                if (!afterOperand && (sigil != '@')) {
+                    return false;
+                }
+                afterOperand = sigil == '@';
+                sigil = 0;
+                i++;
+            } else {
+                if ((c == '[') || (c == '(')) {
+                    if (++depth == pending.length) {
+                        pending = Arrays.copyOf(pending, depth * 2);
+                    }
+                    pending[depth] = null;
+                } else if (((c == ']') || (c == ')')) && (depth > 0)) {
+                    depth--;
+                    if (c == ')') {
+                        pending[depth] = null;
+                    }
+                }
+                afterOperand = (c == ')') || (c == ']');
+                sigil = ((c == '@') || (c == '$')) ? c : 0;
+                i++;
+            }
+        }
+
+        for (; depth >= 0; depth--) {
+            if (!finish(pending, depth, values, targets)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * settles the step a path ended on, now that it is known not to go on to another step
+     */
+    private static boolean finish(String[] pending, int depth, Set<String> values, Set<String> targets) {
+        String name = pending[depth];
+        pending[depth] = null;
+        if (name == null) {
+            return true;
+        }
+
+        if ((targets != null) && (depth == 0)) {
+            targets.add(name);
+        } else if (name.startsWith(".")) {
+            return false;
+        } else {
+            values.add(name);
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(String expression, int i) {
+        while ((i < expression.length()) && Character.isWhitespace(expression.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || (c == '_') || (c == '-') || (c == '.');
+    }
+
+    /**
+     * the expressions of attribute value templates, the parts in braces, with doubled braces standing for themselves
+     */
+    private static boolean scanTemplate(String value, Set<String> names, Set<String> values) {
+        int i = 0;
+        while ((i = value.indexOf('{', i)) >= 0) {
+            if ((i + 1 < value.length()) && (value.charAt(i + 1) == '{')) {
+                i += 2;
+                continue;
+            }
+            int end = value.indexOf('}', i);
+            if (end < 0) {
+                break;
+            }
+            if (!scan(value.substring(i + 1, end), names, values, null)) {
+                return false;
+            }
+            i = end + 1;
+        }
+        return true;
+    }
+
+    private static final class NameCollector extends DefaultHandler {
+        final Set<String> names = new TreeSet<>();
+        final Set<String> values = new TreeSet<>();
+        /** the elements templates are applied to, by mode */
+        final Map<String, Set<String>> applied = new HashMap<>();
+        /** the elements, or the root, that a template matches every one of, by mode */
+        final Map<String, Set<String>> matched = new HashMap<>();
+        boolean unbounded;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            boolean xsl = XSL_NAMESPACE.equals(uri);
+            if (xsl && ("include".equals(localName) || "import".equals(localName))) {
+                unbounded = true;
+            }
+            if (xsl && "apply-templates".equals(localName) && (atts.getValue("select") == null)) {
+                unbounded = true;
+            }
+            String mode = xsl ? atts.getValue("mode") : null;
+
+            for (int i = 0; i < atts.getLength(); i++) {
+                String attName = atts.getLocalName(i);
+                if ((attName == null) || attName.isEmpty()) {
+                    attName = atts.getQName(i);
+                }
+                String value = atts.getValue(i);
+                boolean bounded;
+                if (xsl && EXPRESSION_ATTRIBUTES.contains(attName)) {
+                    Set<String> targets = null;
+                    if (PATTERN_ATTRIBUTES.contains(attName) || ("select".equals(attName) && NAVIGATION_INSTRUCTIONS.contains(localName))) {
+                        targets = new HashSet<>();
+                    }
+                    bounded = scan(value, names, values, targets);
+                    if ("apply-templates".equals(localName) && (targets != null)) {
+                        modeSet(applied, mode).addAll(targets);
+                    } else if ("template".equals(localName) && "match".equals(attName)) {
+                        addMatches(value, modeSet(matched, mode));
+                    }
+                } else {
+                    bounded = scanTemplate(value, names, values);
+                }
+                unbounded |= !bounded;
+            }
+        }
+
+        boolean matches(String mode, String name) {
+            Set<String> names = matched.get(mode);
+            return (names != null) && names.contains(name);
+        }
+
+        /**
+         * adds the alternatives of a match pattern that match every element of a name, or the root, leaving out those with predicates or paths
+         */
+        private static void addMatches(String pattern, Set<String> matches) {
+            for (String alternative : pattern.split("\\|")) {
+                String name = alternative.trim();
+                if (ROOT.equals(name)) {
+                    matches.add(name);
+                    continue;
+                }
+
+                int colon = name.indexOf(':');
+                if ((colon >= 0) && (name.indexOf(':', colon + 1) < 0)) {
+                    name = name.substring(colon + 1);
+                }
+                boolean plain = !name.isEmpty() && Character.isLetter(name.charAt(0));
+                for (int i = 0; plain && (i < name.length()); i++) {
+                    plain = isNameChar(name.charAt(i));
+                }
+                if (plain) {
+                    matches.add(name);
+                }
+            }
+        }
+
+        private static Set<String> modeSet(Map<String, Set<String>> byMode, String mode) {
+            String key = (mode == null) ? "" : mode;
+            Set<String> set = byMode.get(key);
+            if (set == null) {
+                set = new HashSet<>();
+                byMode.put(key, set);
+            }
+            return set;
+        }
+
+        @Override
+        public String toString() {
+            return "NameCollector[names: " + names + ", values: " + values + ", unbounded: " + unbounded + "]";
+        }
+    }
+}
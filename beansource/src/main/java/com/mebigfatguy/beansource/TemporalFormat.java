@@ -0,0 +1,216 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.text.DateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * how dates and times are written. Formats are immutable and may be shared between bean sources and threads.
+ * <ul>
+ * <li>{@link #LOCALE} writes java.util.Date values with the default locale's date time format, and leaves java.time values to be written as beans,
+ * which is how beansource has always behaved</li>
+ * <li>{@link #ISO} writes all date and time values as ISO-8601, dates as UTC instants</li>
+ * <li>{@link #EPOCH_MILLIS} writes dates, instants and values with an offset or zone as milliseconds since the epoch, and values without one as
+ * ISO-8601</li>
+ * <li>{@link #of(DateTimeFormatter)} writes all values with the given formatter, dates are converted using the formatter's zone, or the default zone
+ * when written if it has none</li>
+ * </ul>
+ */
+public abstract class TemporalFormat {
+
+    public static final TemporalFormat LOCALE = new LocaleFormat();
+    public static final TemporalFormat ISO = new IsoFormat();
+    public static final TemporalFormat EPOCH_MILLIS = new EpochMillisFormat();
+
+    private TemporalFormat() {
+    }
+
+    public static TemporalFormat of(DateTimeFormatter formatter) {
+        return new PatternFormat(formatter);
+    }
+
+    /**
+     * returns whether the java.time type is one written as a value, rather than as a bean
+     */
+    static boolean isTemporalClass(Class<?> c) {
+        return (c == Instant.class) || (c == LocalDate.class) || (c == LocalTime.class) || (c == LocalDateTime.class) || (c == OffsetDateTime.class)
+                || (c == OffsetTime.class) || (c == ZonedDateTime.class);
+    }
+
+    abstract void format(Date date, StringBuilder out);
+
+    /**
+     * writes a java.time value, returning false if this format leaves the value to be written as a bean
+     */
+    abstract boolean format(TemporalAccessor temporal, StringBuilder out);
+
+    private static DateTimeFormatter isoFormatter(TemporalAccessor temporal) {
+        if (temporal instanceof Instant) {
+            return DateTimeFormatter.ISO_INSTANT;
+        } else if (temporal instanceof LocalDate) {
+            return DateTimeFormatter.ISO_LOCAL_DATE;
+        } else if (temporal instanceof LocalTime) {
+            return DateTimeFormatter.ISO_LOCAL_TIME;
+        } else if (temporal instanceof LocalDateTime) {
+            return DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+        } else if (temporal instanceof OffsetTime) {
+            return DateTimeFormatter.ISO_OFFSET_TIME;
+        } else if (temporal instanceof OffsetDateTime) {
+            return DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+        }
+        return DateTimeFormatter.ISO_ZONED_DATE_TIME;
+    }
+
+    private static final class LocaleFormat extends TemporalFormat {
+
+        private static final ThreadLocal<LocaleDateFormat> DATE_FORMATS = new ThreadLocal<>();
+
+        /**
+         * formats with this thread's cached date format, first replacing it if the default locale or time zone has changed since it was made, so
+         * every thread follows the current defaults
+         */
+        @Override
+        void format(Date date, StringBuilder out) {
+            Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+            TimeZone zone = TimeZone.getDefault();
+            LocaleDateFormat dateFormat = DATE_FORMATS.get();
+            if ((dateFormat == null) || !dateFormat.locale.equals(locale) || !dateFormat.zone.equals(zone)) {
+                dateFormat = new LocaleDateFormat(locale, zone);
+                DATE_FORMATS.set(dateFormat);
+            }
+            out.append(dateFormat.format.format(date));
+        }
+
+        @Override
+        boolean format(TemporalAccessor temporal, StringBuilder out) {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "TemporalFormat[LOCALE]";
+        }
+    }
+
+    /**
+     * a locale's date time format, and the locale and time zone it was made for
+     */
+    private static final class LocaleDateFormat {
+        final Locale locale;
+        final TimeZone zone;
+        final DateFormat format;
+
+        LocaleDateFormat(Locale locale, TimeZone zone) {
+            this.locale = locale;
+            this.zone = zone;
+            format = DateFormat.getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT, locale);
+            format.setTimeZone(zone);
+        }
+
+        @Override
+        public String toString() {
+            return "LocaleDateFormat[locale: " + locale + ", zone: " + zone.getID() + "]";
+        }
+    }
+
+    private static final class IsoFormat extends TemporalFormat {
+
+        @Override
+        void format(Date date, StringBuilder out) {
+            DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(date.getTime()), out);
+        }
+
+        @Override
+        boolean format(TemporalAccessor temporal, StringBuilder out) {
+            isoFormatter(temporal).formatTo(temporal, out);
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "TemporalFormat[ISO]";
+        }
+    }
+
+    private static final class EpochMillisFormat extends TemporalFormat {
+
+        @Override
+        void format(Date date, StringBuilder out) {
+            out.append(date.getTime());
+        }
+
+        @Override
+        boolean format(TemporalAccessor temporal, StringBuilder out) {
+            if (temporal instanceof Instant) {
+                out.append(((Instant) temporal).toEpochMilli());
+            } else if (temporal instanceof OffsetDateTime) {
+                out.append(((OffsetDateTime) temporal).toInstant().toEpochMilli());
+            } else if (temporal instanceof ZonedDateTime) {
+                out.append(((ZonedDateTime) temporal).toInstant().toEpochMilli());
+            } else {
+                isoFormatter(temporal).formatTo(temporal, out);
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "TemporalFormat[EPOCH_MILLIS]";
+        }
+    }
+
+    private static final class PatternFormat extends TemporalFormat {
+
+        private final DateTimeFormatter formatter;
+
+        PatternFormat(DateTimeFormatter dtf) {
+            formatter = dtf;
+        }
+
+        /**
+         * converts the date in the formatter's zone, or if it has none, in the default zone as it is now, so the format follows changes to it
+         */
+        @Override
+        void format(Date date, StringBuilder out) {
+            ZoneId zone = formatter.getZone();
+            formatter.formatTo(Instant.ofEpochMilli(date.getTime()).atZone((zone != null) ? zone : ZoneId.systemDefault()), out);
+        }
+
+        @Override
+        boolean format(TemporalAccessor temporal, StringBuilder out) {
+            formatter.formatTo(temporal, out);
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "TemporalFormat[" + formatter + "]";
+        }
+    }
+}
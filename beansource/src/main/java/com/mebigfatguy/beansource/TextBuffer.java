@@ -0,0 +1,118 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * a reusable buffer for building character content. Values are formatted straight into the buffer, and handed to the content handler from a
+ * reused array, so text can be written without creating strings. Strings are copied into the same array, a chunk at a time.
+ */
+final class TextBuffer {
+
+    static final int CHUNK_SIZE = 8192;
+
+    private final StringBuilder text = new StringBuilder(64);
+    private char[] chars = new char[64];
+
+    TextBuffer append(char c) {
+        text.append(c);
+        return this;
+    }
+
+    TextBuffer append(boolean b) {
+        text.append(b);
+        return this;
+    }
+
+    TextBuffer append(int i) {
+        text.append(i);
+        return this;
+    }
+
+    TextBuffer append(long l) {
+        text.append(l);
+        return this;
+    }
+
+    TextBuffer append(float f) {
+        text.append(f);
+        return this;
+    }
+
+    TextBuffer append(double d) {
+        text.append(d);
+        return this;
+    }
+
+    /**
+     * the builder behind this buffer, for formatters that write to a StringBuilder
+     */
+    StringBuilder builder() {
+        return text;
+    }
+
+    int length() {
+        return text.length();
+    }
+
+    /**
+     * sends the buffered text to the handler as one characters event, and empties the buffer
+     */
+    void flush(ContentHandler handler) throws SAXException {
+        int len = text.length();
+        ensureCapacity(len);
+        text.getChars(0, len, chars, 0);
+        text.setLength(0);
+        handler.characters(chars, 0, len);
+    }
+
+    /**
+     * sends a string to the handler through the reused array, splitting very long strings into several characters events. A chunk never ends
+     * between the two halves of a surrogate pair, so handlers that look at one event at a time always see whole characters.
+     */
+    void write(String s, ContentHandler handler) throws SAXException {
+        int len = s.length();
+        if (len == 0) {
+            handler.characters(chars, 0, 0);
+            return;
+        }
+
+        int start = 0;
+        while (start < len) {
+            int end = Math.min(len, start + CHUNK_SIZE);
+            if ((end < len) && Character.isHighSurrogate(s.charAt(end - 1)) && Character.isLowSurrogate(s.charAt(end))) {
+                end--;
+            }
+            ensureCapacity(end - start);
+            s.getChars(start, end, chars, 0);
+            handler.characters(chars, 0, end - start);
+            start = end;
+        }
+    }
+
+    private void ensureCapacity(int len) {
+        if (chars.length < len) {
+            chars = new char[Math.max(len, chars.length * 2)];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TextBuffer[" + text + "]";
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * a content handler that writes the document as escaped UTF-8 into a reused byte buffer, which is handed to the stream, channel or writer as it
+ * fills. The output is the same as an identity transform to a stream result: no whitespace is added, elements without content are closed as
+ * empty elements, and characters are escaped the way the jdk's serializer escapes them.
+ */
+final class XMLByteWriter implements ContentHandler {
+
+    static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AMP = "&amp;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LT = "&lt;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GT = "&gt;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] QUOT = "&quot;".getBytes(StandardCharsets.US_ASCII);
+
+    /** the largest number of bytes one char can be written as, &#1114111; */
+    private static final int MAX_CHAR_BYTES = 10;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer bufferView = ByteBuffer.wrap(buffer);
+    private final byte[] lineSeparator = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final Writer writer;
+    private CharsetDecoder decoder;
+    private CharBuffer decoded;
+    private int pos;
+    private boolean startTagOpen;
+    private char pendingHighSurrogate;
+
+    XMLByteWriter(OutputStream os) {
+        out = os;
+        channel = null;
+        writer = null;
+    }
+
+    XMLByteWriter(WritableByteChannel wbc) {
+        out = null;
+        channel = wbc;
+        writer = null;
+    }
+
+    /**
+     * writes through the same byte buffer, decoding each full buffer into a reused char buffer for the writer
+     */
+    XMLByteWriter(Writer w) {
+        out = null;
+        channel = null;
+        writer = w;
+        decoder = StandardCharsets.UTF_8.newDecoder();
+        decoded = CharBuffer.allocate(BUFFER_SIZE);
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        put(DECLARATION);
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        closeStartTag();
+        try {
+            flushBuffer();
+            if (out != null) {
+                out.flush();
+            } else if (writer != null) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) {
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) {
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        closeStartTag();
+        pendingHighSurrogate = 0;
+        put((byte) '<');
+        putName(qName);
+        for (int i = 0; i < atts.getLength(); i++) {
+            put((byte) ' ');
+            putName(atts.getQName(i));
+            put((byte) '=');
+            put((byte) '"');
+            putAttributeValue(atts.getValue(i));
+            put((byte) '"');
+        }
+        startTagOpen = true;
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        pendingHighSurrogate = 0;
+        if (startTagOpen) {
+            startTagOpen = false;
+            put((byte) '/');
+            put((byte) '>');
+        } else {
+            put((byte) '<');
+            put((byte) '/');
+            putName(qName);
+            put((byte) '>');
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (length == 0) {
+            return;
+        }
+
+        closeStartTag();
+        int end = start + length;
+        for (int i = start; i < end; i++) {
+            char c = ch[i];
+            if (pos + MAX_CHAR_BYTES > buffer.length) {
+                flush();
+            }
+
+            if (pendingHighSurrogate != 0) {
+                putChar(c);
+            } else if ((c >= 0x20) && (c < 0x7F)) {
+                if (c == '&') {
+                    putBytes(AMP);
+                } else if (c == '<') {
+                    putBytes(LT);
+                } else if (c == '>') {
+                    putBytes(GT);
+                } else {
+                    buffer[pos++] = (byte) c;
+                }
+            } else if (c == '\n') {
+                putBytes(lineSeparator);
+            } else if (c == '\t') {
+                buffer[pos++] = (byte) c;
+            } else if ((c < 0x20) || ((c >= 0x7F) && (c <= 0x9F))) {
+                putCharReference(c);
+            } else {
+                putChar(c);
+            }
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        closeStartTag();
+        put((byte) '<');
+        put((byte) '?');
+        putName(target);
+        if ((data != null) && !data.isEmpty()) {
+            put((byte) ' ');
+            putName(data);
+        }
+        put((byte) '?');
+        put((byte) '>');
+    }
+
+    @Override
+    public void skippedEntity(String name) {
+    }
+
+    /**
+     * writes the content of a part of the document that was written separately, by a writer to its own buffer, as when the items of a large
+     * collection are written in parallel. The element the part belongs in must already be started.
+     */
+    void append(ByteArrayOutputStream part) throws SAXException {
+        closeStartTag();
+        try {
+            flushBuffer();
+            if (out != null) {
+                part.writeTo(out);
+            } else if (channel != null) {
+                ByteBuffer bb = ByteBuffer.wrap(part.toByteArray());
+                while (bb.hasRemaining()) {
+                    channel.write(bb);
+                }
+            } else {
+                writer.write(part.toString(StandardCharsets.UTF_8.name()));
+            }
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    private void closeStartTag() throws SAXException {
+        if (startTagOpen) {
+            startTagOpen = false;
+            put((byte) '>');
+        }
+    }
+
+    private void putName(String name) throws SAXException {
+        for (int i = 0; i < name.length(); i++) {
+            if (pos + MAX_CHAR_BYTES > buffer.length) {
+                flush();
+            }
+            char c = name.charAt(i);
+            if (c < 0x80) {
+                buffer[pos++] = (byte) c;
+            } else {
+                putChar(c);
+            }
+        }
+    }
+
+    private void putAttributeValue(String value) throws SAXException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (pos + MAX_CHAR_BYTES > buffer.length) {
+                flush();
+            }
+
+            if (pendingHighSurrogate != 0) {
+                putChar(c);
+            } else if ((c >= 0x20) && (c < 0x80)) {
+                if (c == '&') {
+                    putBytes(AMP);
+                } else if (c == '<') {
+                    putBytes(LT);
+                } else if (c == '>') {
+                    putBytes(GT);
+                } else if (c == '"') {
+                    putBytes(QUOT);
+                } else {
+                    buffer[pos++] = (byte) c;
+                }
+            } else if (c < 0x20) {
+                putCharReference(c);
+            } else {
+                putChar(c);
+            }
+        }
+        pendingHighSurrogate = 0;
+    }
+
+    /**
+     * writes a char of 0x80 or above, or the char after a high surrogate. Surrogate pairs and unpaired low surrogates are written as character
+     * references, and a high surrogate followed by anything but a low surrogate is an error, as with the jdk's serializer. A high surrogate at the
+     * end of one characters event is paired with the start of the next, and is dropped if the text ends there.
+     */
+    private void putChar(char c) throws SAXException {
+        if (pendingHighSurrogate != 0) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (!Character.isLowSurrogate(c)) {
+                throw new SAXException("Invalid UTF-16 surrogate detected: " + Integer.toHexString(high) + " " + Integer.toHexString(c));
+            }
+            putCharReference(Character.toCodePoint(high, c));
+            return;
+        }
+
+        if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+            return;
+        }
+
+        if (Character.isLowSurrogate(c)) {
+            putCharReference(c);
+            return;
+        }
+
+        if (c < 0x80) {
+            buffer[pos++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[pos++] = (byte) (0xC0 | (c >> 6));
+            buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else {
+            buffer[pos++] = (byte) (0xE0 | (c >> 12));
+            buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void putCharReference(int codePoint) {
+        buffer[pos++] = '&';
+        buffer[pos++] = '#';
+        int digits = 1;
+        for (int v = codePoint / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buffer[i] = (byte) ('0' + (codePoint % 10));
+            codePoint /= 10;
+        }
+        pos += digits;
+        buffer[pos++] = ';';
+    }
+
+    private void putBytes(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    private void put(byte b) throws SAXException {
+        if (pos == buffer.length) {
+            flush();
+        }
+        buffer[pos++] = b;
+    }
+
+    private void put(byte[] bytes) throws SAXException {
+        if (pos + bytes.length > buffer.length) {
+            flush();
+        }
+        putBytes(bytes);
+    }
+
+    private void flush() throws SAXException {
+        try {
+            flushBuffer();
+        } catch (IOException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * hands the buffered bytes to the output. The buffer is only flushed between chars, so it never ends part way through a UTF-8 sequence.
+     */
+    private void flushBuffer() throws IOException {
+        if (pos == 0) {
+            return;
+        }
+
+        if (out != null) {
+            out.write(buffer, 0, pos);
+        } else if (channel != null) {
+            bufferView.clear();
+            bufferView.limit(pos);
+            while (bufferView.hasRemaining()) {
+                channel.write(bufferView);
+            }
+        } else {
+            bufferView.clear();
+            bufferView.limit(pos);
+            decoded.clear();
+            CoderResult result = decoder.decode(bufferView, decoded, true);
+            if (result.isError()) {
+                result.throwException();
+            }
+            decoder.reset();
+            writer.write(decoded.array(), 0, decoded.position());
+        }
+        pos = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "XMLByteWriter[buffered: " + pos + "]";
+    }
+}
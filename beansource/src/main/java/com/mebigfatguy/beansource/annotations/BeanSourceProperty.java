@@ -21,7 +21,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 @Retention(RetentionPolicy.RUNTIME)
-@Target({ ElementType.METHOD })
+@Target({ ElementType.METHOD, ElementType.FIELD, ElementType.RECORD_COMPONENT })
 public @interface BeanSourceProperty {
 
     enum Type {
@@ -29,4 +29,9 @@ public @interface BeanSourceProperty {
     };
 
     Type value() default Type.COMPLEX;
+
+    /**
+     * whether the property is read ahead, on the executor of the source's prefetch options, as soon as its bean is reached
+     */
+    boolean prefetch() default false;
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AttributesAdapterTest {
+
+    @Test
+    public void testAttributeEquality() {
+        Attribute a1 = new Attribute("", "type", "type", "bean");
+        Attribute a2 = new Attribute("", "type", "type", "bean");
+        Attribute a3 = new Attribute("", "", "type", "bean");
+
+        Assert.assertEquals(a1, a2);
+        Assert.assertEquals(a1.hashCode(), a2.hashCode());
+        Assert.assertFalse(a1.equals(a3));
+    }
+
+    @Test
+    public void testIndexedLookup() {
+        AttributesAdapter aa = new AttributesAdapter();
+        for (int i = 0; i < 20; i++) {
+            aa.addAttribute(new Attribute("", "a" + i, "a" + i, String.valueOf(i)));
+        }
+        aa.addAttribute(new Attribute("", "a5", "a5", "duplicate"));
+
+        Assert.assertEquals(21, aa.getLength());
+        Assert.assertEquals(5, aa.getIndex("a5"));
+        Assert.assertEquals("5", aa.getValue("a5"));
+        Assert.assertEquals("19", aa.getValue("", "a19"));
+        Assert.assertEquals("duplicate", aa.getValue(20));
+        Assert.assertEquals(-1, aa.getIndex("missing"));
+        Assert.assertNull(aa.getValue("missing"));
+        Assert.assertNull(aa.getQName(21));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSharedAttributesAreImmutable() {
+        AttributesAdapter aa = AttributesAdapter.of(new Attribute("", "", "type", "bean"));
+        Assert.assertEquals("bean", aa.getValue("type"));
+        aa.addAttribute(new Attribute("", "", "other", "value"));
+    }
+}
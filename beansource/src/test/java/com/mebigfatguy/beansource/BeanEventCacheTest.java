@@ -0,0 +1,153 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BeanEventCacheTest {
+
+    @Test
+    public void testKeyedEntries() {
+        try {
+            BeanEventCache cache = new BeanEventCache(1024 * 1024);
+            Counted bean = new Counted("first");
+            String expected = toXml(new BeanSource(bean, "counted"));
+            bean.calls.set(0);
+
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(expected, toXml(cache.getSource("counted", 1, new BeanSource(bean, "counted"))));
+            }
+            Assert.assertEquals(1, bean.calls.get());
+            Assert.assertEquals(2, cache.getHits());
+            Assert.assertEquals(1, cache.getMisses());
+            Assert.assertEquals(1, cache.getEntries());
+            Assert.assertTrue(cache.getBytes() > 0);
+
+            bean.value = "second";
+            Assert.assertEquals(expected, toXml(cache.getSource("counted", 1, new BeanSource(bean, "counted"))));
+            Assert.assertTrue(toXml(cache.getSource("counted", 2, new BeanSource(bean, "counted"))).contains("second"));
+            Assert.assertEquals(2, bean.calls.get());
+            Assert.assertEquals(1, cache.getEntries());
+
+            cache.invalidate("counted");
+            Assert.assertEquals(0, cache.getEntries());
+            Assert.assertEquals(0, cache.getBytes());
+            toXml(cache.getSource("counted", 2, new BeanSource(bean, "counted")));
+            Assert.assertEquals(3, bean.calls.get());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testIdentityEntries() {
+        try {
+            BeanEventCache cache = new BeanEventCache(1024 * 1024);
+            Counted bean = new Counted("a");
+            Counted equalBean = new Counted("a");
+
+            toXml(cache.getSource(new BeanSource(bean, "counted")));
+            toXml(cache.getSource(new BeanSource(bean, "counted")));
+            toXml(cache.getSource(new BeanSource(equalBean, "counted")));
+            Assert.assertEquals(1, bean.calls.get());
+            Assert.assertEquals(1, equalBean.calls.get());
+            Assert.assertEquals(2, cache.getEntries());
+
+            cache.invalidateBean(bean);
+            Assert.assertEquals(1, cache.getEntries());
+            toXml(cache.getSource(new BeanSource(bean, "counted")));
+            Assert.assertEquals(2, bean.calls.get());
+
+            equalBean = null;
+            bean = null;
+            for (int i = 0; (i < 50) && (cache.getEntries() > 0); i++) {
+                System.gc();
+                Thread.sleep(20);
+            }
+            Assert.assertEquals(0, cache.getEntries());
+            Assert.assertEquals(0, cache.getBytes());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        try {
+            BeanEventCache probe = new BeanEventCache(1024 * 1024);
+            probe.getSource("size", 0, new BeanSource(new Counted("0"), "counted"));
+            long size = probe.getBytes();
+
+            BeanEventCache cache = new BeanEventCache(size * 3);
+            List<Counted> beans = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                beans.add(new Counted(String.valueOf(i)));
+                cache.getSource(Integer.valueOf(i), 0, new BeanSource(beans.get(i), "counted"));
+                if (i == 2) {
+                    cache.getSource(Integer.valueOf(0), 0, new BeanSource(beans.get(0), "counted"));
+                }
+            }
+
+            Assert.assertEquals(3, cache.getEntries());
+            Assert.assertEquals(1, cache.getEvictions());
+            Assert.assertTrue(cache.getBytes() <= cache.getMaxBytes());
+
+            cache.getSource(Integer.valueOf(0), 0, new BeanSource(beans.get(0), "counted"));
+            cache.getSource(Integer.valueOf(1), 0, new BeanSource(beans.get(1), "counted"));
+            Assert.assertEquals(1, beans.get(0).calls.get());
+            Assert.assertEquals(2, beans.get(1).calls.get());
+
+            BeanEventCache tiny = new BeanEventCache(size - 1);
+            Assert.assertTrue(toXml(tiny.getSource("big", 0, new BeanSource(new Counted("0"), "counted"))).contains("<value>0</value>"));
+            Assert.assertEquals(0, tiny.getEntries());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    private static String toXml(Source source) throws Exception {
+        StringWriter sw = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(source, new StreamResult(sw));
+        return sw.toString();
+    }
+
+    public static class Counted {
+        final AtomicInteger calls = new AtomicInteger();
+        String value;
+
+        public Counted(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            calls.incrementAndGet();
+            return value;
+        }
+    }
+}
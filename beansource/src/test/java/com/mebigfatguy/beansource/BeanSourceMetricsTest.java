@@ -0,0 +1,183 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class BeanSourceMetricsTest {
+
+    @Test
+    public void testMetrics() {
+        try {
+            for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                BeanSource bs = new BeanSource(new Invoice(3), "invoice");
+                bs.setEngine(engine);
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                bs.writeTo(expected);
+
+                BeanSourceMetrics metrics = new BeanSourceMetrics();
+                bs.setMetricsListener(metrics);
+                ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                bs.writeTo(actual);
+
+                Assert.assertArrayEquals(engine.name(), expected.toByteArray(), actual.toByteArray());
+                Assert.assertEquals(engine.name(), 1, metrics.getDocuments());
+                Assert.assertEquals(engine.name(), countElements(actual.toString("UTF-8")), metrics.getElements());
+                Assert.assertTrue(engine.name(), metrics.getCharacters() > 0);
+                Assert.assertEquals(engine.name(), Long.valueOf(1), metrics.getBeansVisited().get(Invoice.class.getName()));
+                Assert.assertEquals(engine.name(), Long.valueOf(3), metrics.getBeansVisited().get(InvoiceLine.class.getName()));
+                Assert.assertEquals(engine.name(), Long.valueOf(3), metrics.getGetterCalls().get(InvoiceLine.class.getName() + "#amount"));
+                Assert.assertEquals(engine.name(), Long.valueOf(1), metrics.getGetterCalls().get(Invoice.class.getName() + "#lines"));
+                Assert.assertTrue(engine.name(), metrics.getGetterNanos().get(InvoiceLine.class.getName() + "#amount").longValue() >= 0);
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testParallelMetrics() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BeanSource bs = new BeanSource(new Invoice(500), "invoice");
+            BeanSourceMetrics sequential = new BeanSourceMetrics();
+            bs.setMetricsListener(sequential);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            bs.writeTo(expected);
+
+            BeanSourceMetrics parallel = new BeanSourceMetrics();
+            bs.setMetricsListener(parallel);
+            bs.setParallelExecutor(pool);
+            bs.setParallelThreshold(100);
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            bs.writeTo(actual);
+
+            Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+            Assert.assertEquals(sequential.getElements(), parallel.getElements());
+            Assert.assertEquals(sequential.getCharacters(), parallel.getCharacters());
+            Assert.assertEquals(sequential.getBeansVisited(), parallel.getBeansVisited());
+            Assert.assertEquals(sequential.getGetterCalls(), parallel.getGetterCalls());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFlightRecorderEvents() {
+        Path file = null;
+        try (Recording recording = new Recording()) {
+            recording.enable("com.mebigfatguy.beansource.Parse");
+            recording.enable("com.mebigfatguy.beansource.SlowGetter").withThreshold(Duration.ofMillis(5));
+            recording.start();
+
+            new BeanSource(new Invoice(2), "invoice").writeTo(new ByteArrayOutputStream());
+
+            recording.stop();
+            file = Files.createTempFile("beansource", ".jfr");
+            recording.dump(file);
+
+            List<String> slowGetters = new ArrayList<>();
+            RecordedEvent parse = null;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                String name = event.getEventType().getName();
+                if ("com.mebigfatguy.beansource.Parse".equals(name)) {
+                    parse = event;
+                } else if ("com.mebigfatguy.beansource.SlowGetter".equals(name)) {
+                    slowGetters.add(event.getString("property"));
+                }
+            }
+
+            Assert.assertNotNull(parse);
+            Assert.assertEquals("invoice", parse.getString("rootName"));
+            Assert.assertTrue(parse.getLong("elements") > 0);
+            Assert.assertEquals(1, slowGetters.size());
+            Assert.assertEquals("approval", slowGetters.get(0));
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        } finally {
+            if (file != null) {
+                file.toFile().delete();
+            }
+        }
+    }
+
+    private static long countElements(String xml) {
+        long count = 0;
+        for (int i = 0; i < (xml.length() - 1); i++) {
+            if ((xml.charAt(i) == '<') && (xml.charAt(i + 1) != '/') && (xml.charAt(i + 1) != '?')) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static class Invoice {
+        private final List<InvoiceLine> lines = new ArrayList<>();
+
+        public Invoice(int count) {
+            for (int i = 0; i < count; i++) {
+                lines.add(new InvoiceLine(i));
+            }
+        }
+
+        public String getNumber() {
+            return "INV-1";
+        }
+
+        public List<InvoiceLine> getLines() {
+            return lines;
+        }
+
+        public String getApproval() throws InterruptedException {
+            Thread.sleep(20);
+            return "approved";
+        }
+    }
+
+    public static class InvoiceLine {
+        private final int index;
+
+        public InvoiceLine(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public double getAmount() {
+            return index * 2.5;
+        }
+    }
+}
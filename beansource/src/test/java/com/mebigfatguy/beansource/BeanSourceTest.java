@@ -0,0 +1,1543 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.Text;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.mebigfatguy.beansource.annotations.BeanSourceProperty;
+
+public class BeanSourceTest {
+
+    @Test
+    public void testSimpleBeanSource() {
+        try {
+            Bean1 b1 = new Bean1();
+            DOMResult dr = getDOMResult();
+            transform(null, b1, "bean", dr, null);
+            Document d = (Document) dr.getNode();
+
+            debug(d);
+
+            Element root = d.getDocumentElement();
+            Assert.assertEquals("bean", root.getNodeName());
+            NodeList nodes = root.getElementsByTagName("name");
+            Assert.assertEquals(1, nodes.getLength());
+            Element child = (Element) nodes.item(0);
+            nodes = child.getChildNodes();
+            Assert.assertEquals(1, nodes.getLength());
+            Node n = nodes.item(0);
+            Assert.assertTrue(n instanceof Text);
+            Text tn = (Text) n;
+            Assert.assertEquals("example", tn.getNodeValue());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testArrayBeanSource() {
+        try {
+            String[] list = new String[] { "Fee", "Fi", "Fo", "Fum" };
+
+            DOMResult dr = getDOMResult();
+            transform(null, list, "array", dr, null);
+            Document d = (Document) dr.getNode();
+
+            debug(d);
+
+            Element root = d.getDocumentElement();
+            Assert.assertEquals("array", root.getNodeName());
+            NodeList nodes = root.getElementsByTagName("item");
+            Assert.assertEquals(4, nodes.getLength());
+            Element child = (Element) nodes.item(0);
+            Text tn = (Text) child.getFirstChild();
+            Assert.assertEquals("Fee", tn.getNodeValue());
+            child = (Element) nodes.item(1);
+            tn = (Text) child.getFirstChild();
+            Assert.assertEquals("Fi", tn.getNodeValue());
+            child = (Element) nodes.item(2);
+            tn = (Text) child.getFirstChild();
+            Assert.assertEquals("Fo", tn.getNodeValue());
+            child = (Element) nodes.item(3);
+            tn = (Text) child.getFirstChild();
+            Assert.assertEquals("Fum", tn.getNodeValue());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testListBeanSource() {
+        try {
+            List<String> list = new ArrayList<>();
+            list.add("Fee");
+            list.add("Fi");
+            list.add("Fo");
+            list.add("Fum");
+
+            DOMResult dr = getDOMResult();
+            transform(null, list, "list", dr, null);
+            Document d = (Document) dr.getNode();
+
+            debug(d);
+
+            Element root = d.getDocumentElement();
+            Assert.assertEquals("list", root.getNodeName());
+            NodeList nodes = root.getElementsByTagName("item");
+            Assert.assertEquals(4, nodes.getLength());
+            Element child = (Element) nodes.item(0);
+            Text tn = (Text) child.getFirstChild();
+            Assert.assertEquals("Fee", tn.getNodeValue());
+            child = (Element) nodes.item(1);
+            tn = (Text) child.getFirstChild();
+            Assert.assertEquals("Fi", tn.getNodeValue());
+            child = (Element) nodes.item(2);
+            tn = (Text) child.getFirstChild();
+            Assert.assertEquals("Fo", tn.getNodeValue());
+            child = (Element) nodes.item(3);
+            tn = (Text) child.getFirstChild();
+            Assert.assertEquals("Fum", tn.getNodeValue());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testMapBeanSource() {
+        try {
+            Map<String, String> map = new TreeMap<>();
+            map.put("heads", "tails");
+            map.put("cats", "dogs");
+            map.put("flotsum", "jetsom");
+
+            DOMResult dr = getDOMResult();
+            transform(null, map, "map", dr, null);
+            Document d = (Document) dr.getNode();
+
+            debug(d);
+
+            Element root = d.getDocumentElement();
+            Assert.assertEquals("map", root.getNodeName());
+            NodeList nodes = root.getElementsByTagName("entry");
+            Assert.assertEquals(3, nodes.getLength());
+            Element entry = (Element) nodes.item(0);
+            Element key = (Element) entry.getFirstChild();
+            Text tn = (Text) key.getFirstChild();
+            Assert.assertEquals("cats", tn.getNodeValue());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testNestedArray() {
+        try {
+            int[][][] list = { { { 1, 2, 3 }, { 2, 3, 4 } }, { { 5, 6, 7 }, { 6, 7, 8 } } };
+
+            StringWriter sw = new StringWriter();
+            StreamResult sr = new StreamResult(sw);
+            transform(null, list, "array", sr, null);
+            sw.flush();
+
+            Assert.assertEquals(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?><array type=\"array\"><item type=\"array\"><item type=\"array\"><item>1</item><item>2</item><item>3</item></item><item type=\"array\"><item>2</item><item>3</item><item>4</item></item></item><item type=\"array\"><item type=\"array\"><item>5</item><item>6</item><item>7</item></item><item type=\"array\"><item>6</item><item>7</item><item>8</item></item></item></array>",
+                    sw.toString());
+        } catch (
+
+        Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testArrayGetterBeanSource() {
+        try {
+            Bean2 b2 = new Bean2();
+            String xsl = "<xsl:transform version='1.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'><xsl:output method='text'/>"
+                    + "<xsl:template match='item/text()'><xsl:value-of select='normalize-space(.)'/><xsl:value-of select='name(../..)'/></xsl:template></xsl:transform>";
+            StringWriter sw = new StringWriter();
+            Properties trans = new Properties();
+            trans.put(OutputKeys.METHOD, "text");
+
+            transform(new StreamSource(new StringReader(xsl)), b2, "bean2", new StreamResult(sw), trans);
+            sw.flush();
+
+            System.out.println(sw.toString());
+            Assert.assertEquals("onefishtwofishredfishbluefish", sw.toString());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testComplexBeanSource() {
+        try {
+            Bean3 b3 = new Bean3();
+            StringWriter sw = new StringWriter();
+            Properties trans = new Properties();
+            trans.put(OutputKeys.METHOD, "xml");
+            transform(null, b3, "bean3", new StreamResult(sw), trans);
+            sw.flush();
+            Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean3 type=\"bean\"><bean1 type=\"bean\"><name>example</name></bean1></bean3>",
+                    sw.toString());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testMapGetterBeanSource() {
+        try {
+            Bean4 b4 = new Bean4();
+            StringWriter sw = new StringWriter();
+            Properties trans = new Properties();
+            trans.put(OutputKeys.METHOD, "xml");
+            transform(null, b4, "bean4", new StreamResult(sw), trans);
+            sw.flush();
+            Assert.assertEquals(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean4 type=\"bean\"><info type=\"map\"><entry><key>A</key><value>1</value></entry><entry><key>B</key><value>2</value></entry></info></bean4>",
+                    sw.toString());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testSetBeanSource() {
+        try {
+            Bean5 b5 = new Bean5();
+            StringWriter sw = new StringWriter();
+            Properties trans = new Properties();
+            trans.put(OutputKeys.METHOD, "xml");
+            transform(null, b5, "bean5", new StreamResult(sw), trans);
+            sw.flush();
+            Assert.assertEquals(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean5 type=\"bean\"><names type=\"collection\"><item>Manny</item><item>Moe</item><item>Jack</item></names></bean5>",
+                    sw.toString());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testExcludeField() {
+        try {
+            Bean6 b6 = new Bean6();
+            StringWriter sw = new StringWriter();
+            Properties trans = new Properties();
+            trans.put(OutputKeys.METHOD, "xml");
+            transform(null, b6, "bean6", new StreamResult(sw), trans);
+            sw.flush();
+            Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean6 type=\"bean\"><name>Barbie</name></bean6>", sw.toString());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testSimpleField() {
+        try {
+            Bean7 b7 = new Bean7();
+            StringWriter sw = new StringWriter();
+            Properties trans = new Properties();
+            trans.put(OutputKeys.METHOD, "xml");
+            transform(null, b7, "bean7", new StreamResult(sw), trans);
+            sw.flush();
+            Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean7 type=\"bean\"><simpleton>Simple</simpleton></bean7>", sw.toString());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testPropertyOrder() {
+        try {
+            Bean8 b8 = new Bean8();
+            StringWriter sw = new StringWriter();
+            Properties trans = new Properties();
+            trans.put(OutputKeys.METHOD, "xml");
+            transform(null, b8, "bean8", new StreamResult(sw), trans);
+            sw.flush();
+            Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean8 type=\"bean\"><alpha>1</alpha><middle>2</middle><zeta>3</zeta></bean8>",
+                    sw.toString());
+
+            Assert.assertSame(BeanPlan.forClass(Bean8.class), BeanPlan.forClass(Bean8.class));
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testPrimitiveGetters() {
+        try {
+            Bean9 b9 = new Bean9();
+            StringWriter sw = new StringWriter();
+            Properties trans = new Properties();
+            trans.put(OutputKeys.METHOD, "xml");
+            transform(null, b9, "bean9", new StreamResult(sw), trans);
+            sw.flush();
+            Assert.assertEquals(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean9 type=\"bean\"><boolean>true</boolean><byte>-8</byte><char>c</char><double>2.5</double><float>1.25</float><int>42</int><long>9000000000</long><short>7</short></bean9>",
+                    sw.toString());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testUndeclaredThrowable() {
+        for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+            try {
+                BeanSource bs = new BeanSource(new ThrowableBean(), "bean");
+                bs.setEngine(engine);
+                bs.writeTo(new ByteArrayOutputStream());
+                Assert.fail("getter failure not reported with " + engine);
+            } catch (SAXException e) {
+                Throwable cause = e;
+                while ((cause != null) && !(cause instanceof UndeclaredThrowableException)) {
+                    cause = cause.getCause();
+                }
+                Assert.assertTrue(engine + " " + e, (cause != null) && "not an exception".equals(cause.getCause().getMessage()));
+            } catch (IOException e) {
+                Assert.fail(e.getClass().getName() + " " + e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testGetterFailureAccessors() throws Exception {
+        Assert.assertTrue(PropertyAccessor.forGetter(ThrowingBean.class.getMethod("getValue")) instanceof PropertyAccessor.MethodHandleAccessor);
+        Assert.assertTrue(PropertyAccessor.forGetter(HiddenThrowingBean.class.getMethod("getValue")) instanceof PropertyAccessor.ReflectionAccessor);
+
+        for (Throwable failure : new Throwable[] { new IllegalStateException("bad state"), new AssertionError("bad assertion") }) {
+            Object[] beans = { new ThrowingBean(failure), new HiddenThrowingBean(failure) };
+            for (Object bean : beans) {
+                try {
+                    new BeanSource(bean, "bean").writeTo(new ByteArrayOutputStream());
+                    Assert.fail("getter failure not reported for " + bean.getClass().getSimpleName());
+                } catch (SAXException e) {
+                    Exception cause = e.getException();
+                    Throwable reported = (failure instanceof Exception) ? cause : ((UndeclaredThrowableException) cause).getCause();
+                    Assert.assertTrue(bean.getClass().getSimpleName() + " " + reported, reported == failure);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNonPublicBean() {
+        try {
+            HiddenBean hb = new HiddenBean();
+            StringWriter sw = new StringWriter();
+            Properties trans = new Properties();
+            trans.put(OutputKeys.METHOD, "xml");
+            transform(null, hb, "hidden", new StreamResult(sw), trans);
+            sw.flush();
+            Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><hidden type=\"bean\"><count>3</count><name>hidden</name></hidden>", sw.toString());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testEngineProperty() {
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            System.setProperty(BeanSource.ENGINE_PROPERTY, "iterative");
+            Assert.assertEquals(BeanSource.Engine.ITERATIVE, new BeanSource(new Bean1(), "bean").getEngine());
+        } finally {
+            System.clearProperty(BeanSource.ENGINE_PROPERTY);
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void testCompiledEngine() {
+        try {
+            Object[] beans = { new Bean1(), new Bean2(), new Bean3(), new Bean5(), new Bean6(), new Bean7(), new Bean8(), new Bean9(), new HiddenBean() };
+            for (Object bean : beans) {
+                Assert.assertEquals(toXml(bean, BeanSource.Engine.INTERPRETED), toXml(bean, BeanSource.Engine.COMPILED));
+            }
+
+            Assert.assertNotNull(CompiledEmitter.forClass(Bean9.class));
+            Assert.assertNull(CompiledEmitter.forClass(HiddenBean.class));
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+
+        try {
+            BeanSource bs = new BeanSource(new FailingBean(), "bean");
+            bs.setEngine(BeanSource.Engine.COMPILED);
+            bs.writeTo(new ByteArrayOutputStream());
+            Assert.fail("getter failure not reported");
+        } catch (SAXException e) {
+            Assert.assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IllegalStateException);
+        } catch (IOException e) {
+            Assert.fail(e.getClass().getName() + " " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void testPrimitiveArrays() {
+        try {
+            Bean10 b10 = new Bean10();
+            StringWriter sw = new StringWriter();
+            transform(null, b10, "bean10", new StreamResult(sw), null);
+            Assert.assertEquals(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean10 type=\"bean\"><flags type=\"array\"><item>true</item><item>false</item></flags><samples type=\"array\"><item>1.5</item><item>-2.0</item></samples><times type=\"array\"><item>10</item><item>20</item><item>30</item></times></bean10>",
+                    sw.toString());
+
+            BeanSource bs = new BeanSource(b10, "bean10");
+            bs.setArrayEncoding(BeanSource.ArrayEncoding.LIST);
+            sw = new StringWriter();
+            TransformerFactory.newInstance().newTransformer().transform(bs, new StreamResult(sw));
+            Assert.assertEquals(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean10 type=\"bean\"><flags type=\"array\" encoding=\"list\">true false</flags><samples type=\"array\" encoding=\"list\">1.5 -2.0</samples><times type=\"array\" encoding=\"list\">10 20 30</times></bean10>",
+                    sw.toString());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testLargeArrayList() {
+        try {
+            long[] values = new long[100000];
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = i * 1000L;
+                if (i > 0) {
+                    expected.append(' ');
+                }
+                expected.append(values[i]);
+            }
+
+            BeanSource bs = new BeanSource(values, "values");
+            bs.setArrayEncoding(BeanSource.ArrayEncoding.LIST);
+            DOMResult dr = getDOMResult();
+            TransformerFactory.newInstance().newTransformer().transform(bs, dr);
+            Element root = ((Document) dr.getNode()).getDocumentElement();
+            Assert.assertEquals("list", root.getAttribute("encoding"));
+            Assert.assertEquals(expected.toString(), root.getTextContent());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testLongText() {
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < (TextBuffer.CHUNK_SIZE - 1); i++) {
+                sb.append((char) ('a' + (i % 26)));
+            }
+            sb.append("\uD83C\uDF70");
+            for (int i = 0; i < TextBuffer.CHUNK_SIZE; i++) {
+                sb.append((char) ('A' + (i % 26)));
+            }
+            final String text = sb.toString();
+            String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean type=\"bean\"><text>" + text.replace("\uD83C\uDF70", "&#127856;")
+                    + "</text></bean>";
+
+            BeanSource bs = new BeanSource(new TextBean(text), "bean");
+            final StringBuilder events = new StringBuilder();
+            XMLReader reader = bs.getXMLReader();
+            reader.setContentHandler(new DefaultHandler() {
+                @Override
+                public void characters(char[] ch, int start, int length) {
+                    Assert.assertTrue(String.valueOf(length), length <= TextBuffer.CHUNK_SIZE);
+                    Assert.assertFalse("chunk ends inside a surrogate pair", Character.isHighSurrogate(ch[(start + length) - 1]));
+                    events.append(ch, start, length);
+                }
+            });
+            reader.parse("");
+            Assert.assertEquals(text, events.toString());
+
+            StringWriter sw = new StringWriter();
+            TransformerFactory.newInstance().newTransformer().transform(bs, new StreamResult(sw));
+            Assert.assertEquals(expected, sw.toString());
+
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            bs.writeTo(actual);
+            Assert.assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), actual.toByteArray());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testPropertyAllocation() {
+        try {
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (!(threads instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+                return;
+            }
+            com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+            long threadId = Thread.currentThread().getId();
+
+            Bean9[] beans = new Bean9[1000];
+            for (int i = 0; i < beans.length; i++) {
+                beans[i] = new Bean9();
+            }
+            XMLReader reader = new BeanSource(beans, "beans").getXMLReader();
+            reader.setContentHandler(new DefaultHandler());
+
+            for (int i = 0; i < 20; i++) {
+                reader.parse("");
+            }
+
+            long fewest = Long.MAX_VALUE;
+            for (int i = 0; i < 5; i++) {
+                long before = allocations.getThreadAllocatedBytes(threadId);
+                reader.parse("");
+                fewest = Math.min(fewest, allocations.getThreadAllocatedBytes(threadId) - before);
+            }
+            long bytesPerProperty = fewest / (beans.length * 8);
+
+            Assert.assertTrue("allocated " + bytesPerProperty + " bytes per property", bytesPerProperty < 32);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testTemporalFormats() {
+        try {
+            Bean11 b11 = new Bean11();
+            String xml = toXml(b11, TemporalFormat.LOCALE);
+            Assert.assertTrue(xml.contains("<date>" + DateFormat.getDateTimeInstance().format(b11.getDate()) + "</date>"));
+            Assert.assertTrue(xml.contains("<instant type=\"bean\">"));
+
+            Assert.assertEquals(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean type=\"bean\"><date>2020-02-03T04:05:06.007Z</date><instant>2020-02-03T04:05:06.007Z</instant><local>2020-02-03T04:05:06</local><zoned>2020-02-03T04:05:06+01:00[Europe/Paris]</zoned></bean>",
+                    toXml(b11, TemporalFormat.ISO));
+
+            Assert.assertEquals(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean type=\"bean\"><date>1580702706007</date><instant>1580702706007</instant><local>2020-02-03T04:05:06</local><zoned>1580699106000</zoned></bean>",
+                    toXml(b11, TemporalFormat.EPOCH_MILLIS));
+
+            Assert.assertEquals(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean type=\"bean\"><date>2020/02/03</date><instant>2020/02/03</instant><local>2020/02/03</local><zoned>2020/02/03</zoned></bean>",
+                    toXml(b11, TemporalFormat.of(DateTimeFormatter.ofPattern("yyyy/MM/dd").withZone(ZoneOffset.UTC))));
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+
+        TimeZone defaultZone = TimeZone.getDefault();
+        try {
+            Bean11 b11 = new Bean11();
+            DateTimeFormatter pattern = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+            TemporalFormat zoneless = TemporalFormat.of(pattern);
+            for (String zone : new String[] { "UTC", "Asia/Tokyo" }) {
+                TimeZone.setDefault(TimeZone.getTimeZone(zone));
+                String xml = toXml(b11, TemporalFormat.LOCALE);
+                Assert.assertTrue(zone, xml.contains("<date>" + DateFormat.getDateTimeInstance().format(b11.getDate()) + "</date>"));
+
+                xml = toXml(java.util.Arrays.asList(b11.getDate()), zoneless);
+                Assert.assertTrue(zone, xml.contains("<item>" + pattern.format(b11.getDate().toInstant().atZone(ZoneId.of(zone))) + "</item>"));
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+
+        try {
+            BeanSource bs = new BeanSource(new Bean11(), "bean");
+            bs.setTemporalFormat(TemporalFormat.of(DateTimeFormatter.ofPattern("yyyy")));
+            bs.writeTo(new ByteArrayOutputStream());
+            Assert.fail("unsupported field not reported");
+        } catch (SAXException e) {
+            Throwable cause = e;
+            while ((cause != null) && !(cause instanceof DateTimeException)) {
+                cause = cause.getCause();
+            }
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("property instant"));
+            Assert.assertTrue(e.toString(), cause != null);
+        } catch (IOException e) {
+            Assert.fail(e.getClass().getName() + " " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void testIterativeEngineEvents() {
+        try {
+            Map<String, Object> map = new TreeMap<>();
+            map.put("bean", new Bean3());
+            map.put("list", new ArrayList<>(java.util.Arrays.asList(new Bean1(), null, "x")));
+            Object[] beans = { new Bean1(), new Bean2(), new Bean3(), new Bean4(), new Bean5(), new Bean6(), new Bean7(), new Bean9(), new Bean10(),
+                    new Object[] { new int[][] { { 1, 2 }, { 3 } }, map }, LinkedBean.chain(50) };
+            for (Object bean : beans) {
+                Assert.assertEquals(events(bean, BeanSource.Engine.INTERPRETED), events(bean, BeanSource.Engine.ITERATIVE));
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testIterativeEngineDepth() throws Exception {
+        final LinkedBean head = LinkedBean.chain(100000);
+        final int[] elements = new int[1];
+        final Exception[] failure = new Exception[1];
+
+        Thread t = new Thread(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BeanSource bs = new BeanSource(head, "node");
+                    bs.setEngine(BeanSource.Engine.ITERATIVE);
+                    XMLReader reader = bs.getXMLReader();
+                    reader.setContentHandler(new DefaultHandler() {
+                        @Override
+                        public void startElement(String uri, String localName, String qName, Attributes atts) {
+                            elements[0]++;
+                        }
+                    });
+                    reader.parse("");
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        }, "small-stack", 256 * 1024);
+        t.start();
+        t.join();
+
+        Assert.assertNull(failure[0]);
+        Assert.assertEquals(200001, elements[0]);
+    }
+
+    @Test
+    public void testSharedReferences() {
+        try {
+            Parent parent = new Parent();
+            BeanSource bs = new BeanSource(parent, "parent");
+            bs.setReferenceMode(BeanSource.ReferenceMode.SHARED);
+            StringWriter sw = new StringWriter();
+            TransformerFactory.newInstance().newTransformer().transform(bs, new StreamResult(sw));
+            Assert.assertEquals(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?><parent type=\"bean\" id=\"1\"><children type=\"collection\" id=\"2\"><item type=\"bean\" id=\"3\"><name>child</name><parent type=\"bean\" idref=\"1\"/></item><item type=\"bean\" idref=\"3\"/></children></parent>",
+                    sw.toString());
+
+            for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                bs.setEngine(engine);
+                sw = new StringWriter();
+                TransformerFactory.newInstance().newTransformer().transform(bs, new StreamResult(sw));
+                Assert.assertTrue(sw.toString().endsWith("<item type=\"bean\" idref=\"3\"/></children></parent>"));
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testSharedPrimitiveArrays() throws Exception {
+        for (BeanSource.ArrayEncoding encoding : BeanSource.ArrayEncoding.values()) {
+            for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                BeanSource bs = new BeanSource(new SharedArrayBean(), "bean");
+                bs.setReferenceMode(BeanSource.ReferenceMode.SHARED);
+                bs.setArrayEncoding(encoding);
+                bs.setEngine(engine);
+                StringWriter sw = new StringWriter();
+                TransformerFactory.newInstance().newTransformer().transform(bs, new StreamResult(sw));
+                String xml = sw.toString();
+                Assert.assertTrue(xml, xml.contains("<second type=\"array\" idref=\"2\"/>"));
+                Assert.assertEquals(xml, xml.indexOf(">3<"), xml.lastIndexOf(">3<"));
+                if (encoding == BeanSource.ArrayEncoding.LIST) {
+                    Assert.assertTrue(xml, xml.contains("<first type=\"array\" encoding=\"list\" id=\"2\">1 2 3</first>"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFailOnCycle() throws Exception {
+        for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+            BeanSource bs = new BeanSource(new Parent(), "parent");
+            bs.setReferenceMode(BeanSource.ReferenceMode.FAIL_ON_CYCLE);
+            bs.setEngine(engine);
+            XMLReader reader = bs.getXMLReader();
+            reader.setContentHandler(new DefaultHandler());
+            try {
+                reader.parse("");
+                Assert.fail("cycle not detected with " + engine);
+            } catch (SAXException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("Cycle detected at /parent/children/item/parent"));
+            }
+        }
+    }
+
+    @Test
+    public void testWriteTo() {
+        try {
+            Object[] beans = { new Bean1(), new Bean2(), new Bean3(), new Bean4(), new Bean5(), new Bean7(), new Bean9(), new Bean10(),
+                    new Bean11(), new Bean12(), LinkedBean.chain(3) };
+            for (Object bean : beans) {
+                BeanSource bs = new BeanSource(bean, "bean");
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                TransformerFactory.newInstance().newTransformer().transform(bs, new StreamResult(expected));
+
+                ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                bs.writeTo(actual);
+                Assert.assertArrayEquals(bean.getClass().getSimpleName(), expected.toByteArray(), actual.toByteArray());
+
+                actual = new ByteArrayOutputStream();
+                bs.writeTo(Channels.newChannel(actual));
+                Assert.assertArrayEquals(bean.getClass().getSimpleName(), expected.toByteArray(), actual.toByteArray());
+
+                StringWriter sw = new StringWriter();
+                bs.writeTo(sw);
+                Assert.assertEquals(bean.getClass().getSimpleName(), new String(expected.toByteArray(), StandardCharsets.UTF_8), sw.toString());
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testWriteToSurrogates() {
+        try {
+            for (String text : new String[] { "a\uDE00b", "a\uD83D\uDE00b", "a\uD83D" }) {
+                BeanSource bs = new BeanSource(new TextBean(text), "bean");
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                TransformerFactory.newInstance().newTransformer().transform(bs, new StreamResult(expected));
+
+                ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                bs.writeTo(actual);
+                Assert.assertArrayEquals(text, expected.toByteArray(), actual.toByteArray());
+            }
+            ByteArrayOutputStream lowSurrogate = new ByteArrayOutputStream();
+            new BeanSource(new TextBean("a\uDE00b"), "bean").writeTo(lowSurrogate);
+            Assert.assertTrue(lowSurrogate.toString("UTF-8").contains("<text>a&#56832;b</text>"));
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+
+        try {
+            new BeanSource(new TextBean("a\uD83Db"), "bean").writeTo(new ByteArrayOutputStream());
+            Assert.fail("unpaired high surrogate was written");
+        } catch (SAXException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("d83d 62"));
+        } catch (IOException e) {
+            Assert.fail(e.getClass().getName() + " " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void testWriteToFailingStream() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append('x');
+        }
+        for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+            BeanSource bs = new BeanSource(new NestedTextBean(new TextBean(text.toString())), "bean");
+            bs.setEngine(engine);
+            try {
+                bs.writeTo(new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throw new IOException("disk full");
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        throw new IOException("disk full");
+                    }
+                });
+                Assert.fail("stream failure not reported with " + engine);
+            } catch (IOException e) {
+                Assert.assertEquals(engine.name(), "disk full", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testStAXSource() {
+        try {
+            Object[] beans = { new Bean1(), new Bean2(), new Bean3(), new Bean4(), new Bean5(), new Bean7(), new Bean9(), new Bean10(),
+                    new Bean12(), LinkedBean.chain(3) };
+            for (Object bean : beans) {
+                StringWriter expected = new StringWriter();
+                TransformerFactory.newInstance().newTransformer().transform(new BeanSource(bean, "bean"), new StreamResult(expected));
+
+                StringWriter actual = new StringWriter();
+                TransformerFactory.newInstance().newTransformer().transform(new BeanStAXSource(bean, "bean"), new StreamResult(actual));
+                Assert.assertEquals(bean.getClass().getSimpleName(), expected.toString(), actual.toString());
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testStAXLazyGetters() {
+        try {
+            Bean13 bean = new Bean13();
+            XMLStreamReader reader = new BeanStAXSource(bean, "bean").getXMLStreamReader();
+            Assert.assertTrue(bean.calls.isEmpty());
+
+            Assert.assertEquals(XMLStreamConstants.START_ELEMENT, reader.nextTag());
+            Assert.assertEquals("bean", reader.getLocalName());
+            Assert.assertEquals("bean", reader.getAttributeValue(null, "type"));
+            Assert.assertEquals(XMLStreamConstants.START_ELEMENT, reader.nextTag());
+            Assert.assertEquals("first", reader.getLocalName());
+            Assert.assertEquals("1", reader.getElementText());
+            Assert.assertEquals(java.util.Arrays.asList("first"), bean.calls);
+
+            Assert.assertEquals(XMLStreamConstants.START_ELEMENT, reader.nextTag());
+            Assert.assertEquals("second", reader.getLocalName());
+            Assert.assertEquals(java.util.Arrays.asList("first", "second"), bean.calls);
+            reader.close();
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testSequenceSource() {
+        try {
+            String expected = toXml(java.util.Arrays.asList(new Bean1(), new Bean8()), BeanSource.Engine.INTERPRETED);
+            for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                final boolean[] closed = new boolean[1];
+                Stream<Object> beans = Stream.<Object> of(new Bean1(), new Bean8()).onClose(() -> closed[0] = true);
+                BeanSource bs = new BeanSequenceSource(beans, "bean");
+                bs.setEngine(engine);
+                StringWriter sw = new StringWriter();
+                TransformerFactory.newInstance().newTransformer().transform(bs, new StreamResult(sw));
+                Assert.assertEquals(engine.name(), expected, sw.toString());
+                Assert.assertTrue(engine.name(), closed[0]);
+            }
+
+            Assert.assertEquals(expected, toXml(java.util.Arrays.asList(new Bean1(), new Bean8()).iterator(), BeanSource.Engine.ITERATIVE));
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testSequenceProperties() {
+        try {
+            for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                Assert.assertEquals(
+                        "<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean type=\"bean\"><iterable type=\"collection\"><item>x</item></iterable><iterator type=\"collection\"><item>a</item><item>b</item></iterator><stream type=\"collection\"><item>1</item><item>2</item><item>3</item></stream></bean>",
+                        toXml(new Bean14(), engine));
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testSequenceClosedOnFailure() throws Exception {
+        for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+            final boolean[] closed = new boolean[1];
+            Stream<Object> beans = Stream.<Object> of("ok", "fail").map(v -> {
+                if ("fail".equals(v)) {
+                    throw new IllegalStateException("no more rows");
+                }
+                return v;
+            }).onClose(() -> closed[0] = true);
+            BeanSource bs = new BeanSequenceSource(beans, "rows");
+            bs.setEngine(engine);
+            try {
+                bs.writeTo(new ByteArrayOutputStream());
+                Assert.fail("failure not reported with " + engine);
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("no more rows", e.getMessage());
+            }
+            Assert.assertTrue(engine.name(), closed[0]);
+        }
+
+        final boolean[] closed = new boolean[1];
+        XMLStreamReader reader = new BeanStAXSource(new BeanSequenceSource(Stream.of(1, 2, 3).onClose(() -> closed[0] = true), "rows"))
+                .getXMLStreamReader();
+        Assert.assertEquals(XMLStreamConstants.START_ELEMENT, reader.nextTag());
+        Assert.assertEquals(XMLStreamConstants.START_ELEMENT, reader.nextTag());
+        Assert.assertFalse(closed[0]);
+        reader.close();
+        Assert.assertTrue(closed[0]);
+    }
+
+    @Test
+    public void testParallelWriteTo() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Object> beans = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                beans.add(((i % 3) == 0) ? new Bean12() : ((i % 3) == 1) ? new Bean9() : LinkedBean.chain(i % 7));
+            }
+            Object[] roots = { beans, beans.toArray(), new Bean1() };
+
+            for (Object root : roots) {
+                for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                    BeanSource bs = new BeanSource(root, "bean");
+                    bs.setEngine(engine);
+                    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                    bs.writeTo(expected);
+
+                    bs.setParallelExecutor(pool);
+                    bs.setParallelThreshold(100);
+                    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                    bs.writeTo(actual);
+                    Assert.assertArrayEquals(engine.name(), expected.toByteArray(), actual.toByteArray());
+
+                    StringWriter sw = new StringWriter();
+                    bs.writeTo(sw);
+                    Assert.assertEquals(engine.name(), new String(expected.toByteArray(), StandardCharsets.UTF_8), sw.toString());
+                }
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelWriteToFailure() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Object> beans = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                beans.add((i == 700) ? new FailingBean() : new Bean1());
+            }
+            BeanSource bs = new BeanSource(beans, "bean");
+            bs.setParallelExecutor(pool);
+            bs.setParallelThreshold(10);
+            bs.writeTo(new ByteArrayOutputStream());
+            Assert.fail("getter failure not reported");
+        } catch (SAXException e) {
+            Assert.assertTrue(String.valueOf(e.getException()), e.getException() instanceof IllegalStateException);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRecordIntrospection() {
+        try {
+            Point point = new Point(3, -4, "origin & co", true);
+            Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean type=\"bean\"/>", toXml(point, BeanSource.Introspection.GETTERS, BeanSource.Engine.INTERPRETED));
+            for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                Assert.assertEquals(engine.name(),
+                        "<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean type=\"bean\"><y>3</y><x>-4</x><label>origin &amp; co</label></bean>",
+                        toXml(point, BeanSource.Introspection.PROPERTIES, engine));
+            }
+            Assert.assertNotNull(CompiledEmitter.forClass(Point.class, BeanSource.Introspection.PROPERTIES));
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testIsGetters() {
+        try {
+            Bean15 b15 = new Bean15();
+            Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean type=\"bean\"><name>fifteen</name></bean>",
+                    toXml(b15, BeanSource.Introspection.GETTERS, BeanSource.Engine.INTERPRETED));
+            for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                Assert.assertEquals(engine.name(),
+                        "<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean type=\"bean\"><active>true</active><name>fifteen</name><ready>false</ready></bean>",
+                        toXml(b15, BeanSource.Introspection.PROPERTIES, engine));
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testFieldIntrospection() {
+        try {
+            FieldBean fb = new FieldBean();
+            Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean type=\"bean\"><label>from getter</label></bean>",
+                    toXml(fb, BeanSource.Introspection.PROPERTIES, BeanSource.Engine.INTERPRETED));
+            for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                Assert.assertEquals(engine.name(),
+                        "<?xml version=\"1.0\" encoding=\"UTF-8\"?><bean type=\"bean\"><count>7</count><hidden>annotated</hidden><label>from getter</label><parent>12</parent><point>Point[y=2, x=1, label=p, secret=true]</point><ratio>0.5</ratio></bean>",
+                        toXml(fb, BeanSource.Introspection.FIELDS, engine));
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    private List<String> events(Object bean, BeanSource.Engine engine) throws Exception {
+        final List<String> events = new ArrayList<>();
+        BeanSource bs = new BeanSource(bean, "bean");
+        bs.setEngine(engine);
+        XMLReader reader = bs.getXMLReader();
+        reader.setContentHandler(new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes atts) {
+                StringBuilder sb = new StringBuilder("start " + uri + " " + localName + " " + qName);
+                for (int i = 0; i < atts.getLength(); i++) {
+                    sb.append(' ').append(atts.getQName(i)).append('=').append(atts.getValue(i));
+                }
+                events.add(sb.toString());
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) {
+                events.add("end " + uri + " " + localName + " " + qName);
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                events.add("chars " + new String(ch, start, length));
+            }
+        });
+        reader.parse("");
+        return events;
+    }
+
+    private String toXml(Object bean, TemporalFormat format) throws TransformerException {
+        BeanSource bs = new BeanSource(bean, "bean");
+        bs.setTemporalFormat(format);
+        StringWriter sw = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(bs, new StreamResult(sw));
+        return sw.toString();
+    }
+
+    private String toXml(Object bean, BeanSource.Introspection introspection, BeanSource.Engine engine) throws TransformerException {
+        BeanSource bs = new BeanSource(bean, "bean");
+        bs.setIntrospection(introspection);
+        bs.setEngine(engine);
+        StringWriter sw = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(bs, new StreamResult(sw));
+        return sw.toString();
+    }
+
+    private String toXml(Object bean, BeanSource.Engine engine) throws TransformerException {
+        BeanSource bs = new BeanSource(bean, "bean");
+        bs.setEngine(engine);
+        StringWriter sw = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(bs, new StreamResult(sw));
+        return sw.toString();
+    }
+
+    private void transform(Source styleSheet, Object bean, String name, Result result, Properties transformProps)
+            throws TransformerConfigurationException, TransformerException {
+        TransformerFactory tf = TransformerFactory.newInstance();
+        Transformer t;
+
+        if (styleSheet == null) {
+            t = tf.newTransformer();
+        } else {
+            t = tf.newTransformer(styleSheet);
+        }
+
+        if (transformProps != null) {
+            t.setOutputProperties(transformProps);
+        }
+        t.transform(new BeanSource(bean, name), result);
+    }
+
+    private DOMResult getDOMResult() throws ParserConfigurationException {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        DocumentBuilder db = dbf.newDocumentBuilder();
+        Document d = db.newDocument();
+        return new DOMResult(d);
+    }
+
+    private void debug(Document d) {
+        try {
+            TransformerFactory tf = TransformerFactory.newInstance();
+            Transformer t = tf.newTransformer();
+
+            t.setOutputProperty(OutputKeys.METHOD, "xml");
+            t.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            t.setOutputProperty(OutputKeys.INDENT, "yes");
+            t.setOutputProperty("{http://xml.apache.org/xalan}indent-amount", "4");
+
+            t.transform(new DOMSource(d), new StreamResult(System.out));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static class Bean1 {
+        public String getName() {
+            return "example";
+        }
+    }
+
+    public static class Bean2 {
+        public String[] getFish() {
+            return new String[] { "one", "two", "red", "blue" };
+        }
+    }
+
+    public static class Bean3 {
+        public Bean1 getBean1() {
+            return new Bean1();
+        }
+    }
+
+    public static class Bean4 {
+        public Map<String, Integer> getInfo() {
+            Map<String, Integer> m = new HashMap<>();
+            m.put("A", Integer.valueOf(1));
+            m.put("B", Integer.valueOf(2));
+            return m;
+        }
+    }
+
+    public static class Bean5 {
+        public Set<String> getNames() {
+            Set<String> s = new LinkedHashSet<>();
+            s.add("Manny");
+            s.add("Moe");
+            s.add("Jack");
+            return s;
+        }
+    }
+
+    public static class Bean6 {
+        public String getName() {
+            return "Barbie";
+        }
+
+        @BeanSourceProperty(BeanSourceProperty.Type.EXCLUDE)
+        public int getAge() {
+            return 22;
+        }
+
+        @Override
+        public String toString() {
+            return "Simple";
+        }
+    }
+
+    public static class Bean7 {
+        @BeanSourceProperty(BeanSourceProperty.Type.SIMPLE)
+        public Object getSimpleton() {
+            return new Bean6();
+        }
+    }
+
+    public static class Bean8 {
+        public int getZeta() {
+            return 3;
+        }
+
+        public int getAlpha() {
+            return 1;
+        }
+
+        public int getMiddle() {
+            return 2;
+        }
+    }
+
+    public static class Bean9 {
+        public boolean getBoolean() {
+            return true;
+        }
+
+        public byte getByte() {
+            return -8;
+        }
+
+        public char getChar() {
+            return 'c';
+        }
+
+        public short getShort() {
+            return 7;
+        }
+
+        public int getInt() {
+            return 42;
+        }
+
+        public long getLong() {
+            return 9000000000L;
+        }
+
+        public float getFloat() {
+            return 1.25f;
+        }
+
+        public double getDouble() {
+            return 2.5;
+        }
+    }
+
+    private static class HiddenBean {
+        public String getName() {
+            return "hidden";
+        }
+
+        public int getCount() {
+            return 3;
+        }
+    }
+
+    public static class Bean10 {
+        public double[] getSamples() {
+            return new double[] { 1.5, -2.0 };
+        }
+
+        public long[] getTimes() {
+            return new long[] { 10, 20, 30 };
+        }
+
+        public boolean[] getFlags() {
+            return new boolean[] { true, false };
+        }
+    }
+
+    public static class Bean11 {
+        private static final Instant INSTANT = Instant.parse("2020-02-03T04:05:06.007Z");
+
+        public Date getDate() {
+            return new Date(INSTANT.toEpochMilli());
+        }
+
+        public Instant getInstant() {
+            return INSTANT;
+        }
+
+        public LocalDateTime getLocal() {
+            return LocalDateTime.of(2020, 2, 3, 4, 5, 6);
+        }
+
+        public ZonedDateTime getZoned() {
+            return ZonedDateTime.of(getLocal(), ZoneId.of("Europe/Paris"));
+        }
+    }
+
+    public static class Bean12 {
+        public String getMarkup() {
+            return "<a href=\"x\">&amp;</a> 'q' \t\r\n\u0001\u007f\u0085 caf\u00e9 \u4e2d \ud83d\ude00";
+        }
+
+        public String getLong() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 5000; i++) {
+                sb.append("\u00e9<\ud83d\ude00");
+            }
+            return sb.toString();
+        }
+
+        public String getNote() {
+            return null;
+        }
+
+        public String getEmpty() {
+            return "";
+        }
+    }
+
+    public static class Bean13 {
+        private final List<String> calls = new ArrayList<>();
+
+        public int getFirst() {
+            calls.add("first");
+            return 1;
+        }
+
+        public Bean1 getSecond() {
+            calls.add("second");
+            return new Bean1();
+        }
+
+        public String[] getThird() {
+            calls.add("third");
+            return new String[] { "expensive" };
+        }
+    }
+
+    public static class Bean14 {
+        public Iterator<String> getIterator() {
+            return java.util.Arrays.asList("a", "b").iterator();
+        }
+
+        public Stream<Integer> getStream() {
+            return Stream.of(1, 2, 3);
+        }
+
+        public Iterable<String> getIterable() {
+            return () -> java.util.Collections.singletonList("x").iterator();
+        }
+    }
+
+    public static class TextBean {
+        private final String text;
+
+        public TextBean(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    public static class NestedTextBean {
+        private final TextBean inner;
+
+        public NestedTextBean(TextBean inner) {
+            this.inner = inner;
+        }
+
+        public TextBean getInner() {
+            return inner;
+        }
+    }
+
+    public static class ThrowingBean {
+        private final Throwable failure;
+
+        public ThrowingBean(Throwable failure) {
+            this.failure = failure;
+        }
+
+        public String getValue() {
+            return ThrowableBean.<RuntimeException> sneakyThrow(failure);
+        }
+    }
+
+    private static class HiddenThrowingBean {
+        private final Throwable failure;
+
+        HiddenThrowingBean(Throwable failure) {
+            this.failure = failure;
+        }
+
+        public String getValue() {
+            return ThrowableBean.<RuntimeException> sneakyThrow(failure);
+        }
+    }
+
+    public static class ThrowableBean {
+        public String getName() {
+            return ThrowableBean.<RuntimeException> sneakyThrow(new Throwable("not an exception"));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T extends Throwable> String sneakyThrow(Throwable t) throws T {
+            throw (T) t;
+        }
+    }
+
+    public static class FailingBean {
+        public String getName() {
+            throw new IllegalStateException("unreadable");
+        }
+    }
+
+    public static class LinkedBean {
+        private int value;
+        private LinkedBean next;
+
+        public static LinkedBean chain(int length) {
+            LinkedBean head = null;
+            for (int i = length; i > 0; i--) {
+                LinkedBean n = new LinkedBean();
+                n.value = i;
+                n.next = head;
+                head = n;
+            }
+            return head;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        public LinkedBean getNext() {
+            return next;
+        }
+    }
+
+    public static class Parent {
+        private final Child child = new Child(this);
+
+        public List<Child> getChildren() {
+            return java.util.Arrays.asList(child, child);
+        }
+    }
+
+    public static class SharedArrayBean {
+        private final int[] values = { 1, 2, 3 };
+
+        public int[] getFirst() {
+            return values;
+        }
+
+        public int[] getSecond() {
+            return values;
+        }
+    }
+
+    public static class Child {
+        private final Parent parent;
+
+        public Child(Parent p) {
+            parent = p;
+        }
+
+        public String getName() {
+            return "child";
+        }
+
+        public Parent getParent() {
+            return parent;
+        }
+    }
+
+    public record Point(int y, int x, String label, @BeanSourceProperty(BeanSourceProperty.Type.EXCLUDE) boolean secret) {
+    }
+
+    public static class Bean15 {
+        public String getName() {
+            return "fifteen";
+        }
+
+        public boolean isActive() {
+            return true;
+        }
+
+        public Boolean isReady() {
+            return Boolean.FALSE;
+        }
+
+        public String isNotABoolean() {
+            return "not a property";
+        }
+    }
+
+    public static class FieldParent {
+        public long parent = 12;
+    }
+
+    public static class FieldBean extends FieldParent {
+        public int count = 7;
+        public final double ratio = 0.5;
+        public String label = "from field";
+        @BeanSourceProperty(BeanSourceProperty.Type.SIMPLE)
+        public Point point = new Point(2, 1, "p", true);
+        @BeanSourceProperty
+        private String hidden = "annotated";
+        @BeanSourceProperty(BeanSourceProperty.Type.EXCLUDE)
+        public String excluded = "excluded";
+        private String unannotated = "private";
+        public static String shared = "static";
+
+        public String getLabel() {
+            return "from getter";
+        }
+
+        @Override
+        public String toString() {
+            return hidden + unannotated;
+        }
+    }
+}
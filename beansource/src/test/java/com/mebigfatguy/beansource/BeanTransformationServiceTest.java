@@ -0,0 +1,268 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.Result;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BeanTransformationServiceTest {
+
+    @Test
+    public void testBoundedConcurrency() {
+        try (BeanTransformationService service = new BeanTransformationService(new BeanTransformer(TransformerFactory.newInstance(), 4, 2), 2, 16)) {
+            Gauge gauge = new Gauge();
+            List<CompletableFuture<Result>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(service.submit(new BeanSource(new Slow(gauge, 3, 10, null), "slow"), new StreamResult(new StringWriter())));
+            }
+            for (CompletableFuture<Result> future : futures) {
+                String xml = ((StreamResult) future.get(10, TimeUnit.SECONDS)).getWriter().toString();
+                Assert.assertTrue(xml, xml.endsWith("<slow type=\"bean\"><steps type=\"collection\"><item type=\"bean\"><value>0</value></item>"
+                        + "<item type=\"bean\"><value>1</value></item><item type=\"bean\"><value>2</value></item></steps></slow>"));
+            }
+            Assert.assertEquals(24, gauge.calls.get());
+            Assert.assertTrue(String.valueOf(gauge.peak.get()), gauge.peak.get() <= 2);
+            Assert.assertEquals(0, service.getActiveJobs());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testCancellation() {
+        try (BeanTransformationService service = new BeanTransformationService()) {
+            Gauge gauge = new Gauge();
+            CountDownLatch started = new CountDownLatch(1);
+            CompletableFuture<Result> future = service.submit(new BeanSource(new Slow(gauge, 1000, 5, started), "slow"),
+                    new StreamResult(new StringWriter()));
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(future.cancel(true));
+
+            awaitIdle(service);
+            int calls = gauge.calls.get();
+            Thread.sleep(50);
+            Assert.assertEquals(calls, gauge.calls.get());
+            Assert.assertTrue(String.valueOf(calls), calls < 1000);
+            Assert.assertTrue(future.isCancelled());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testTimeout() {
+        try (BeanTransformationService service = new BeanTransformationService()) {
+            Gauge gauge = new Gauge();
+            CompletableFuture<Result> future = service.submit(null, new BeanSource(new Slow(gauge, 1000, 5, null), "slow"),
+                    new StreamResult(new StringWriter()), 50, TimeUnit.MILLISECONDS);
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                Assert.fail("transformation did not time out");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof TimeoutException);
+            }
+
+            awaitIdle(service);
+            Assert.assertTrue(String.valueOf(gauge.calls.get()), gauge.calls.get() < 1000);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testBackpressure() {
+        try (BeanTransformationService service = new BeanTransformationService(new BeanTransformer(TransformerFactory.newInstance(), 4, 1), 1, 1)) {
+            final CountDownLatch release = new CountDownLatch(1);
+            final Gauge gauge = new Gauge();
+            final CountDownLatch blocked = new CountDownLatch(1);
+            service.submit(new BeanSource(new Blocked(blocked, release), "blocked"), new StreamResult(new StringWriter()));
+            Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+            service.submit(new BeanSource(new Slow(gauge, 1, 0, null), "slow"), new StreamResult(new StringWriter()));
+
+            final CountDownLatch submitted = new CountDownLatch(1);
+            Thread producer = new Thread(() -> {
+                try {
+                    service.submit(new BeanSource(new Slow(gauge, 1, 0, null), "slow"), new StreamResult(new StringWriter()));
+                    submitted.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producer.start();
+
+            Assert.assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+            Assert.assertEquals(2, service.getActiveJobs());
+            release.countDown();
+            Assert.assertTrue(submitted.await(10, TimeUnit.SECONDS));
+            awaitIdle(service);
+            Assert.assertEquals(2, gauge.calls.get());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testGetterError() {
+        try (BeanTransformationService service = new BeanTransformationService()) {
+            CompletableFuture<Result> future = service.submit(new BeanSource(new Failing(), "failing"), new StreamResult(new StringWriter()));
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                Assert.fail("getter error not reported");
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                while ((t != null) && !(t instanceof AssertionError)) {
+                    t = t.getCause();
+                }
+                Assert.assertTrue(String.valueOf(e.getCause()), t != null);
+                Assert.assertEquals("getter failed", t.getMessage());
+            }
+            awaitIdle(service);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testTimeoutWhileQueued() {
+        try (BeanTransformationService service = new BeanTransformationService(new BeanTransformer(TransformerFactory.newInstance(), 4, 1), 1, 4)) {
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch blocked = new CountDownLatch(1);
+            CompletableFuture<Result> running = service.submit(new BeanSource(new Blocked(blocked, release), "blocked"),
+                    new StreamResult(new StringWriter()));
+            Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+            Gauge gauge = new Gauge();
+            CompletableFuture<Result> queued = service.submit(null, new BeanSource(new Slow(gauge, 1, 0, null), "slow"),
+                    new StreamResult(new StringWriter()), 50, TimeUnit.MILLISECONDS);
+            try {
+                queued.get(10, TimeUnit.SECONDS);
+                Assert.fail("queued transformation did not time out");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof TimeoutException);
+            }
+
+            for (int i = 0; (i < 500) && (service.getActiveJobs() > 1); i++) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(1, service.getActiveJobs());
+            Assert.assertFalse(running.isDone());
+
+            release.countDown();
+            running.get(10, TimeUnit.SECONDS);
+            awaitIdle(service);
+            Assert.assertEquals(0, gauge.calls.get());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    private static void awaitIdle(BeanTransformationService service) throws InterruptedException {
+        for (int i = 0; (i < 500) && (service.getActiveJobs() > 0); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, service.getActiveJobs());
+    }
+
+    static final class Gauge {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger current = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+    }
+
+    public static class Slow {
+        private final List<Step> steps = new ArrayList<>();
+
+        Slow(Gauge gauge, int count, long millis, CountDownLatch started) {
+            for (int i = 0; i < count; i++) {
+                steps.add(new Step(gauge, i, millis, started));
+            }
+        }
+
+        public List<Step> getSteps() {
+            return steps;
+        }
+    }
+
+    public static class Step {
+        private final Gauge gauge;
+        private final int value;
+        private final long millis;
+        private final CountDownLatch started;
+
+        Step(Gauge gauge, int value, long millis, CountDownLatch started) {
+            this.gauge = gauge;
+            this.value = value;
+            this.millis = millis;
+            this.started = started;
+        }
+
+        public int getValue() throws InterruptedException {
+            gauge.calls.incrementAndGet();
+            gauge.peak.accumulateAndGet(gauge.current.incrementAndGet(), Math::max);
+            try {
+                if (started != null) {
+                    started.countDown();
+                }
+                Thread.sleep(millis);
+                return value;
+            } finally {
+                gauge.current.decrementAndGet();
+            }
+        }
+    }
+
+    public static class Blocked {
+        private final CountDownLatch blocked;
+        private final CountDownLatch release;
+
+        Blocked(CountDownLatch blocked, CountDownLatch release) {
+            this.blocked = blocked;
+            this.release = release;
+        }
+
+        public String getValue() throws InterruptedException {
+            blocked.countDown();
+            release.await();
+            return "released";
+        }
+    }
+
+    public static class Failing {
+        public String getValue() {
+            throw new AssertionError("getter failed");
+        }
+    }
+}
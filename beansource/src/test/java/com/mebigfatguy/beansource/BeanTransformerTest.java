@@ -0,0 +1,149 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BeanTransformerTest {
+
+    private static final String ITEMS_XSL = "<xsl:transform version='1.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'><xsl:output method='text'/>"
+            + "<xsl:template match='item/text()'><xsl:value-of select='.'/></xsl:template></xsl:transform>";
+    private static final String NAME_XSL = "<xsl:transform version='1.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'><xsl:output method='text'/>"
+            + "<xsl:template match='/'><xsl:value-of select='name(*)'/></xsl:template></xsl:transform>";
+
+    @Test
+    public void testIdentityTransform() {
+        try {
+            BeanTransformer bt = new BeanTransformer();
+            for (int i = 0; i < 3; i++) {
+                StringWriter expected = new StringWriter();
+                TransformerFactory.newInstance().newTransformer().transform(new BeanSource(new BeanSourceTest.Bean8(), "bean"), new StreamResult(expected));
+
+                StringWriter sw = new StringWriter();
+                bt.transform(new BeanSourceTest.Bean8(), "bean", new StreamResult(sw));
+                Assert.assertEquals(expected.toString(), sw.toString());
+            }
+            Assert.assertEquals(0, bt.getPoolWaits());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testStylesheetIsCompiledOnce() {
+        try {
+            BeanTransformer bt = new BeanTransformer();
+            StreamSource xsl = new StreamSource(new StringReader(ITEMS_XSL), "test:items.xsl");
+            for (int i = 0; i < 3; i++) {
+                StringWriter sw = new StringWriter();
+                bt.transform(xsl, new BeanSource(new BeanSourceTest.Bean2(), "bean2"), new StreamResult(sw));
+                Assert.assertEquals("onetworedblue", sw.toString());
+            }
+
+            Assert.assertEquals(1, bt.getCacheMisses());
+            Assert.assertEquals(2, bt.getCacheHits());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        try {
+            BeanTransformer bt = new BeanTransformer(TransformerFactory.newInstance(), 1, 1);
+            transformName(bt, "test:a.xsl");
+            transformName(bt, "test:b.xsl");
+            Assert.assertEquals(1, bt.getCacheEvictions());
+            Assert.assertEquals("bean", transformName(bt, "test:a.xsl"));
+            Assert.assertEquals(3, bt.getCacheMisses());
+
+            bt.invalidate("test:a.xsl");
+            transformName(bt, "test:a.xsl");
+            Assert.assertEquals(4, bt.getCacheMisses());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testPoolWaits() throws Exception {
+        final BeanTransformer bt = new BeanTransformer(TransformerFactory.newInstance(), 1, 1);
+        final SlowBean slow = new SlowBean();
+        Thread first = new Thread(() -> {
+            try {
+                bt.transform(slow, "slow", new StreamResult(new StringWriter()));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        first.start();
+        Assert.assertTrue(slow.started.await(10, TimeUnit.SECONDS));
+
+        Thread second = new Thread(() -> {
+            try {
+                bt.transform(new BeanSourceTest.Bean1(), "bean", new StreamResult(new StringWriter()));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        second.start();
+        while (bt.getPoolWaits() == 0) {
+            Thread.sleep(10);
+        }
+
+        slow.release.countDown();
+        first.join();
+        second.join();
+        Assert.assertEquals(1, bt.getPoolWaits());
+        Assert.assertTrue(bt.getPoolWaitNanos() > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStylesheetNeedsSystemId() throws Exception {
+        new BeanTransformer().transform(new StreamSource(new StringReader(NAME_XSL)), new BeanSource(new BeanSourceTest.Bean1(), "bean"),
+                new StreamResult(new StringWriter()));
+    }
+
+    private static String transformName(BeanTransformer bt, String systemId) throws Exception {
+        StringWriter sw = new StringWriter();
+        bt.transform(new StreamSource(new StringReader(NAME_XSL), systemId), new BeanSource(new BeanSourceTest.Bean1(), "bean"), new StreamResult(sw));
+        return sw.toString();
+    }
+
+    public static class SlowBean {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        public String getName() throws InterruptedException {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return "slow";
+        }
+    }
+}
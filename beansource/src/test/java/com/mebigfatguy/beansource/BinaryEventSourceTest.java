@@ -0,0 +1,242 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+public class BinaryEventSourceTest {
+
+    @Test
+    public void testReplay() {
+        try {
+            for (BeanSource.ReferenceMode mode : BeanSource.ReferenceMode.values()) {
+                BeanSource bs = new BeanSource(new Catalog(), "catalog");
+                bs.setReferenceMode(mode);
+                ByteArrayOutputStream recording = new ByteArrayOutputStream();
+                bs.writeEventsTo(Channels.newChannel(recording));
+
+                BinaryEventSource source = new BinaryEventSource(ByteBuffer.wrap(recording.toByteArray()));
+                Assert.assertEquals(mode.name(), events(bs), events(source));
+                Assert.assertEquals(mode.name(), toXml(bs), toXml(source));
+                Assert.assertEquals(mode.name(), toXml(bs), toXml(source));
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testCompactness() {
+        try {
+            List<Catalog> catalogs = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                catalogs.add(new Catalog());
+            }
+            BeanSource bs = new BeanSource(catalogs, "catalogs");
+            ByteArrayOutputStream xml = new ByteArrayOutputStream();
+            bs.writeTo(xml);
+            ByteArrayOutputStream recording = new ByteArrayOutputStream();
+            bs.writeEventsTo(Channels.newChannel(recording));
+
+            Assert.assertTrue(recording.size() + " >= " + ((xml.size() * 2) / 3), recording.size() < ((xml.size() * 2) / 3));
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testMappedFile() {
+        Path file = null;
+        try {
+            file = Files.createTempFile("beansource", ".events");
+            BeanSource bs = new BeanSource(new Catalog(), "catalog");
+            try (FileChannel fc = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                bs.writeEventsTo(fc);
+            }
+
+            String xsl = "<xsl:transform version='1.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'><xsl:output method='text'/>"
+                    + "<xsl:template match='/'><xsl:value-of select='sum(catalog/prices/item)'/>:<xsl:value-of select='catalog/name'/></xsl:template>"
+                    + "</xsl:transform>";
+            StringWriter sw = new StringWriter();
+            TransformerFactory.newInstance().newTransformer(new StreamSource(new StringReader(xsl))).transform(BinaryEventSource.map(file),
+                    new StreamResult(sw));
+            Assert.assertEquals("-3.5:caf\u00e9 & \ud83c\udf70", sw.toString());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        } finally {
+            if (file != null) {
+                file.toFile().delete();
+            }
+        }
+    }
+
+    @Test
+    public void testRecordIntoBuffer() throws Exception {
+        BeanSource bs = new BeanSource(new Catalog(), "catalog");
+        ByteBuffer target = ByteBuffer.allocateDirect(4096);
+        XMLReader reader = bs.getXMLReader();
+        reader.setContentHandler(new BinaryEventRecorder(target));
+        reader.parse("");
+        target.flip();
+        Assert.assertEquals(toXml(bs), toXml(new BinaryEventSource(target)));
+
+        reader.setContentHandler(new BinaryEventRecorder(ByteBuffer.allocate(32)));
+        try {
+            reader.parse("");
+            Assert.fail("full buffer not reported");
+        } catch (SAXException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("The event buffer is full"));
+        }
+    }
+
+    @Test
+    public void testRecorderReuse() throws Exception {
+        BeanSource bs = new BeanSource(new Catalog(), "catalog");
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        XMLReader reader = bs.getXMLReader();
+        reader.setContentHandler(new BinaryEventRecorder(recording));
+        reader.parse("");
+        int firstSize = recording.size();
+        reader.parse("");
+
+        byte[] bytes = recording.toByteArray();
+        Assert.assertEquals(firstSize * 2, bytes.length);
+        Assert.assertEquals(toXml(bs), toXml(new BinaryEventSource(ByteBuffer.wrap(bytes, 0, firstSize))));
+        Assert.assertEquals(toXml(bs), toXml(new BinaryEventSource(ByteBuffer.wrap(Arrays.copyOfRange(bytes, firstSize, bytes.length)))));
+    }
+
+    @Test
+    public void testTruncatedRecording() throws Exception {
+        ByteArrayOutputStream recording = new ByteArrayOutputStream();
+        new BeanSource(new Catalog(), "catalog").writeEventsTo(Channels.newChannel(recording));
+        byte[] bytes = recording.toByteArray();
+
+        try {
+            toXml(new BinaryEventSource(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length / 2))));
+            Assert.fail("truncated recording not reported");
+        } catch (Exception e) {
+            Assert.assertTrue(String.valueOf(e.getMessage()), String.valueOf(e.getMessage()).contains("truncated"));
+        }
+
+        try {
+            toXml(new BinaryEventSource(ByteBuffer.wrap("<xml/>".getBytes("UTF-8"))));
+            Assert.fail("xml replayed as a recording");
+        } catch (Exception e) {
+            Assert.assertTrue(String.valueOf(e.getMessage()), String.valueOf(e.getMessage()).contains("Not a recorded event stream"));
+        }
+    }
+
+    private static String toXml(Source source) throws Exception {
+        StringWriter sw = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(source, new StreamResult(sw));
+        return sw.toString();
+    }
+
+    private static List<String> events(Object source) throws Exception {
+        final List<String> events = new ArrayList<>();
+        XMLReader reader = (source instanceof BeanSource) ? ((BeanSource) source).getXMLReader() : ((BinaryEventSource) source).getXMLReader();
+        reader.setContentHandler(new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes atts) {
+                StringBuilder sb = new StringBuilder("start " + uri + " " + localName + " " + qName);
+                for (int i = 0; i < atts.getLength(); i++) {
+                    sb.append(' ').append(atts.getURI(i)).append(':').append(atts.getLocalName(i)).append(':').append(atts.getQName(i)).append('=')
+                            .append(atts.getValue(i));
+                }
+                events.add(sb.toString());
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) {
+                events.add("end " + uri + " " + localName + " " + qName);
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                events.add("chars " + new String(ch, start, length));
+            }
+        });
+        reader.parse("");
+        return events;
+    }
+
+    public static class Catalog {
+        private final Map<String, Object> attributes = new LinkedHashMap<>();
+        private final List<String> shared = Arrays.asList("one", "two");
+
+        public Catalog() {
+            attributes.put("zero", "-0");
+            attributes.put("padded", "007");
+            attributes.put("big", Long.valueOf(Long.MIN_VALUE));
+            attributes.put("small", Integer.valueOf(-12));
+            attributes.put("exponent", Double.valueOf(1.0E-10));
+            attributes.put("minus", "-");
+            attributes.put("empty", "");
+        }
+
+        public String getName() {
+            return "caf\u00e9 & \ud83c\udf70";
+        }
+
+        public double[] getPrices() {
+            return new double[] { 1.25, -4.75, 0.0 };
+        }
+
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        public List<String> getFirst() {
+            return shared;
+        }
+
+        public List<String> getSecond() {
+            return shared;
+        }
+
+        public char getSeparator() {
+            return '\t';
+        }
+    }
+}
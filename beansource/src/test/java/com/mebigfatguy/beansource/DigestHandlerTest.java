@@ -0,0 +1,245 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+public class DigestHandlerTest {
+
+    @Test
+    public void testDigest() {
+        try {
+            DigestHandler whole = new DigestHandler();
+            whole.startDocument();
+            whole.startElement("", "", "a", AttributesAdapter.EMPTY);
+            whole.characters("bc".toCharArray(), 0, 2);
+            whole.endElement("", "", "a");
+            whole.endDocument();
+
+            DigestHandler split = new DigestHandler();
+            split.startDocument();
+            split.startElement("", "", "a", AttributesAdapter.EMPTY);
+            split.characters("xbc".toCharArray(), 1, 1);
+            split.characters("c".toCharArray(), 0, 0);
+            split.characters("c".toCharArray(), 0, 1);
+            split.endElement("", "", "a");
+            split.endDocument();
+            Assert.assertArrayEquals(whole.getDigest(), split.getDigest());
+            Assert.assertEquals(whole.getETag(), split.getETag());
+            Assert.assertTrue(whole.getETag(), whole.getETag().matches("\"[A-Za-z0-9_-]{43}\""));
+
+            ByteBuffer framed = ByteBuffer.allocate(33);
+            framed.put((byte) 1).putLong(1).putChar('a').putLong(0);
+            framed.put((byte) 3).putLong(2).putChar('b').putChar('c');
+            framed.put((byte) 2);
+            Assert.assertArrayEquals(MessageDigest.getInstance(DigestHandler.DEFAULT_ALGORITHM).digest(framed.array()), whole.getDigest());
+
+            DigestHandler shifted = new DigestHandler();
+            shifted.startDocument();
+            shifted.startElement("", "", "ab", AttributesAdapter.EMPTY);
+            shifted.characters("c".toCharArray(), 0, 1);
+            shifted.endElement("", "", "ab");
+            shifted.endDocument();
+            Assert.assertNotEquals(whole.getETag(), shifted.getETag());
+
+            DigestHandler attributes = new DigestHandler();
+            attributes.startDocument();
+            attributes.startElement("", "", "a", AttributesAdapter.of(new Attribute("", "", "b", "c")));
+            attributes.endElement("", "", "a");
+            attributes.endDocument();
+            Assert.assertNotEquals(whole.getETag(), attributes.getETag());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testCanonicalOrder() {
+        try {
+            Holder first = new Holder(new HashSet<>(), new HashMap<>());
+            Holder second = new Holder(new HashSet<>(512), new HashMap<>(512));
+            List<String> names = Arrays.asList("pear", "apple", "fig", "kiwi", "date");
+            for (int i = 0; i < names.size(); i++) {
+                first.names.add(names.get(i));
+                second.names.add(names.get(names.size() - 1 - i));
+                first.counts.put(Integer.valueOf(i * 37), names.get(i));
+                second.counts.put(Integer.valueOf((names.size() - 1 - i) * 37), names.get(names.size() - 1 - i));
+                first.parts.add(new Part(names.get(i)));
+                second.parts.add(new Part(names.get(names.size() - 1 - i)));
+            }
+            first.mixed.addAll(Arrays.asList("a", Integer.valueOf(1), null, new Part("x")));
+            second.mixed.addAll(Arrays.asList(new Part("x"), null, Integer.valueOf(1), "a"));
+
+            for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                BeanSource bs = new BeanSource(first, "holder");
+                bs.setCanonical(true);
+                bs.setEngine(engine);
+                String xml = toXml(bs);
+                Assert.assertTrue(xml, xml.contains("<names type=\"collection\"><item>apple</item><item>date</item><item>fig</item><item>kiwi</item>"
+                        + "<item>pear</item></names>"));
+                Assert.assertTrue(xml, xml.contains("<counts type=\"map\"><entry><key>0</key><value>pear</value></entry><entry><key>37</key>"));
+
+                BeanSource other = new BeanSource(second, "holder");
+                other.setCanonical(true);
+                other.setEngine(engine);
+                Assert.assertEquals(engine.name(), xml, toXml(other));
+                Assert.assertEquals(engine.name(), bs.fingerprint(), other.fingerprint());
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testCanonicalOrderFailure() throws Exception {
+        Holder holder = new Holder(new HashSet<>(), new HashMap<>());
+        holder.mixed.add(new Unordered(1));
+        holder.mixed.add(new Unordered(2));
+        for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+            BeanSource bs = new BeanSource(holder, "holder");
+            bs.setCanonical(true);
+            bs.setEngine(engine);
+            XMLReader reader = bs.getXMLReader();
+            reader.setContentHandler(new DefaultHandler());
+            try {
+                reader.parse("");
+                Assert.fail("comparison failure not reported with " + engine);
+            } catch (Exception e) {
+                Throwable t = e;
+                while ((t != null) && !(t instanceof IllegalStateException)) {
+                    Assert.assertFalse(engine.name(), t instanceof ClassCastException);
+                    t = t.getCause();
+                }
+                Assert.assertTrue(engine.name(), t != null);
+                Assert.assertEquals("unordered", t.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testFingerprint() {
+        try {
+            Holder holder = new Holder(new HashSet<>(), new HashMap<>());
+            holder.names.add("one");
+            BeanSource bs = new BeanSource(holder, "holder");
+            bs.setCanonical(true);
+            String fingerprint = bs.fingerprint();
+            Assert.assertEquals(fingerprint, bs.fingerprint());
+
+            DigestHandler digest = new DigestHandler();
+            ByteArrayOutputStream recording = new ByteArrayOutputStream();
+            bs.writeEventsTo(Channels.newChannel(recording));
+            XMLReader replay = new BinaryEventSource(ByteBuffer.wrap(recording.toByteArray())).getXMLReader();
+            replay.setContentHandler(digest);
+            replay.parse("");
+            Assert.assertEquals(fingerprint, digest.getETag());
+
+            holder.names.add("two");
+            Assert.assertNotEquals(fingerprint, bs.fingerprint());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    private static String toXml(BeanSource bs) throws Exception {
+        StringWriter sw = new StringWriter();
+        Transformer t = TransformerFactory.newInstance().newTransformer();
+        t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        t.transform(bs, new StreamResult(sw));
+        return sw.toString();
+    }
+
+    public static class Holder {
+        final Set<String> names;
+        final Map<Integer, String> counts;
+        final Set<Part> parts = new HashSet<>();
+        final Set<Object> mixed = new HashSet<>();
+
+        Holder(Set<String> names, Map<Integer, String> counts) {
+            this.names = names;
+            this.counts = counts;
+        }
+
+        public Set<String> getNames() {
+            return names;
+        }
+
+        public Map<Integer, String> getCounts() {
+            return counts;
+        }
+
+        public Set<Part> getParts() {
+            return parts;
+        }
+
+        public Set<Object> getMixed() {
+            return mixed;
+        }
+    }
+
+    public static class Part {
+        private final String name;
+
+        Part(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static class Unordered implements Comparable<Unordered> {
+        private final int value;
+
+        Unordered(int value) {
+            this.value = value;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        @Override
+        public int compareTo(Unordered o) {
+            throw new CompletionException(new IllegalStateException("unordered"));
+        }
+    }
+}
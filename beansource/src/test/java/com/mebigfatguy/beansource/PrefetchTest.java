@@ -0,0 +1,206 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.mebigfatguy.beansource.annotations.BeanSourceProperty;
+
+public class PrefetchTest {
+
+    @Test
+    public void testAnnotatedGetters() {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                BeanSource bs = new BeanSource(new Remote(new CountDownLatch(3)), "remote");
+                bs.setEngine(engine);
+                bs.setPrefetch(new Prefetch(executor));
+                Assert.assertEquals(engine.name(), "<remote type=\"bean\"><local>here</local><price>2.5</price><quantity>3</quantity>"
+                        + "<supplier type=\"bean\"><name>acme</name></supplier></remote>", toXml(bs));
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLookahead() {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                CountDownLatch latch = new CountDownLatch(3);
+                List<Lookup> lookups = new ArrayList<>();
+                for (int i = 0; i < 5; i++) {
+                    lookups.add(new Lookup(latch, i));
+                }
+                BeanSource bs = new BeanSource(lookups, "lookups");
+                bs.setEngine(engine);
+                bs.setPrefetch(new Prefetch(executor, 10, TimeUnit.SECONDS, 2, (c, p) -> (c == Lookup.class) && p.equals("value")));
+
+                StringBuilder expected = new StringBuilder("<lookups type=\"collection\">");
+                for (int i = 0; i < 5; i++) {
+                    expected.append("<item type=\"bean\"><value>").append(i).append("</value></item>");
+                }
+                expected.append("</lookups>");
+                Assert.assertEquals(engine.name(), expected.toString(), toXml(bs));
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailures() {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            BeanSource bs = new BeanSource(new Broken(), "broken");
+            bs.setPrefetch(new Prefetch(executor, 100, TimeUnit.MILLISECONDS, 0, (c, p) -> p.equals("value")));
+            SAXException failure = failure(bs);
+            Assert.assertTrue(String.valueOf(failure.getException()), failure.getException() instanceof IllegalStateException);
+
+            bs = new BeanSource(new Stuck(), "stuck");
+            bs.setPrefetch(new Prefetch(executor, 100, TimeUnit.MILLISECONDS, 0, (c, p) -> p.equals("value")));
+            failure = failure(bs);
+            Assert.assertTrue(failure.getMessage(), failure.getMessage().contains(Stuck.class.getName() + "#value timed out"));
+            Assert.assertTrue(String.valueOf(failure.getException()), failure.getException() instanceof TimeoutException);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static SAXException failure(BeanSource bs) throws Exception {
+        try {
+            XMLReader reader = bs.getXMLReader();
+            reader.setContentHandler(new DefaultHandler());
+            reader.parse("");
+        } catch (SAXException e) {
+            return e;
+        }
+        Assert.fail("the document did not fail");
+        return null;
+    }
+
+    private static String toXml(BeanSource bs) throws TransformerException {
+        StringWriter sw = new StringWriter();
+        Transformer t = TransformerFactory.newInstance().newTransformer();
+        t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        t.transform(bs, new StreamResult(sw));
+        return sw.toString();
+    }
+
+    /**
+     * waits for the latch, so the getters of a document only return if enough of them are running at once
+     */
+    static void await(CountDownLatch latch) throws InterruptedException {
+        latch.countDown();
+        if (!latch.await(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Getters were not run concurrently");
+        }
+    }
+
+    public static class Remote {
+        private final CountDownLatch latch;
+
+        Remote(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        public String getLocal() {
+            return "here";
+        }
+
+        @BeanSourceProperty(prefetch = true)
+        public double getPrice() throws InterruptedException {
+            await(latch);
+            return 2.5;
+        }
+
+        @BeanSourceProperty(prefetch = true)
+        public int getQuantity() throws InterruptedException {
+            await(latch);
+            return 3;
+        }
+
+        @BeanSourceProperty(prefetch = true)
+        public Supplier getSupplier() throws InterruptedException {
+            await(latch);
+            return new Supplier();
+        }
+    }
+
+    public static class Supplier {
+        public String getName() {
+            return "acme";
+        }
+    }
+
+    public static class Lookup {
+        private final CountDownLatch latch;
+        private final int value;
+
+        Lookup(CountDownLatch latch, int value) {
+            this.latch = latch;
+            this.value = value;
+        }
+
+        public int getValue() throws InterruptedException {
+            await(latch);
+            return value;
+        }
+    }
+
+    public static class Broken {
+        public String getValue() {
+            throw new IllegalStateException("broken");
+        }
+    }
+
+    public static class Stuck {
+        public String getValue() throws InterruptedException {
+            Thread.sleep(5000);
+            return "stuck";
+        }
+    }
+}
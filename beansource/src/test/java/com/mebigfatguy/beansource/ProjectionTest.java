@@ -0,0 +1,292 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProjectionTest {
+
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+
+    @Test
+    public void testIncludePath() {
+        try {
+            for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                Order order = new Order();
+                Assert.assertEquals(engine.name(),
+                        HEADER + "<order type=\"bean\"><lines type=\"collection\"><item type=\"bean\"><sku>A</sku></item><item type=\"bean\"><sku>B</sku></item></lines></order>",
+                        toXml(order, Projection.include("order/lines/item/sku"), engine));
+                Assert.assertEquals(0, order.totals.get());
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testExcludePath() {
+        try {
+            for (BeanSource.Engine engine : BeanSource.Engine.values()) {
+                Order order = new Order();
+                Assert.assertEquals(engine.name(),
+                        HEADER + "<order type=\"bean\"><attributes type=\"map\"><entry><key>colour</key></entry></attributes><id>7</id><lines type=\"collection\">"
+                                + "<item type=\"bean\"><quantity>1</quantity><sku>A</sku></item><item type=\"bean\"><quantity>2</quantity><sku>B</sku></item></lines></order>",
+                        toXml(order, Projection.exclude("**/audit", "order/total", "*/attributes/entry/value"), engine));
+                Assert.assertEquals(0, order.totals.get());
+            }
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testIncludedSubtree() {
+        try {
+            Order order = new Order();
+            String xml = toXml(order, Projection.of(Arrays.asList("order/lines", "order/id"), Arrays.asList("**/audit")), BeanSource.Engine.ITERATIVE);
+            Assert.assertEquals(
+                    HEADER + "<order type=\"bean\"><id>7</id><lines type=\"collection\"><item type=\"bean\"><quantity>1</quantity><sku>A</sku></item>"
+                            + "<item type=\"bean\"><quantity>2</quantity><sku>B</sku></item></lines></order>",
+                    xml);
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testParallelProjection() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<Order> orders = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                orders.add(new Order());
+            }
+            BeanSource bs = new BeanSource(orders, "orders");
+            bs.setProjection(Projection.include("orders/item/lines/*/sku"));
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            bs.writeTo(expected);
+
+            bs.setParallelExecutor(pool);
+            bs.setParallelThreshold(5);
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            bs.writeTo(actual);
+            Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+            Assert.assertFalse(new String(actual.toByteArray(), StandardCharsets.UTF_8).contains("quantity"));
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testStylesheetProjection() {
+        try {
+            String xsl = "<xsl:transform version='1.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'><xsl:output method='text'/>"
+                    + "<xsl:template match='/'><xsl:for-each select='order/lines/item[quantity &gt; 1]'><xsl:value-of select='sku'/></xsl:for-each></xsl:template>"
+                    + "</xsl:transform>";
+            Projection projection = Projection.fromStylesheet(new StreamSource(new StringReader(xsl)));
+            Assert.assertEquals(new TreeSet<>(Arrays.asList("**/item", "**/lines", "**/order", "**/quantity", "**/sku")), new TreeSet<>(projection.getIncludes()));
+
+            Templates templates = TransformerFactory.newInstance().newTemplates(new StreamSource(new StringReader(xsl)));
+            Order order = new Order();
+            BeanSource bs = new BeanSource(order, "order");
+            bs.setProjection(projection);
+            StringWriter sw = new StringWriter();
+            templates.newTransformer().transform(bs, new StreamResult(sw));
+            Assert.assertEquals("B", sw.toString());
+            Assert.assertEquals(0, order.totals.get());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testStylesheetNames() {
+        Set<String> names = new TreeSet<>();
+        Set<String> values = new TreeSet<>();
+        Assert.assertTrue(StylesheetNames.scan("count(ns:item[@type = 'a b']) div 2 and $max or string-length(child::sku) mod 3", names, values, null));
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("item", "sku")), names);
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("item", "sku")), values);
+        Assert.assertFalse(StylesheetNames.scan("@* | ../order/*[1] * 2", names, values, null));
+        Assert.assertFalse(StylesheetNames.scan("node()", names, values, null));
+        Assert.assertTrue(StylesheetNames.scan("3 * 4", names, values, null));
+
+        names.clear();
+        values.clear();
+        Set<String> targets = new TreeSet<>();
+        Assert.assertTrue(StylesheetNames.scan("order/lines/item[quantity > .5] | ./order/total", names, values, targets));
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("item", "total")), targets);
+        Assert.assertEquals(Collections.singleton("quantity"), values);
+        Assert.assertFalse(StylesheetNames.scan("item[. = 'a']", names, values, targets));
+        Assert.assertFalse(StylesheetNames.scan("..", names, values, null));
+        Assert.assertFalse(StylesheetNames.scan("normalize-space( )", names, values, null));
+        Assert.assertTrue(StylesheetNames.scan("string(line) and ../line/sku", names, values, null));
+        Assert.assertTrue(values.contains("line"));
+        Assert.assertTrue(values.contains("sku"));
+    }
+
+    @Test
+    public void testStylesheetSubtrees() {
+        String lineTemplate = "<xsl:template match='line'><l><xsl:apply-templates/></l></xsl:template>";
+        assertProjected("<xsl:template match='/'><r><xsl:value-of select='order/line'/></r></xsl:template>", true);
+        assertProjected("<xsl:template match='/'><r><xsl:copy-of select='order/line'/></r></xsl:template>", true);
+        assertProjected("<xsl:template match='/'><r><xsl:value-of select='string(order/line)'/></r></xsl:template>", true);
+        assertProjected("<xsl:template match='/'><r><xsl:apply-templates select='order/line'/></r></xsl:template>", true);
+        assertProjected("<xsl:template match='/'><r><xsl:apply-templates select='order/line' mode='m'/></r></xsl:template>"
+                + "<xsl:template match='line'><l/></xsl:template>", true);
+        assertProjected("<xsl:template match='/'><xsl:for-each select='order/line'><r><xsl:value-of select='sku'/></r></xsl:for-each></xsl:template>", true);
+        assertProjected("<xsl:template match='/'><xsl:apply-templates select='order/line'/></xsl:template>" + lineTemplate, false);
+        assertProjected("<xsl:template match='/'><xsl:for-each select='order/line'><r><xsl:value-of select='.'/></r></xsl:for-each></xsl:template>",
+                false);
+        assertProjected("<xsl:template match='/'><xsl:for-each select='order/line'><r><xsl:value-of select='string()'/></r></xsl:for-each>"
+                + "</xsl:template>", false);
+        assertProjected("<xsl:template match='order'><r><xsl:value-of select='carrier'/></r></xsl:template>", false);
+    }
+
+    /**
+     * checks that the stylesheet gives the same output with the projection derived from it as without one
+     */
+    private static void assertProjected(String templates, boolean projected) {
+        try {
+            String xsl = "<xsl:transform version='1.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'>"
+                    + "<xsl:output method='xml' omit-xml-declaration='yes'/>" + templates + "</xsl:transform>";
+            Projection projection = Projection.fromStylesheet(new StreamSource(new StringReader(xsl)));
+            Assert.assertEquals(templates, Boolean.valueOf(projected), Boolean.valueOf(projection != null));
+
+            Templates compiled = TransformerFactory.newInstance().newTemplates(new StreamSource(new StringReader(xsl)));
+            StringWriter whole = new StringWriter();
+            compiled.newTransformer().transform(new BeanSource(new Shipment(), "order"), new StreamResult(whole));
+            BeanSource bs = new BeanSource(new Shipment(), "order");
+            bs.setProjection(projection);
+            StringWriter pruned = new StringWriter();
+            compiled.newTransformer().transform(bs, new StreamResult(pruned));
+            Assert.assertEquals(templates, whole.toString(), pruned.toString());
+            Assert.assertFalse(whole.toString(), whole.toString().replaceAll("<[^>]*>", "").isEmpty());
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    private static String toXml(Object bean, Projection projection, BeanSource.Engine engine) throws Exception {
+        BeanSource bs = new BeanSource(bean, "order");
+        bs.setEngine(engine);
+        bs.setProjection(projection);
+        StringWriter sw = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(bs, new StreamResult(sw));
+        return sw.toString();
+    }
+
+    public static class Order {
+        final AtomicInteger totals = new AtomicInteger();
+
+        public int getId() {
+            return 7;
+        }
+
+        public List<Line> getLines() {
+            return Arrays.asList(new Line("A", 1), new Line("B", 2));
+        }
+
+        public Map<String, String> getAttributes() {
+            return new TreeMap<>(Collections.singletonMap("colour", "red"));
+        }
+
+        public double getTotal() {
+            totals.incrementAndGet();
+            return 3.0;
+        }
+
+        public Audit getAudit() {
+            throw new IllegalStateException("audit loaded");
+        }
+    }
+
+    public static class Line {
+        private final String sku;
+        private final int quantity;
+
+        public Line(String sku, int quantity) {
+            this.sku = sku;
+            this.quantity = quantity;
+        }
+
+        public String getSku() {
+            return sku;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public Audit getAudit() {
+            throw new IllegalStateException("audit loaded");
+        }
+    }
+
+    public static class Audit {
+        public String getUser() {
+            return "nobody";
+        }
+    }
+
+    public static class Shipment {
+        public String getCarrier() {
+            return "post";
+        }
+
+        public ShipmentLine getLine() {
+            return new ShipmentLine();
+        }
+    }
+
+    public static class ShipmentLine {
+        public int getQty() {
+            return 2;
+        }
+
+        public String getSku() {
+            return "S1";
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2005-2019 Dave Brosius
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mebigfatguy.beansource;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SnapshotTest {
+
+    @Test
+    public void testDelta() {
+        try {
+            Inventory inventory = new Inventory();
+            BeanSource bs = new BeanSource(inventory, "inventory");
+            Snapshot baseline = bs.snapshot();
+
+            inventory.count = 8;
+            inventory.tags.add("new");
+            inventory.stock.remove("bolt");
+            inventory.stock.put("nut", Integer.valueOf(40));
+            inventory.stock.put("washer", Integer.valueOf(5));
+            inventory.owner.name = "ann";
+
+            bs.setBaseline(baseline);
+            Assert.assertEquals("<inventory type=\"bean\" delta=\"changed\"><count delta=\"changed\">8</count>"
+                    + "<owner type=\"bean\" delta=\"changed\"><name delta=\"changed\">ann</name></owner>"
+                    + "<stock type=\"map\" delta=\"changed\"><entry delta=\"changed\"><key>nut</key><value delta=\"changed\">40</value></entry>"
+                    + "<entry delta=\"added\"><key>washer</key><value>5</value></entry>"
+                    + "<entry delta=\"removed\"><key>bolt</key></entry></stock>"
+                    + "<tags type=\"collection\" delta=\"changed\"><item delta=\"added\" index=\"2\">new</item></tags></inventory>", toXml(bs));
+
+            inventory.tags.remove(0);
+            Snapshot current = new BeanSource(inventory, "inventory").snapshot();
+            bs.setBaseline(current);
+            Assert.assertEquals("<inventory type=\"bean\"/>", toXml(bs));
+
+            inventory.tags.remove(0);
+            Snapshot shorter = new BeanSource(inventory, "inventory").snapshot();
+            Assert.assertEquals("<inventory type=\"bean\" delta=\"changed\"><tags type=\"collection\" delta=\"changed\">"
+                    + "<item delta=\"changed\" index=\"0\">new</item><item delta=\"removed\" index=\"1\"/></tags></inventory>", delta(current, shorter));
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    @Test
+    public void testHashes() {
+        try {
+            Snapshot first = new BeanSource(new Inventory(), "inventory").snapshot();
+            Snapshot second = new BeanSource(new Inventory(), "inventory").snapshot();
+            Assert.assertEquals(first.getHash(), second.getHash());
+            Assert.assertEquals(first.getElements(), second.getElements());
+
+            Inventory changed = new Inventory();
+            changed.owner.name = "bob ";
+            Assert.assertNotEquals(first.getHash(), new BeanSource(changed, "inventory").snapshot().getHash());
+
+            Assert.assertEquals(toXml(new BeanSource(new Inventory(), "inventory")).replace("<inventory type=\"bean\">", "<inventory type=\"bean\" delta=\"added\">"),
+                    delta(null, first));
+        } catch (Exception e) {
+            String msg = e.getMessage();
+            Assert.fail(e.getClass().getName() + ((msg != null) ? (" " + e.getMessage()) : ""));
+        }
+    }
+
+    private static String toXml(BeanSource bs) throws Exception {
+        StringWriter sw = new StringWriter();
+        Transformer t = TransformerFactory.newInstance().newTransformer();
+        t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        t.transform(bs, new StreamResult(sw));
+        return sw.toString();
+    }
+
+    private static String delta(Snapshot baseline, Snapshot current) throws Exception {
+        StringWriter sw = new StringWriter();
+        TransformerHandler th = ((SAXTransformerFactory) TransformerFactory.newInstance()).newTransformerHandler();
+        th.getTransformer().setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        th.setResult(new StreamResult(sw));
+        current.writeDelta(baseline, th);
+        return sw.toString();
+    }
+
+    public static class Inventory {
+        int count = 7;
+        final List<String> tags = new ArrayList<>(Arrays.asList("a", "b"));
+        final Map<String, Integer> stock = new LinkedHashMap<>();
+        final Owner owner = new Owner();
+
+        public Inventory() {
+            stock.put("bolt", Integer.valueOf(10));
+            stock.put("nut", Integer.valueOf(20));
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public Map<String, Integer> getStock() {
+            return stock;
+        }
+
+        public Owner getOwner() {
+            return owner;
+        }
+    }
+
+    public static class Owner {
+        String name = "bob";
+
+        public String getName() {
+            return name;
+        }
+    }
+}